@@ -17,10 +17,20 @@
 package com.klinker.android.spotify;
 
 import android.app.Application;
+import com.klinker.android.spotify.util.StartupTracer;
 
 /**
  * Base Spotify application
  */
 public class SpotifyApplication extends Application {
 
+    /**
+     * Start the startup timeline, everything that is traced during the launch is timed from here
+     */
+    @Override
+    public void onCreate() {
+        StartupTracer.get();
+        super.onCreate();
+    }
+
 }
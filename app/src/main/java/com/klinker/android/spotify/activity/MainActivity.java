@@ -16,14 +16,12 @@
 
 package com.klinker.android.spotify.activity;
 
-import android.app.ProgressDialog;
-import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.Handler;
 import com.klinker.android.spotify.R;
 import com.klinker.android.spotify.data.Settings;
 import com.klinker.android.spotify.data.SpotifyHelper;
+import com.klinker.android.spotify.util.StartupTracer;
 
 /**
  * Activity for displaying all playlists to the user and allowing them to view and listen to songs in each playlist.
@@ -33,30 +31,29 @@ public class MainActivity extends SpotifyAbstractActivity {
 
     private Settings settings;
     private SpotifyHelper spotifyHelper;
-    private ProgressDialog loadingAuthToken;
 
     /**
-     * Set up settings and spotify helper and get the correct/valid auth token
+     * Set up settings and spotify helper and show the playlists. The rows from the last sync are shown right away,
+     * the sync waits on the auth token in the background if it still needs to be refreshed
      */
     @Override
     public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
+        StartupTracer.Span span = StartupTracer.get().begin("main_activity_create");
+        try {
+            super.onCreate(savedInstanceState);
 
-        settings = getSettings();
-        spotifyHelper = getSpotifyHelper();
+            settings = getSettings();
+            spotifyHelper = getSpotifyHelper();
 
-        if (settings.spotifyAccount.getAuthToken() == null) {
-            Intent intent = new Intent(this, SpotifyOAuthActivity.class);
-            startActivity(intent);
-            finish();
-        } else {
-            if (spotifyHelper.isAuthTokenValid()) {
-                setContentView(R.layout.main);
+            if (settings.spotifyAccount.getAuthToken() == null) {
+                Intent intent = new Intent(this, SpotifyOAuthActivity.class);
+                startActivity(intent);
+                finish();
             } else {
-                loadingAuthToken = initProgressDialog(this);
-                loadingAuthToken.show();
-                waitForAuthToken();
+                setContentView(R.layout.main);
             }
+        } finally {
+            span.end();
         }
     }
 
@@ -70,42 +67,6 @@ public class MainActivity extends SpotifyAbstractActivity {
         checkLoggedIn(spotifyHelper);
     }
 
-    /**
-     * Wait for the auth token to be found by the Spotify helper. Auth tokens expire after an hour or so, so this
-     * will almost always need to be called when starting the app
-     */
-    public void waitForAuthToken() {
-        new Handler().postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                if (spotifyHelper.isAuthTokenValid()) {
-                    dismissProgressDialog(loadingAuthToken);
-                    setContentView(R.layout.main);
-                } else {
-                    waitForAuthToken();
-                }
-            }
-        }, 200);
-    }
-
-    /**
-     * Display a progress dialog to notify user that app is loading, meaning that the auth token is being refreshed
-     */
-    protected ProgressDialog initProgressDialog(Context context) {
-        ProgressDialog progressDialog = new ProgressDialog(context);
-        progressDialog.setMessage(context.getString(R.string.loading));
-        progressDialog.setIndeterminate(true);
-        return progressDialog;
-    }
-
-    /**
-     * Dismiss the progress dialog after loading is complete, abstracted for testing purposes
-     * @param progressDialog the progress dialog to be dismissed
-     */
-    protected void dismissProgressDialog(ProgressDialog progressDialog) {
-        progressDialog.dismiss();
-    }
-
     /**
      * Get the spotify helper for auth purposes
      */
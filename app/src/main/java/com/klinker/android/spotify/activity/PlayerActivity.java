@@ -38,14 +38,18 @@ import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
 import com.klinker.android.spotify.R;
+import com.klinker.android.spotify.data.PlayQueue;
+import com.klinker.android.spotify.data.PlayQueueRepository;
 import com.klinker.android.spotify.data.Settings;
+import com.klinker.android.spotify.data.Song;
 import com.klinker.android.spotify.data.SpotifyHelper;
+import com.klinker.android.spotify.loader.ArtworkLoader;
+import com.klinker.android.spotify.loader.ArtworkPrefetcher;
 import com.klinker.android.spotify.loader.PicassoBackgroundManagerTarget;
-import com.klinker.android.spotify.util.NetworkUtils;
 import com.klinker.android.spotify.util.OnAuthTokenRefreshedListener;
 import com.klinker.android.spotify.util.SpotifyMediaSessionCallback;
-import com.nostra13.universalimageloader.core.ImageLoader;
 import com.spotify.sdk.android.player.ConnectionStateCallback;
+import com.spotify.sdk.android.player.PlayConfig;
 import com.spotify.sdk.android.player.Player;
 import com.spotify.sdk.android.player.PlayerNotificationCallback;
 import com.spotify.sdk.android.player.PlayerState;
@@ -54,7 +58,9 @@ import com.squareup.picasso.Picasso;
 import com.squareup.picasso.Target;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Activity for displaying media that is currently playing. On the screen, user's will see a play button, a back button,
@@ -83,39 +89,30 @@ public class PlayerActivity extends SpotifyAbstractActivity {
     public static final String ACTION_PREVIOUS = "com.klinker.android.spotify.PREVIOUS";
 
     /**
-     * Arg for passing song URIs into player from main activity
+     * Arg for passing the id of the play queue, from the PlayQueueRepository, into the player from main activity
      */
-    public static final String ARG_SONG_IDS = "ids";
+    public static final String ARG_QUEUE_ID = "queue_id";
 
     /**
-     * Arg for passing song images into player from main activity so that we don't need to requery them when
-     * the song starts playing
-     */
-    public static final String ARG_SONG_IMAGES = "images";
-
-    /**
-     * Arg for passing song titles into the player
+     * Apply a fix for volume on the spotify player being very, very loud. This fix doesn't seem
+     * to do anything on the Nexus Player, but it does change the volume on the Nvidia Shield.
      */
-    public static final String ARG_SONG_TITLES = "titles";
+    private static final boolean ADJUST_VOLUME_FIX = false;
 
     /**
-     * Arg for passing song artists into the player
+     * Size in pixels to decode the now playing card's artwork at, it is only shown as a small square
      */
-    public static final String ARG_SONG_ARTISTS = "artists";
+    private static final int SESSION_ARTWORK_SIZE = 320;
 
     /**
-     * Apply a fix for volume on the spotify player being very, very loud. This fix doesn't seem
-     * to do anything on the Nexus Player, but it does change the volume on the Nvidia Shield.
+     * Number of upcoming songs to load the background for ahead of time. Each one is a full screen bitmap in the
+     * memory cache, so this is kept small
      */
-    private static final boolean ADJUST_VOLUME_FIX = false;
+    private static final int PREFETCH_COUNT = 2;
 
-    private List<String> songIds;
-    private List<String> songImages;
-    private List<String> songTitles;
-    private List<String> songArtists;
+    private PlayQueue queue;
 
     private boolean isActivityShowing;
-    private int currentIndex;
 
     private Settings settings;
     private SpotifyHelper helper;
@@ -123,6 +120,8 @@ public class PlayerActivity extends SpotifyAbstractActivity {
     private Drawable mDefaultBackground;
     private Target mBackgroundTarget;
     private DisplayMetrics mMetrics;
+    private ArtworkLoader artworkLoader;
+    private ArtworkPrefetcher prefetcher;
 
     private ImageButton shuffleButton;
     private ImageButton repeatButton;
@@ -137,6 +136,7 @@ public class PlayerActivity extends SpotifyAbstractActivity {
     private Player player;
     private MediaSession mSession;
     private boolean isPlaying;
+    private boolean hasStartedQueue;
     private int startingVolume = 0;
 
     /**
@@ -146,10 +146,16 @@ public class PlayerActivity extends SpotifyAbstractActivity {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        initializeSongInformation(getIntent());
+        if (!initializeSongInformation(getIntent())) {
+            Log.e(TAG, "play queue is no longer available");
+            finish();
+            return;
+        }
 
         helper = getSpotifyHelper();
+        helper.addAuthTokenRefreshedListener(authTokenRefreshedListener);
         settings = Settings.get(this);
+        queue.setOnSongsAddedListener(songsAddedListener);
 
         adjustMediaVolumeStart();
         prepareBackgroundManager();
@@ -159,13 +165,12 @@ public class PlayerActivity extends SpotifyAbstractActivity {
     }
 
     /**
-     * Get song information from the provided intent
+     * Get song information for the queue in the provided intent
+     * @return false if the queue isn't available anymore
      */
-    private void initializeSongInformation(Intent intent) {
-        songIds = intent.getStringArrayListExtra(ARG_SONG_IDS);
-        songImages = intent.getStringArrayListExtra(ARG_SONG_IMAGES);
-        songTitles = intent.getStringArrayListExtra(ARG_SONG_TITLES);
-        songArtists = intent.getStringArrayListExtra(ARG_SONG_ARTISTS);
+    private boolean initializeSongInformation(Intent intent) {
+        queue = PlayQueueRepository.get().getQueue(intent.getLongExtra(ARG_QUEUE_ID, -1));
+        return queue != null && queue.size() > 0;
     }
 
     /**
@@ -174,7 +179,7 @@ public class PlayerActivity extends SpotifyAbstractActivity {
     @Override
     public void onStart() {
         super.onStart();
-        checkLoggedIn(helper, authTokenRefreshedListener);
+        checkLoggedIn(helper);
     }
 
     /**
@@ -183,6 +188,28 @@ public class PlayerActivity extends SpotifyAbstractActivity {
     @Override
     public void onDestroy() {
         super.onDestroy();
+
+        if (queue != null) {
+            queue.setOnSongsAddedListener(null);
+        }
+
+        if (helper != null) {
+            helper.removeAuthTokenRefreshedListener(authTokenRefreshedListener);
+        }
+
+        if (artworkLoader != null) {
+            artworkLoader.cancelAll();
+        }
+
+        if (prefetcher != null) {
+            prefetcher.cancelAll();
+        }
+
+        if (player == null) {
+            // finished before we had anything to play
+            return;
+        }
+
         adjustMediaVolumeStop();
         unregisterMediaReceiver();
 
@@ -199,11 +226,11 @@ public class PlayerActivity extends SpotifyAbstractActivity {
         isActivityShowing = true;
 
         // check if the playing information is up to date and if not, update it
-        String title = songTitles.get(currentIndex);
-        if (!titleTextView.getText().toString().equals(title)) {
-            titleTextView.setText(title);
-            artistTextView.setText(songArtists.get(currentIndex));
-            updateBackground(URI.create(songImages.get(currentIndex)));
+        Song song = queue.getCurrentSong();
+        if (!titleTextView.getText().toString().equals(song.getTitle())) {
+            titleTextView.setText(song.getTitle());
+            artistTextView.setText(song.getArtist());
+            updateBackground(URI.create(getBackgroundUrl(song)));
         }
     }
 
@@ -267,10 +294,19 @@ public class PlayerActivity extends SpotifyAbstractActivity {
         // playing the songs once that is finished. player.pause() is an async call, so that is
         // why the delay is present.
         player.pause();
+
+        // we shuffle the queue ourselves instead of letting the player do it, so that we know what is coming up next
+        if (settings.shuffle) {
+            queue.setShuffled(true, new Random());
+        }
+
         new Handler().postDelayed(new Runnable() {
             @Override
             public void run() {
-                player.play(songIds);
+                // the queue starts with the selected song and wraps around to the start of the playlist, so after
+                // the last song it will keep going with the songs before the one that was picked
+                player.play(queue.getUris());
+                hasStartedQueue = true;
             }
         }, 1000);
 
@@ -281,23 +317,26 @@ public class PlayerActivity extends SpotifyAbstractActivity {
         new Handler().postDelayed(new Runnable() {
             @Override
             public void run() {
-                player.setShuffle(settings.shuffle);
+                player.setShuffle(false);
                 player.setRepeat(settings.repeat);
             }
         }, 5000);
 
         // make sure that we actually sent song images into activity
-        if (songImages != null && songImages.size() > 0) {
+        Song firstSong = queue.getSong(0);
+        if (getBackgroundUrl(firstSong) != null) {
             try {
-                titleTextView.setText(songTitles.get(0));
-                artistTextView.setText(songArtists.get(0));
-                updateBackground(URI.create(songImages.get(0)));
+                titleTextView.setText(firstSong.getTitle());
+                artistTextView.setText(firstSong.getArtist());
+                updateBackground(URI.create(getBackgroundUrl(firstSong)));
             } catch (IllegalArgumentException e) {
                 updateBackground(null);
             }
         } else {
             updateBackground(null);
         }
+
+        prefetchUpcoming();
     }
 
     /**
@@ -310,6 +349,7 @@ public class PlayerActivity extends SpotifyAbstractActivity {
         mDefaultBackground = getResources().getDrawable(R.drawable.default_background);
         mMetrics = new DisplayMetrics();
         getWindowManager().getDefaultDisplay().getMetrics(mMetrics);
+        prefetcher = new ArtworkPrefetcher(this, mMetrics.widthPixels, mMetrics.heightPixels);
     }
 
     /**
@@ -370,11 +410,11 @@ public class PlayerActivity extends SpotifyAbstractActivity {
                 if (settings.shuffle) {
                     settings.setValue(getString(R.string.pref_shuffle), false);
                     shuffleEnabled.setVisibility(View.GONE);
-                    player.setShuffle(false);
+                    reorderQueue(false);
                 } else {
                     settings.setValue(getString(R.string.pref_shuffle), true);
                     shuffleEnabled.setVisibility(View.VISIBLE);
-                    player.setShuffle(true);
+                    reorderQueue(true);
                 }
             }
         });
@@ -391,10 +431,44 @@ public class PlayerActivity extends SpotifyAbstractActivity {
                     repeatEnabled.setVisibility(View.VISIBLE);
                     player.setRepeat(true);
                 }
+
+                // whether the queue wraps around changes what is coming up at the end of it
+                prefetchUpcoming();
             }
         });
     }
 
+    /**
+     * Shuffle or unshuffle the rest of the queue and restart the player on the current song with the new order, at
+     * the same spot in the song
+     */
+    private void reorderQueue(boolean shuffled) {
+        queue.setShuffled(shuffled, new Random());
+        prefetchUpcoming();
+
+        player.getPlayerState(new PlayerStateCallback() {
+            @Override
+            public void onPlayerState(PlayerState playerState) {
+                player.play(PlayConfig.createFor(queue.getUris())
+                        .withTrackIndex(queue.getCursor())
+                        .withInitialPosition(playerState.positionInMs));
+            }
+        });
+    }
+
+    /**
+     * Load the backgrounds for the next few songs in the queue, and drop any that are loading for songs that aren't
+     * coming up anymore
+     */
+    private void prefetchUpcoming() {
+        List<String> urls = new ArrayList<String>();
+        for (Song song : queue.getUpcoming(PREFETCH_COUNT, settings.repeat)) {
+            urls.add(getBackgroundUrl(song));
+        }
+
+        prefetcher.prefetch(urls);
+    }
+
     /**
      * Toggle the current play state from playing to paused or the other way around
      */
@@ -414,7 +488,7 @@ public class PlayerActivity extends SpotifyAbstractActivity {
     private void nextSong() {
         player.skipToNext();
         enablePlaying();
-        checkLoggedIn(helper, authTokenRefreshedListener);
+        checkLoggedIn(helper);
     }
 
     /**
@@ -423,7 +497,7 @@ public class PlayerActivity extends SpotifyAbstractActivity {
     private void previousSong() {
         player.skipToPrevious();
         enablePlaying();
-        checkLoggedIn(helper, authTokenRefreshedListener);
+        checkLoggedIn(helper);
     }
 
     /**
@@ -510,21 +584,49 @@ public class PlayerActivity extends SpotifyAbstractActivity {
      * @param artist the currently playing artist
      * @param url the currently show background art uri
      */
-    private void updateSessionMetadata(final String title, final String artist, final String url) {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                Bitmap bmp = NetworkUtils.getBitmapFromURL(url);
-
-                MediaMetadata.Builder builder = new MediaMetadata.Builder();
-                builder.putString(MediaMetadata.METADATA_KEY_DISPLAY_TITLE, title);
-                builder.putString(MediaMetadata.METADATA_KEY_DISPLAY_SUBTITLE, artist);
-                builder.putBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART, bmp);
-                builder.putString(MediaMetadata.METADATA_KEY_TITLE, title);
-                builder.putString(MediaMetadata.METADATA_KEY_ARTIST, artist);
-                mSession.setMetadata(builder.build());
+    private void updateSessionMetadata(String title, String artist, String url) {
+        // show the text right away, the artwork is added once it comes out of the image cache
+        mSession.setMetadata(buildSessionMetadata(title, artist, null));
+
+        if (artworkLoader == null) {
+            artworkLoader = new ArtworkLoader(this);
+        }
+
+        artworkLoader.cancel(sessionArtworkListener);
+        artworkLoader.load(url, SESSION_ARTWORK_SIZE, sessionArtworkListener);
+    }
+
+    /**
+     * Build the metadata for the now playing card
+     */
+    private MediaMetadata buildSessionMetadata(String title, String artist, Bitmap artwork) {
+        MediaMetadata.Builder builder = new MediaMetadata.Builder();
+        builder.putString(MediaMetadata.METADATA_KEY_DISPLAY_TITLE, title);
+        builder.putString(MediaMetadata.METADATA_KEY_DISPLAY_SUBTITLE, artist);
+        builder.putBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART, artwork);
+        builder.putString(MediaMetadata.METADATA_KEY_TITLE, title);
+        builder.putString(MediaMetadata.METADATA_KEY_ARTIST, artist);
+        return builder.build();
+    }
+
+    /**
+     * Adds the artwork to the now playing card, as long as the song hasn't changed while it was loading
+     */
+    private ArtworkLoader.OnArtworkLoadedListener sessionArtworkListener = new ArtworkLoader.OnArtworkLoadedListener() {
+        @Override
+        public void onArtworkLoaded(String url, Bitmap bitmap) {
+            Song song = queue.getCurrentSong();
+            if (bitmap != null && url.equals(song.getImageUrl(SESSION_ARTWORK_SIZE, SESSION_ARTWORK_SIZE))) {
+                mSession.setMetadata(buildSessionMetadata(song.getTitle(), song.getArtist(), bitmap));
             }
-        }).start();
+        }
+    };
+
+    /**
+     * Get the size of the song's artwork that fits the screen
+     */
+    private String getBackgroundUrl(Song song) {
+        return song.getImageUrl(mMetrics.widthPixels, mMetrics.heightPixels);
     }
 
     /**
@@ -582,15 +684,24 @@ public class PlayerActivity extends SpotifyAbstractActivity {
 
             if (eventType == EventType.TRACK_CHANGED || eventType == EventType.TRACK_START) {
                 String songId = playerState.trackUri;
-                currentIndex = songIds.indexOf(songId);
+
+                // the player sends both events for every track, only move on to the next spot in the queue once.
+                // Otherwise the same track twice in a row would skip past the second one
+                int currentIndex = queue.getCursor();
+                if (eventType == EventType.TRACK_CHANGED || !queue.getCurrentSong().getId().equals(songId)) {
+                    currentIndex = queue.moveTo(songId);
+                }
 
                 if (currentIndex != -1) {
                     try {
-                        titleTextView.setText(songTitles.get(currentIndex));
-                        artistTextView.setText(songArtists.get(currentIndex));
-                        URI uri = URI.create(songImages.get(currentIndex));
-                        updateSessionMetadata(songTitles.get(currentIndex), songArtists.get(currentIndex), songImages.get(currentIndex));
+                        Song song = queue.getCurrentSong();
+                        titleTextView.setText(song.getTitle());
+                        artistTextView.setText(song.getArtist());
+                        URI uri = URI.create(getBackgroundUrl(song));
+                        updateSessionMetadata(song.getTitle(), song.getArtist(),
+                                song.getImageUrl(SESSION_ARTWORK_SIZE, SESSION_ARTWORK_SIZE));
                         updateBackground(uri);
+                        prefetchUpcoming();
                     } catch (IllegalArgumentException e) {
                         Log.e(TAG, "error setting background", e);
                         updateBackground(null);
@@ -601,7 +712,7 @@ public class PlayerActivity extends SpotifyAbstractActivity {
                     artistTextView.setText(null);
                 }
 
-                checkLoggedIn(helper, authTokenRefreshedListener);
+                checkLoggedIn(helper);
             } else if (eventType == EventType.LOST_PERMISSION) {
                 // this occurs when we start playing music from a different device usually
                 disablePlaying();
@@ -668,13 +779,31 @@ public class PlayerActivity extends SpotifyAbstractActivity {
     };
 
     /**
-     * Callback for refreshing auth token. We'll reset the player's login status so that it can keep working correctly
-     * after the first token has expired
+     * Callback for the rest of the playlist being added to the queue after playback started. The player only knows
+     * about the uris it was started with, so it is restarted on the current song with the new ones
+     */
+    private PlayQueue.OnSongsAddedListener songsAddedListener = new PlayQueue.OnSongsAddedListener() {
+        @Override
+        public void onSongsAdded(PlayQueue queue) {
+            if (hasStartedQueue) {
+                reorderQueue(settings.shuffle);
+            } else if (settings.shuffle) {
+                // the player picks up the new songs when it starts, they just need to be shuffled in
+                queue.setShuffled(true, new Random());
+            }
+        }
+    };
+
+    /**
+     * Callback for refreshing auth token, including the scheduled renewals. We'll reset the player's login status so
+     * that it can keep working correctly after the first token has expired
      */
     private OnAuthTokenRefreshedListener authTokenRefreshedListener = new OnAuthTokenRefreshedListener() {
         @Override
         public void authTokenRefreshed() {
-            player.login(settings.spotifyAccount.getAuthToken());
+            if (player != null) {
+                player.login(settings.spotifyAccount.getAuthToken());
+            }
         }
     };
 
@@ -94,18 +94,14 @@ public class SpotifyAbstractActivity extends Activity {
         checkLoggedIn(helper, null);
     }
 
-    public void checkLoggedIn(final SpotifyHelper helper, final OnAuthTokenRefreshedListener listener) {
+    /**
+     * Refresh the auth token if it isn't valid. Only one refresh runs at a time, so calling this again while a
+     * refresh is running just waits on that one
+     * @param listener notified once, off of the UI thread, when the token has been refreshed
+     */
+    public void checkLoggedIn(SpotifyHelper helper, OnAuthTokenRefreshedListener listener) {
         if (!helper.isAuthTokenValid()) {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    helper.refreshToken();
-
-                    if (listener != null) {
-                        listener.authTokenRefreshed();
-                    }
-                }
-            }).start();
+            helper.requestTokenRefresh(listener);
         }
     }
 
@@ -17,27 +17,23 @@
 package com.klinker.android.spotify.data;
 
 import android.util.Log;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.message.BasicNameValuePair;
+import com.klinker.android.spotify.util.SharedHttpClient;
+import com.squareup.okhttp.FormEncodingBuilder;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.*;
-import java.net.HttpRetryException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Data class for storing and retreiving an auth token from spotify after logging in
  */
 public class AccessToken {
 
+    private static final String TAG = "AccessToken";
+
     private static InputStream inputStream = null;
     private static JSONObject jsonObject = null;
     private static String json = "";
@@ -45,9 +41,7 @@ public class AccessToken {
     public AccessToken() {
     }
 
-    private List<NameValuePair> params = new ArrayList<NameValuePair>();
-    private DefaultHttpClient httpClient;
-    private HttpPost httpPost;
+    private OkHttpClient httpClient;
 
     /**
      * Get a new auth token from spotify by making all of the proper requests
@@ -57,28 +51,29 @@ public class AccessToken {
      * @param clientSecret the client secret used to show that Tunes is the accessing app
      * @param redirectUri where to redirect to once the token has been fetched
      * @param grantType type of request
-     * @return a JSON object with all of the token information as specified by Spotify
+     * @return a JSON object with all of the token information as specified by Spotify, or null if the request failed
      */
     public JSONObject getToken(String address, String token, String clientId, String clientSecret, String redirectUri, String grantType) {
         try {
             httpClient = getHttpClient();
-            httpPost = new HttpPost(address);
-            params.add(new BasicNameValuePair("code", token));
-            params.add(new BasicNameValuePair("client_id", clientId));
-            params.add(new BasicNameValuePair("client_secret", clientSecret));
-            params.add(new BasicNameValuePair("redirect_uri", redirectUri));
-            params.add(new BasicNameValuePair("grant_type", grantType));
-            httpPost.setHeader("Content-Type", "application/x-www-form-urlencoded");
-            httpPost.setEntity(new UrlEncodedFormEntity(params));
-            HttpResponse httpResponse = executeRequest(httpPost);
-            HttpEntity httpEntity = httpResponse.getEntity();
-            inputStream = httpEntity.getContent();
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
-        } catch (ClientProtocolException e) {
-            e.printStackTrace();
+            Request httpPost = new Request.Builder()
+                    .url(address)
+                    .post(new FormEncodingBuilder()
+                            .add("code", token)
+                            .add("client_id", clientId)
+                            .add("client_secret", clientSecret)
+                            .add("redirect_uri", redirectUri)
+                            .add("grant_type", grantType)
+                            .build())
+                    .build();
+            inputStream = executeRequest(httpPost);
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.e(TAG, "error requesting token: " + e.getMessage());
+            return null;
+        }
+
+        if (inputStream == null) {
+            return null;
         }
 
         try {
@@ -90,7 +85,6 @@ public class AccessToken {
             }
             inputStream.close();
             json = sb.toString();
-            Log.e("JSONStr", json);
         } catch (Exception e) {
             e.getMessage();
             Log.e("Buffer Error", "Error converting result " + e.toString());
@@ -106,17 +100,31 @@ public class AccessToken {
     }
 
     /**
-     * Get the http client, exposed for testing
+     * Get the shared http client, exposed for testing
      */
-    public DefaultHttpClient getHttpClient() {
-        return new DefaultHttpClient();
+    public OkHttpClient getHttpClient() {
+        return SharedHttpClient.get();
     }
 
     /**
      * Execute a request on a post object from the http client
+     * @return the body of the response, or null if it wasn't successful
+     */
+    public InputStream executeRequest(Request post) throws IOException {
+        Response response = executeClientRequest(post);
+        if (!response.isSuccessful()) {
+            Log.e(TAG, "error getting token: " + response.code() + " " + response.body().string());
+            return null;
+        }
+
+        return response.body().byteStream();
+    }
+
+    /**
+     * Execute the request on the http client, exposed for testing
      */
-    public HttpResponse executeRequest(HttpPost post) throws IOException {
-        return httpClient.execute(post);
+    public Response executeClientRequest(Request post) throws IOException {
+        return httpClient.newCall(post).execute();
     }
 
     /**
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import com.klinker.android.spotify.util.ImageResolver;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Album information, shared between every song on the album. Get these from the SongCatalog instead of creating
+ * new ones so that there is only one copy of each
+ */
+@Getter
+@Setter
+public class Album implements Serializable {
+
+    private final String key;
+    private String name;
+    private List<AlbumImage> images;
+
+    /**
+     * @param key the key that the album is shared under in the SongCatalog
+     * @param images every size of the album artwork that Spotify has
+     */
+    public Album(String key, String name, List<AlbumImage> images) {
+        this.key = key;
+        this.name = name;
+        this.images = images;
+    }
+
+    /**
+     * Get the largest size of the artwork
+     */
+    public String getImageUrl() {
+        return ImageResolver.getLargest(images);
+    }
+
+    /**
+     * Get the smallest size of the artwork that is at least as big as the target
+     */
+    public String getImageUrl(int width, int height) {
+        return ImageResolver.resolve(images, width, height);
+    }
+
+}
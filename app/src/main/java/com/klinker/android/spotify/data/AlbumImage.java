@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/**
+ * One size of an album's artwork. Spotify usually has a few sizes of each cover, see ImageResolver for picking one
+ */
+@Getter
+public class AlbumImage implements Serializable {
+
+    private String url;
+    private int width;
+    private int height;
+
+    /**
+     * @param width the width in pixels, or 0 if Spotify didn't tell us
+     * @param height the height in pixels, or 0 if Spotify didn't tell us
+     */
+    public AlbumImage(String url, int width, int height) {
+        this.url = url;
+        this.width = width;
+        this.height = height;
+    }
+
+}
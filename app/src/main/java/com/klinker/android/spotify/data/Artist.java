@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * Artist information, shared between every song by the artist. Get these from the SongCatalog instead of creating
+ * new ones so that there is only one copy of each
+ */
+@Getter
+@Setter
+public class Artist implements Serializable {
+
+    private final String key;
+    private String name;
+    private String type;
+
+    /**
+     * @param key the key that the artist is shared under in the SongCatalog
+     */
+    public Artist(String key, String name, String type) {
+        this.key = key;
+        this.name = name;
+        this.type = type;
+    }
+
+}
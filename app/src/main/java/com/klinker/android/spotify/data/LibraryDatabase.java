@@ -0,0 +1,615 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.ArtistSimple;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.PlaylistSimple;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.PlaylistTracksInformation;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.UserSimple;
+
+/**
+ * On device store for the user's library. Playlists are saved along with their snapshot id so that later syncs only
+ * need to refetch the tracks of playlists that have actually changed
+ */
+public class LibraryDatabase extends SQLiteOpenHelper {
+
+    private static volatile LibraryDatabase libraryDatabase;
+
+    private static final String DATABASE_NAME = "library.db";
+    private static final int DATABASE_VERSION = 1;
+
+    public static final String TABLE_PLAYLISTS = "playlists";
+    public static final String TABLE_TRACKS = "tracks";
+    public static final String TABLE_ALBUMS = "albums";
+    public static final String TABLE_ARTISTS = "artists";
+    public static final String TABLE_IMAGES = "images";
+
+    public static final String COLUMN_ID = "id";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_OWNER_ID = "owner_id";
+    public static final String COLUMN_SNAPSHOT_ID = "snapshot_id";
+    public static final String COLUMN_POSITION = "position";
+    public static final String COLUMN_TOTAL = "total";
+    public static final String COLUMN_LOADED = "loaded";
+    public static final String COLUMN_PLAYLIST_ID = "playlist_id";
+    public static final String COLUMN_URI = "uri";
+    public static final String COLUMN_TITLE = "title";
+    public static final String COLUMN_ALBUM_ID = "album_id";
+    public static final String COLUMN_ARTIST_ID = "artist_id";
+    public static final String COLUMN_TYPE = "type";
+    public static final String COLUMN_URL = "url";
+    public static final String COLUMN_WIDTH = "width";
+    public static final String COLUMN_HEIGHT = "height";
+
+    private static final String CREATE_PLAYLISTS = "CREATE TABLE " + TABLE_PLAYLISTS + " (" +
+            COLUMN_ID + " TEXT PRIMARY KEY, " +
+            COLUMN_NAME + " TEXT, " +
+            COLUMN_OWNER_ID + " TEXT, " +
+            COLUMN_SNAPSHOT_ID + " TEXT, " +
+            COLUMN_POSITION + " INTEGER, " +
+            COLUMN_TOTAL + " INTEGER, " +
+            COLUMN_LOADED + " INTEGER)";
+
+    private static final String CREATE_TRACKS = "CREATE TABLE " + TABLE_TRACKS + " (" +
+            COLUMN_PLAYLIST_ID + " TEXT, " +
+            COLUMN_POSITION + " INTEGER, " +
+            COLUMN_URI + " TEXT, " +
+            COLUMN_TITLE + " TEXT, " +
+            COLUMN_ALBUM_ID + " TEXT, " +
+            COLUMN_ARTIST_ID + " TEXT, " +
+            "PRIMARY KEY (" + COLUMN_PLAYLIST_ID + ", " + COLUMN_POSITION + "))";
+
+    private static final String CREATE_ALBUMS = "CREATE TABLE " + TABLE_ALBUMS + " (" +
+            COLUMN_ID + " TEXT PRIMARY KEY, " +
+            COLUMN_NAME + " TEXT)";
+
+    private static final String CREATE_ARTISTS = "CREATE TABLE " + TABLE_ARTISTS + " (" +
+            COLUMN_ID + " TEXT PRIMARY KEY, " +
+            COLUMN_NAME + " TEXT, " +
+            COLUMN_TYPE + " TEXT)";
+
+    private static final String CREATE_IMAGES = "CREATE TABLE " + TABLE_IMAGES + " (" +
+            COLUMN_ALBUM_ID + " TEXT, " +
+            COLUMN_POSITION + " INTEGER, " +
+            COLUMN_URL + " TEXT, " +
+            COLUMN_WIDTH + " INTEGER, " +
+            COLUMN_HEIGHT + " INTEGER, " +
+            "PRIMARY KEY (" + COLUMN_ALBUM_ID + ", " + COLUMN_POSITION + "))";
+
+    /**
+     * Temporary table of the playlists to keep while retaining playlists. SQLite limits how many arguments a statement
+     * can have, so big libraries can't list every id in the delete itself
+     */
+    private static final String TABLE_RETAINED = "retained_playlists";
+
+    private static final String CREATE_RETAINED = "CREATE TEMP TABLE IF NOT EXISTS " + TABLE_RETAINED + " (" +
+            COLUMN_ID + " TEXT PRIMARY KEY)";
+
+    /**
+     * Columns that are read to build a LibraryPlaylist
+     */
+    private static final String[] PLAYLIST_COLUMNS = new String[] {
+            COLUMN_ID, COLUMN_NAME, COLUMN_OWNER_ID, COLUMN_SNAPSHOT_ID, COLUMN_TOTAL };
+
+    /**
+     * Query for every playlist and its tracks, in the order that the user has them on Spotify. The album images are
+     * read separately with QUERY_LIBRARY_IMAGES, since each album has a few sizes. The two arguments are the range of
+     * track positions to include for each playlist
+     */
+    private static final String QUERY_LIBRARY = "SELECT " +
+            "p." + COLUMN_ID + ", " +
+            "p." + COLUMN_NAME + ", " +
+            "t." + COLUMN_URI + ", " +
+            "t." + COLUMN_TITLE + ", " +
+            "al." + COLUMN_NAME + ", " +
+            "ar." + COLUMN_NAME + ", " +
+            "ar." + COLUMN_TYPE + ", " +
+            "t." + COLUMN_ALBUM_ID + ", " +
+            "t." + COLUMN_ARTIST_ID +
+            " FROM " + TABLE_PLAYLISTS + " p" +
+            " LEFT JOIN " + TABLE_TRACKS + " t ON t." + COLUMN_PLAYLIST_ID + " = p." + COLUMN_ID +
+            " AND t." + COLUMN_POSITION + " >= ? AND t." + COLUMN_POSITION + " < ?" +
+            " LEFT JOIN " + TABLE_ALBUMS + " al ON al." + COLUMN_ID + " = t." + COLUMN_ALBUM_ID +
+            " LEFT JOIN " + TABLE_ARTISTS + " ar ON ar." + COLUMN_ID + " = t." + COLUMN_ARTIST_ID +
+            " ORDER BY p." + COLUMN_POSITION + ", t." + COLUMN_POSITION;
+
+    /**
+     * Same as the library query, but limited to the tracks of a single playlist. The playlist id is the third argument
+     */
+    private static final String QUERY_PLAYLIST = QUERY_LIBRARY.replace(" ORDER BY ",
+            " WHERE p." + COLUMN_ID + " = ? ORDER BY ");
+
+    /**
+     * Query for every size of the artwork for the albums of the tracks in the library query, with the same arguments
+     */
+    private static final String QUERY_LIBRARY_IMAGES = "SELECT " +
+            COLUMN_ALBUM_ID + ", " +
+            COLUMN_URL + ", " +
+            COLUMN_WIDTH + ", " +
+            COLUMN_HEIGHT +
+            " FROM " + TABLE_IMAGES +
+            " WHERE " + COLUMN_ALBUM_ID + " IN (SELECT " + COLUMN_ALBUM_ID + " FROM " + TABLE_TRACKS +
+            " WHERE " + COLUMN_POSITION + " >= ? AND " + COLUMN_POSITION + " < ?)" +
+            " ORDER BY " + COLUMN_ALBUM_ID + ", " + COLUMN_POSITION;
+
+    /**
+     * Same as the library images query, but limited to the tracks of a single playlist
+     */
+    private static final String QUERY_PLAYLIST_IMAGES = QUERY_LIBRARY_IMAGES.replace(" < ?)",
+            " < ? AND " + COLUMN_PLAYLIST_ID + " = ?)");
+
+    /**
+     * Get a singleton database object, shared between all classes
+     */
+    public static synchronized LibraryDatabase get(Context context) {
+        if (libraryDatabase == null) {
+            libraryDatabase = new LibraryDatabase(context.getApplicationContext());
+        }
+
+        return libraryDatabase;
+    }
+
+    protected LibraryDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(CREATE_PLAYLISTS);
+        db.execSQL(CREATE_TRACKS);
+        db.execSQL(CREATE_ALBUMS);
+        db.execSQL(CREATE_ARTISTS);
+        db.execSQL(CREATE_IMAGES);
+    }
+
+    /**
+     * The database is only a cache of what is on Spotify, so on an upgrade we just start over and let the next sync
+     * fill it back in
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PLAYLISTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRACKS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ALBUMS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTISTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_IMAGES);
+        onCreate(db);
+    }
+
+    /**
+     * Get the snapshot id that was stored the last time a playlist was synced, or null if we have never synced it
+     */
+    public String getSnapshotId(String playlistId) {
+        Cursor cursor = getReadableDatabase().query(TABLE_PLAYLISTS, new String[] { COLUMN_SNAPSHOT_ID },
+                COLUMN_ID + " = ?", new String[] { playlistId }, null, null, null);
+
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Get how many of the playlist's tracks on Spotify have been stored so far. Tracks are loaded a page at a time as
+     * the user scrolls through a playlist, so this can be less than the total
+     */
+    public int getLoadedCount(String playlistId) {
+        Cursor cursor = getReadableDatabase().query(TABLE_PLAYLISTS, new String[] { COLUMN_LOADED },
+                COLUMN_ID + " = ?", new String[] { playlistId }, null, null, null);
+
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Get the stored information for a playlist, enough to load more of its tracks, or null if it is not stored
+     */
+    public LibraryPlaylist getPlaylist(String playlistId) {
+        Cursor cursor = getReadableDatabase().query(TABLE_PLAYLISTS, PLAYLIST_COLUMNS,
+                COLUMN_ID + " = ?", new String[] { playlistId }, null, null, null);
+
+        try {
+            return cursor.moveToFirst() ? buildPlaylist(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Get the stored information for every playlist, in the user's playlist order
+     */
+    public List<LibraryPlaylist> getPlaylists() {
+        List<LibraryPlaylist> playlists = new ArrayList<LibraryPlaylist>();
+        Cursor cursor = getReadableDatabase().query(TABLE_PLAYLISTS, PLAYLIST_COLUMNS,
+                null, null, null, null, COLUMN_POSITION);
+
+        try {
+            while (cursor.moveToNext()) {
+                playlists.add(buildPlaylist(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return playlists;
+    }
+
+    private LibraryPlaylist buildPlaylist(Cursor cursor) {
+        LibraryPlaylist playlist = new LibraryPlaylist();
+        playlist.id = cursor.getString(0);
+        playlist.name = cursor.getString(1);
+        playlist.owner = new UserSimple();
+        playlist.owner.id = cursor.getString(2);
+        playlist.snapshot_id = cursor.getString(3);
+        playlist.tracks = new PlaylistTracksInformation();
+        playlist.tracks.total = cursor.getInt(4);
+        return playlist;
+    }
+
+    /**
+     * Save a playlist's information and its position in the user's library. If tracks is null, then the playlist has
+     * not changed and the tracks that are already stored for it are kept. Tracks don't need to be the full playlist,
+     * the rest can be added later with appendTracks
+     */
+    public void savePlaylist(PlaylistSimple playlist, String snapshotId, int position, List<PlaylistTrack> tracks) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+
+        try {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_ID, playlist.id);
+            values.put(COLUMN_NAME, playlist.name);
+            values.put(COLUMN_OWNER_ID, playlist.owner == null ? null : playlist.owner.id);
+            values.put(COLUMN_POSITION, position);
+            values.put(COLUMN_TOTAL, playlist.tracks == null ? 0 : playlist.tracks.total);
+
+            if (tracks != null) {
+                // only move the snapshot forward when we are writing the tracks that go with it
+                values.put(COLUMN_SNAPSHOT_ID, snapshotId);
+                values.put(COLUMN_LOADED, tracks.size());
+                db.delete(TABLE_TRACKS, COLUMN_PLAYLIST_ID + " = ?", new String[] { playlist.id });
+                insertTracks(db, playlist.id, 0, tracks);
+            } else {
+                values.put(COLUMN_SNAPSHOT_ID, getSnapshotId(playlist.id));
+                values.put(COLUMN_LOADED, getLoadedCount(playlist.id));
+            }
+
+            db.insertWithOnConflict(TABLE_PLAYLISTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Add the next page of a playlist's tracks, loaded from Spotify starting at offset. If the offset doesn't line up
+     * with what is already stored, then the page was already added or the playlist was resynced while it was loading,
+     * so it is ignored
+     * @return true if the tracks were added
+     */
+    public boolean appendTracks(String playlistId, int offset, List<PlaylistTrack> tracks) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+
+        try {
+            if (getLoadedCount(playlistId) != offset) {
+                return false;
+            }
+
+            Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_TRACKS + " WHERE " + COLUMN_PLAYLIST_ID +
+                    " = ?", new String[] { playlistId });
+            int position;
+            try {
+                position = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+            } finally {
+                cursor.close();
+            }
+
+            insertTracks(db, playlistId, position, tracks);
+
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_LOADED, offset + tracks.size());
+            db.update(TABLE_PLAYLISTS, values, COLUMN_ID + " = ?", new String[] { playlistId });
+
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Insert tracks for a playlist starting at the given position, along with their albums, images and artists
+     */
+    private void insertTracks(SQLiteDatabase db, String playlistId, int position, List<PlaylistTrack> tracks) {
+        Set<String> savedAlbums = new HashSet<String>();
+        Set<String> savedArtists = new HashSet<String>();
+        ContentValues values = new ContentValues();
+
+        for (PlaylistTrack playlistTrack : tracks) {
+            Track track = playlistTrack == null ? null : playlistTrack.track;
+            if (track == null || TextUtils.isEmpty(track.uri)) {
+                continue;
+            }
+
+            String albumId = getAlbumId(track.album);
+            if (albumId != null && savedAlbums.add(albumId)) {
+                saveAlbum(db, albumId, track.album);
+            }
+
+            String artistId = null;
+            if (track.artists != null && track.artists.size() > 0) {
+                ArtistSimple artist = track.artists.get(0);
+                artistId = getArtistId(artist);
+
+                if (artistId != null && savedArtists.add(artistId)) {
+                    saveArtist(db, artistId, artist);
+                }
+            }
+
+            values.clear();
+            values.put(COLUMN_PLAYLIST_ID, playlistId);
+            values.put(COLUMN_POSITION, position++);
+            values.put(COLUMN_URI, track.uri);
+            values.put(COLUMN_TITLE, track.name);
+            values.put(COLUMN_ALBUM_ID, albumId);
+            values.put(COLUMN_ARTIST_ID, artistId);
+            db.insert(TABLE_TRACKS, null, values);
+        }
+    }
+
+    private void saveAlbum(SQLiteDatabase db, String albumId, AlbumSimple album) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ID, albumId);
+        values.put(COLUMN_NAME, album.name);
+        db.insertWithOnConflict(TABLE_ALBUMS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+        db.delete(TABLE_IMAGES, COLUMN_ALBUM_ID + " = ?", new String[] { albumId });
+        if (album.images != null) {
+            for (int i = 0; i < album.images.size(); i++) {
+                Image image = album.images.get(i);
+
+                values.clear();
+                values.put(COLUMN_ALBUM_ID, albumId);
+                values.put(COLUMN_POSITION, i);
+                values.put(COLUMN_URL, image.url);
+                values.put(COLUMN_WIDTH, image.width);
+                values.put(COLUMN_HEIGHT, image.height);
+                db.insert(TABLE_IMAGES, null, values);
+            }
+        }
+    }
+
+    private void saveArtist(SQLiteDatabase db, String artistId, ArtistSimple artist) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ID, artistId);
+        values.put(COLUMN_NAME, artist.name);
+        values.put(COLUMN_TYPE, artist.type);
+        db.insertWithOnConflict(TABLE_ARTISTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Local files don't have an album id on Spotify, so fall back to the name to still be able to share the row
+     */
+    private String getAlbumId(AlbumSimple album) {
+        if (album == null) {
+            return null;
+        }
+
+        return album.id != null ? album.id : album.name;
+    }
+
+    private String getArtistId(ArtistSimple artist) {
+        return artist.id != null ? artist.id : artist.name;
+    }
+
+    /**
+     * Remove every playlist that is not in the given ids, along with any albums and artists that are no longer used
+     */
+    public void retainPlaylists(Collection<String> playlistIds) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+
+        try {
+            db.execSQL(CREATE_RETAINED);
+            db.delete(TABLE_RETAINED, null, null);
+
+            ContentValues values = new ContentValues();
+            for (String playlistId : playlistIds) {
+                values.put(COLUMN_ID, playlistId);
+                db.insertWithOnConflict(TABLE_RETAINED, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            }
+
+            String retained = "(SELECT " + COLUMN_ID + " FROM " + TABLE_RETAINED + ")";
+            db.delete(TABLE_PLAYLISTS, COLUMN_ID + " NOT IN " + retained, null);
+            db.delete(TABLE_TRACKS, COLUMN_PLAYLIST_ID + " NOT IN " + retained, null);
+            db.delete(TABLE_RETAINED, null, null);
+            db.delete(TABLE_ALBUMS, COLUMN_ID + " NOT IN (SELECT " + COLUMN_ALBUM_ID + " FROM " + TABLE_TRACKS +
+                    " WHERE " + COLUMN_ALBUM_ID + " IS NOT NULL)", null);
+            db.delete(TABLE_IMAGES, COLUMN_ALBUM_ID + " NOT IN (SELECT " + COLUMN_ID + " FROM " + TABLE_ALBUMS + ")",
+                    null);
+            db.delete(TABLE_ARTISTS, COLUMN_ID + " NOT IN (SELECT " + COLUMN_ARTIST_ID + " FROM " + TABLE_TRACKS +
+                    " WHERE " + COLUMN_ARTIST_ID + " IS NOT NULL)", null);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Check whether a sync has ever been saved to the database
+     */
+    public boolean hasLibrary() {
+        Cursor cursor = getReadableDatabase().query(TABLE_PLAYLISTS, new String[] { COLUMN_ID },
+                null, null, null, null, null, "1");
+
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Get every stored playlist and its songs, keyed by the playlist name and in the user's playlist order
+     */
+    public LinkedHashMap<String, List<Song>> getLibrary() {
+        return getLibrary(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get every stored playlist with only the first songs of each, the rest can be read with getPlaylistSongs when
+     * they are needed
+     */
+    public LinkedHashMap<String, List<Song>> getLibrary(int songsPerPlaylist) {
+        LinkedHashMap<String, List<Song>> library = new LinkedHashMap<String, List<Song>>();
+        String[] args = new String[] { "0", String.valueOf(songsPerPlaylist) };
+        HashMap<String, List<AlbumImage>> images = getAlbumImages(QUERY_LIBRARY_IMAGES, args);
+        Cursor cursor = getReadableDatabase().rawQuery(QUERY_LIBRARY, args);
+
+        try {
+            String currentId = null;
+            List<Song> songs = null;
+
+            while (cursor.moveToNext()) {
+                String id = cursor.getString(0);
+                if (songs == null || !TextUtils.equals(id, currentId)) {
+                    currentId = id;
+                    songs = new ArrayList<Song>();
+                    library.put(cursor.getString(1), songs);
+                }
+
+                // playlists without any tracks still come back as a single row with no track information
+                if (cursor.isNull(2)) {
+                    continue;
+                }
+
+                songs.add(buildSong(cursor, images));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return library;
+    }
+
+    /**
+     * Get the songs of every stored playlist in a single query, in the user's playlist order. Songs that are in more
+     * than one playlist come back once for each of them
+     */
+    public List<Song> getAllSongs() {
+        String[] args = new String[] { "0", String.valueOf(Integer.MAX_VALUE) };
+        return readSongs(QUERY_LIBRARY, QUERY_LIBRARY_IMAGES, args);
+    }
+
+    /**
+     * Get the stored songs for a single playlist, in playlist order
+     */
+    public List<Song> getPlaylistSongs(String playlistId) {
+        return getPlaylistSongs(playlistId, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get a range of the stored songs for a single playlist, in playlist order
+     */
+    public List<Song> getPlaylistSongs(String playlistId, int offset, int limit) {
+        long end = Math.min((long) offset + limit, Integer.MAX_VALUE);
+        String[] args = new String[] { String.valueOf(offset), String.valueOf(end), playlistId };
+        return readSongs(QUERY_PLAYLIST, QUERY_PLAYLIST_IMAGES, args);
+    }
+
+    /**
+     * Read the songs out of a library or playlist query, skipping the rows of playlists without any tracks
+     * @param imagesQuery the query for the artwork of the same tracks, which takes the same arguments
+     */
+    private List<Song> readSongs(String query, String imagesQuery, String[] args) {
+        List<Song> songs = new ArrayList<Song>();
+        HashMap<String, List<AlbumImage>> images = getAlbumImages(imagesQuery, args);
+        Cursor cursor = getReadableDatabase().rawQuery(query, args);
+
+        try {
+            while (cursor.moveToNext()) {
+                if (!cursor.isNull(2)) {
+                    songs.add(buildSong(cursor, images));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return songs;
+    }
+
+    /**
+     * Read every size of the artwork for the albums in a query, keyed by album id and largest first
+     */
+    private HashMap<String, List<AlbumImage>> getAlbumImages(String query, String[] args) {
+        HashMap<String, List<AlbumImage>> images = new HashMap<String, List<AlbumImage>>();
+        Cursor cursor = getReadableDatabase().rawQuery(query, args);
+
+        try {
+            while (cursor.moveToNext()) {
+                List<AlbumImage> albumImages = images.get(cursor.getString(0));
+                if (albumImages == null) {
+                    albumImages = new ArrayList<AlbumImage>(3);
+                    images.put(cursor.getString(0), albumImages);
+                }
+
+                albumImages.add(new AlbumImage(cursor.getString(1), cursor.getInt(2), cursor.getInt(3)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return images;
+    }
+
+    /**
+     * Build a song from the current row of a library or playlist query, sharing it through the song catalog
+     */
+    private Song buildSong(Cursor cursor, HashMap<String, List<AlbumImage>> images) {
+        SongCatalog catalog = SongCatalog.get();
+        Album album = catalog.getAlbum(cursor.getString(7), cursor.getString(4), images.get(cursor.getString(7)));
+        Artist artist = catalog.getArtist(cursor.getString(8), cursor.getString(5), cursor.getString(6));
+        return catalog.getSong(cursor.getString(2), cursor.getString(3), album, artist);
+    }
+
+}
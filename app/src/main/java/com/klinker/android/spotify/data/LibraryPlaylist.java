@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import kaaes.spotify.webapi.android.models.PlaylistSimple;
+
+/**
+ * Simple playlist that also keeps the snapshot id Spotify sends back with the user's playlists. The web api library's
+ * PlaylistSimple drops this field, but we need it to tell whether a playlist has changed since the last sync
+ */
+public class LibraryPlaylist extends PlaylistSimple {
+
+    public String snapshot_id;
+
+}
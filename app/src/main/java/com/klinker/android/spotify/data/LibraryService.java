@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import java.util.Map;
+
+import kaaes.spotify.webapi.android.models.Pager;
+import retrofit.http.GET;
+import retrofit.http.Path;
+import retrofit.http.QueryMap;
+
+/**
+ * Retrofit interface for the web api calls used when syncing the library that the SpotifyService from the web api
+ * library does not model the way we need
+ */
+public interface LibraryService {
+
+    /**
+     * Get a page of the user's playlists, including each playlist's snapshot id
+     */
+    @GET("/users/{id}/playlists")
+    Pager<LibraryPlaylist> getPlaylists(@Path("id") String userId, @QueryMap Map<String, Object> options);
+
+    /**
+     * Get a page of a playlist's tracks, streamed in with only the fields that we store
+     */
+    @GET("/users/{user_id}/playlists/{playlist_id}/tracks")
+    TrackPage getPlaylistTracks(@Path("user_id") String userId, @Path("playlist_id") String playlistId,
+                                @QueryMap Map<String, Object> options);
+
+}
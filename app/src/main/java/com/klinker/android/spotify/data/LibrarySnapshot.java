@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import android.content.Context;
+import android.util.Log;
+import kaaes.spotify.webapi.android.models.PlaylistTracksInformation;
+import kaaes.spotify.webapi.android.models.UserSimple;
+import lombok.Getter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Single file copy of the browse rows from the last successful sync, the playlists and the first page of songs in
+ * each. Reading it back is one sequential read, so the rows can be shown as soon as the app starts, before the
+ * database is opened or the network is up. The file starts with a version number and is ignored when it doesn't
+ * match, so changing the format only costs one launch without the snapshot
+ */
+public class LibrarySnapshot {
+
+    private static final String TAG = "LibrarySnapshot";
+
+    public static final String FILE_NAME = "library_snapshot";
+
+    /**
+     * Bump this whenever the format of the file changes
+     */
+    protected static final int VERSION = 1;
+
+    private static volatile LibrarySnapshot librarySnapshot;
+
+    /**
+     * Get a singleton snapshot, shared between all classes
+     */
+    public static synchronized LibrarySnapshot get(Context context) {
+        if (librarySnapshot == null) {
+            librarySnapshot = new LibrarySnapshot(new File(context.getFilesDir(), FILE_NAME));
+        }
+
+        return librarySnapshot;
+    }
+
+    /**
+     * A playlist and the songs that its row starts with
+     */
+    public static class Row {
+
+        @Getter private LibraryPlaylist playlist;
+        @Getter private List<Song> songs;
+
+        public Row(LibraryPlaylist playlist, List<Song> songs) {
+            this.playlist = playlist;
+            this.songs = songs;
+        }
+    }
+
+    private File file;
+
+    protected LibrarySnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the rows back out of the snapshot. Songs, albums and artists are shared through the SongCatalog
+     * @return the rows in library order, or null if there isn't a usable snapshot
+     */
+    public synchronized List<Row> read() {
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION) {
+                Log.v(TAG, "ignoring snapshot written by a different version");
+                return null;
+            }
+
+            return readRows(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "error reading library snapshot", e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Replace the snapshot with new rows. The rows are written to a temporary file first and then moved over the old
+     * snapshot, so a crash part way through never leaves a broken file behind
+     * @return true if the snapshot was saved
+     */
+    public synchronized boolean write(List<Row> rows) {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(VERSION);
+            writeRows(out, rows);
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file)) {
+                throw new IOException("couldn't replace " + file);
+            }
+
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "error writing library snapshot", e);
+            temp.delete();
+            return false;
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Albums and artists are shared between a lot of songs, so each one is written once up front and the songs refer
+     * to them by index
+     */
+    private void writeRows(DataOutputStream out, List<Row> rows) throws IOException {
+        IdentityHashMap<Album, Integer> albums = new IdentityHashMap<Album, Integer>();
+        IdentityHashMap<Artist, Integer> artists = new IdentityHashMap<Artist, Integer>();
+        List<Album> albumList = new ArrayList<Album>();
+        List<Artist> artistList = new ArrayList<Artist>();
+
+        for (Row row : rows) {
+            for (Song song : row.songs) {
+                if (song.getAlbumInfo() != null && !albums.containsKey(song.getAlbumInfo())) {
+                    albums.put(song.getAlbumInfo(), albumList.size());
+                    albumList.add(song.getAlbumInfo());
+                }
+
+                if (song.getArtistInfo() != null && !artists.containsKey(song.getArtistInfo())) {
+                    artists.put(song.getArtistInfo(), artistList.size());
+                    artistList.add(song.getArtistInfo());
+                }
+            }
+        }
+
+        out.writeInt(albumList.size());
+        for (Album album : albumList) {
+            writeString(out, album.getKey());
+            writeString(out, album.getName());
+
+            List<AlbumImage> images = album.getImages();
+            out.writeInt(images == null ? 0 : images.size());
+            for (int i = 0; images != null && i < images.size(); i++) {
+                writeString(out, images.get(i).getUrl());
+                out.writeInt(images.get(i).getWidth());
+                out.writeInt(images.get(i).getHeight());
+            }
+        }
+
+        out.writeInt(artistList.size());
+        for (Artist artist : artistList) {
+            writeString(out, artist.getKey());
+            writeString(out, artist.getName());
+            writeString(out, artist.getType());
+        }
+
+        out.writeInt(rows.size());
+        for (Row row : rows) {
+            LibraryPlaylist playlist = row.playlist;
+            writeString(out, playlist.id);
+            writeString(out, playlist.name);
+            writeString(out, playlist.owner == null ? null : playlist.owner.id);
+            writeString(out, playlist.snapshot_id);
+            out.writeInt(playlist.tracks == null ? 0 : playlist.tracks.total);
+
+            out.writeInt(row.songs.size());
+            for (Song song : row.songs) {
+                writeString(out, song.getId());
+                writeString(out, song.getTitle());
+                out.writeInt(song.getAlbumInfo() == null ? -1 : albums.get(song.getAlbumInfo()));
+                out.writeInt(song.getArtistInfo() == null ? -1 : artists.get(song.getArtistInfo()));
+            }
+        }
+    }
+
+    private List<Row> readRows(DataInputStream in) throws IOException {
+        SongCatalog catalog = SongCatalog.get();
+
+        Album[] albums = new Album[in.readInt()];
+        for (int i = 0; i < albums.length; i++) {
+            String key = readString(in);
+            String name = readString(in);
+
+            int imageCount = in.readInt();
+            List<AlbumImage> images = new ArrayList<AlbumImage>(imageCount);
+            for (int j = 0; j < imageCount; j++) {
+                images.add(new AlbumImage(readString(in), in.readInt(), in.readInt()));
+            }
+
+            albums[i] = catalog.getAlbum(key, name, images);
+        }
+
+        Artist[] artists = new Artist[in.readInt()];
+        for (int i = 0; i < artists.length; i++) {
+            artists[i] = catalog.getArtist(readString(in), readString(in), readString(in));
+        }
+
+        int rowCount = in.readInt();
+        List<Row> rows = new ArrayList<Row>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            LibraryPlaylist playlist = new LibraryPlaylist();
+            playlist.id = readString(in);
+            playlist.name = readString(in);
+            playlist.owner = new UserSimple();
+            playlist.owner.id = readString(in);
+            playlist.snapshot_id = readString(in);
+            playlist.tracks = new PlaylistTracksInformation();
+            playlist.tracks.total = in.readInt();
+
+            int songCount = in.readInt();
+            List<Song> songs = new ArrayList<Song>(songCount);
+            for (int j = 0; j < songCount; j++) {
+                String uri = readString(in);
+                String title = readString(in);
+                int album = in.readInt();
+                int artist = in.readInt();
+                songs.add(catalog.getSong(uri, title, album < 0 ? null : albums[album],
+                        artist < 0 ? null : artists[artist]));
+            }
+
+            rows.add(new Row(playlist, songs));
+        }
+
+        return rows;
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing left to do with it
+            }
+        }
+    }
+
+}
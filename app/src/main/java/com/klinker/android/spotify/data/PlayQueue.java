@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Queue of songs for the player. The queue starts at the selected song and wraps back around to the beginning of the
+ * playlist, so position 0 is always the song that was picked. The queue owns the shuffle order as well, so that we
+ * always know which songs are coming up next. An index from each track uri to its positions in the queue is kept, so
+ * finding the song the player switched to doesn't need to search the whole queue and still works when a playlist has
+ * the same track more than once. Songs can be added to the end of the playlist after the queue is made, so that
+ * playback can start before a long playlist has finished loading. Should only be used from the UI thread
+ */
+public class PlayQueue {
+
+    /**
+     * Interface for hearing about songs that were added to the queue after it was made
+     */
+    public interface OnSongsAddedListener {
+
+        /**
+         * The player has to be restarted from the cursor with the new uris to pick up the added songs
+         * @param queue the queue that the songs were added to
+         */
+        void onSongsAdded(PlayQueue queue);
+    }
+
+    private final List<Song> songs;
+    private int[] order;
+    private HashMap<String, int[]> positions;
+    private int cursor;
+    private boolean started;
+    private OnSongsAddedListener listener;
+
+    /**
+     * Create a new queue. The songs are copied, so the list can keep changing after the queue is made
+     * @param songs the songs in the playlist
+     * @param startIndex the index of the song in the playlist to start with
+     */
+    public PlayQueue(List<Song> songs, int startIndex) {
+        this.songs = new ArrayList<Song>(songs);
+        this.order = new int[songs.size()];
+
+        int start = songs.size() == 0 ? 0 : Math.max(0, Math.min(startIndex, songs.size() - 1));
+        for (int i = 0; i < order.length; i++) {
+            order[i] = (start + i) % order.length;
+        }
+    }
+
+    public int size() {
+        return songs.size();
+    }
+
+    /**
+     * Get the song at a position in the queue
+     */
+    public Song getSong(int position) {
+        return songs.get(order[position]);
+    }
+
+    /**
+     * Get the position of the song that is currently playing
+     */
+    public int getCursor() {
+        return cursor;
+    }
+
+    public Song getCurrentSong() {
+        return getSong(cursor);
+    }
+
+    /**
+     * Get the uris of every song, in queue order, to hand to the player
+     */
+    public List<String> getUris() {
+        List<String> uris = new ArrayList<String>(songs.size());
+        for (int i = 0; i < songs.size(); i++) {
+            uris.add(getSong(i).getId());
+        }
+
+        return uris;
+    }
+
+    /**
+     * Get the songs that will play after the current one
+     * @param count the max number of songs to get
+     * @param wrap true if the queue starts over after the last song, when repeat is on
+     */
+    public List<Song> getUpcoming(int count, boolean wrap) {
+        int available = wrap ? songs.size() - 1 : songs.size() - 1 - cursor;
+        count = Math.max(0, Math.min(count, available));
+
+        List<Song> upcoming = new ArrayList<Song>(count);
+        for (int i = 1; i <= count; i++) {
+            upcoming.add(getSong((cursor + i) % songs.size()));
+        }
+
+        return upcoming;
+    }
+
+    /**
+     * Shuffle the songs that haven't played yet, or put them back in playlist order starting after the current song.
+     * Songs up to and including the cursor stay where they are. The player has to be restarted from the cursor with
+     * the new uris after this
+     * @param shuffled true to shuffle the rest of the queue
+     * @param random source of the shuffle order
+     */
+    public void setShuffled(boolean shuffled, Random random) {
+        if (songs.size() == 0) {
+            return;
+        }
+
+        boolean[] played = new boolean[songs.size()];
+        for (int i = 0; i <= cursor; i++) {
+            played[order[i]] = true;
+        }
+
+        int next = cursor + 1;
+        for (int i = 1; i < songs.size(); i++) {
+            int index = (order[cursor] + i) % songs.size();
+            if (!played[index]) {
+                order[next++] = index;
+            }
+        }
+
+        if (shuffled) {
+            for (int i = songs.size() - 1; i > cursor + 1; i--) {
+                int swap = cursor + 1 + random.nextInt(i - cursor);
+                int temp = order[i];
+                order[i] = order[swap];
+                order[swap] = temp;
+            }
+        }
+
+        // the index is out of date, and the player will report the current song again once it is restarted
+        positions = null;
+        started = false;
+    }
+
+    /**
+     * Add songs to the end of the playlist, for the rest of a long playlist that finished loading after playback
+     * started. They are queued in playlist order right after the last song that was already in the playlist, before
+     * the queue wraps around to the start, or right after the current song if that one has already played. The new
+     * songs aren't shuffled, so the listener should shuffle the queue again if shuffle is on
+     */
+    public void addSongs(List<Song> added) {
+        if (added.size() == 0) {
+            return;
+        }
+
+        int lastIndex = songs.size() - 1;
+        songs.addAll(added);
+
+        int insertAt = order.length;
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] == lastIndex) {
+                insertAt = i + 1;
+                break;
+            }
+        }
+
+        insertAt = Math.min(Math.max(insertAt, cursor + 1), order.length);
+
+        int[] grown = new int[songs.size()];
+        System.arraycopy(order, 0, grown, 0, insertAt);
+        for (int i = 0; i < added.size(); i++) {
+            grown[insertAt + i] = lastIndex + 1 + i;
+        }
+        System.arraycopy(order, insertAt, grown, insertAt + added.size(), order.length - insertAt);
+        order = grown;
+
+        // the index is out of date, it is rebuilt the next time the player changes tracks
+        positions = null;
+
+        if (listener != null) {
+            listener.onSongsAdded(this);
+        }
+    }
+
+    public void setOnSongsAddedListener(OnSongsAddedListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Move the cursor to the track that the player changed to. If the track is in the queue more than once, then
+     * the position right after the cursor is preferred, then the one right before it (skipping back), and otherwise
+     * the next one after the cursor
+     * @return the new cursor, or -1 if the track isn't in the queue. The cursor is left alone in that case
+     */
+    public int moveTo(String uri) {
+        int[] trackPositions = getPositions().get(uri);
+        if (trackPositions == null) {
+            return -1;
+        }
+
+        if (!started) {
+            // the first track the player reports is the one we started on
+            started = true;
+            if (contains(trackPositions, cursor)) {
+                return cursor;
+            }
+        }
+
+        if (contains(trackPositions, cursor + 1)) {
+            cursor = cursor + 1;
+        } else if (contains(trackPositions, cursor - 1)) {
+            cursor = cursor - 1;
+        } else {
+            // positions are in order, so wrap back to the first one if there isn't one after the cursor
+            int next = trackPositions[0];
+            for (int position : trackPositions) {
+                if (position > cursor) {
+                    next = position;
+                    break;
+                }
+            }
+
+            cursor = next;
+        }
+
+        return cursor;
+    }
+
+    private boolean contains(int[] trackPositions, int position) {
+        for (int p : trackPositions) {
+            if (p == position) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The index is built the first time it is needed, so that creating a queue stays cheap
+     */
+    private HashMap<String, int[]> getPositions() {
+        if (positions == null) {
+            positions = new HashMap<String, int[]>(songs.size() * 4 / 3 + 1);
+
+            for (int i = 0; i < songs.size(); i++) {
+                String uri = getSong(i).getId();
+                int[] current = positions.get(uri);
+
+                if (current == null) {
+                    positions.put(uri, new int[] { i });
+                } else {
+                    // tracks are very rarely in a playlist more than once, so growing one at a time is fine
+                    int[] grown = new int[current.length + 1];
+                    System.arraycopy(current, 0, grown, 0, current.length);
+                    grown[current.length] = i;
+                    positions.put(uri, grown);
+                }
+            }
+        }
+
+        return positions;
+    }
+
+}
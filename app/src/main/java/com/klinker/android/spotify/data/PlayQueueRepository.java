@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds play queues in memory so that only a queue id needs to be passed to the PlayerActivity, instead of copying
+ * every song in the playlist into the intent. Only the most recently used queues are kept around
+ */
+public class PlayQueueRepository {
+
+    /**
+     * Number of queues to hold on to, older ones are dropped once there are more than this
+     */
+    private static final int MAX_QUEUES = 4;
+
+    private static volatile PlayQueueRepository playQueueRepository;
+
+    /**
+     * Get a singleton repository, shared between all classes
+     */
+    public static synchronized PlayQueueRepository get() {
+        if (playQueueRepository == null) {
+            playQueueRepository = new PlayQueueRepository();
+        }
+
+        return playQueueRepository;
+    }
+
+    private long nextId = 1;
+    private final LinkedHashMap<Long, PlayQueue> queues = new LinkedHashMap<Long, PlayQueue>(MAX_QUEUES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, PlayQueue> eldest) {
+            return size() > MAX_QUEUES;
+        }
+    };
+
+    protected PlayQueueRepository() {
+
+    }
+
+    /**
+     * Store a queue of songs
+     * @return the id to get the queue back with
+     */
+    public synchronized long putQueue(PlayQueue queue) {
+        long id = nextId++;
+        queues.put(id, queue);
+        return id;
+    }
+
+    /**
+     * Get a stored queue
+     * @return the queue, or null if it has been dropped or the app process was restarted since it was stored
+     */
+    public synchronized PlayQueue getQueue(long id) {
+        return queues.get(id);
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * In memory index for searching the synced library as the user types. The titles, artists and albums of each song are
+ * split into words and every word is kept in a sorted map along with the catalog ids of the songs that use it, so
+ * all of the words that start with what was typed are a single range of the map. Each word in the query has to match
+ * the start of a word in the song. Songs are found by their SongCatalog id, which are small and dense, so matches
+ * are combined with bit sets instead of hash sets. Nothing is written to disk, the index is rebuilt from the library
+ * database, which is already stored
+ */
+public class SearchIndex {
+
+    /**
+     * Number of results to return when the caller doesn't need a different amount
+     */
+    public static final int MAX_RESULTS = 100;
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static volatile SearchIndex searchIndex;
+
+    /**
+     * Get a singleton index, shared between all classes
+     */
+    public static synchronized SearchIndex get() {
+        if (searchIndex == null) {
+            searchIndex = new SearchIndex();
+        }
+
+        return searchIndex;
+    }
+
+    private final TreeMap<String, Postings> words = new TreeMap<String, Postings>();
+    private final BitSet indexed = new BitSet();
+    private SongCatalog catalog;
+
+    protected SearchIndex() {
+        this(SongCatalog.get());
+    }
+
+    /**
+     * @param catalog catalog that the songs are found in when returning results
+     */
+    protected SearchIndex(SongCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Add a song to the index. Songs that are already in it are skipped, so this is cheap to call with every page of
+     * songs that gets loaded
+     */
+    public synchronized void add(Song song) {
+        if (song == null || song.getCatalogId() < 0 || indexed.get(song.getCatalogId())) {
+            return;
+        }
+
+        indexed.set(song.getCatalogId());
+
+        HashSet<String> songWords = new HashSet<String>();
+        addWords(songWords, song.getTitle());
+        addWords(songWords, song.getArtist());
+        addWords(songWords, song.getAlbum());
+
+        for (String word : songWords) {
+            Postings postings = words.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                words.put(word, postings);
+            }
+
+            postings.add(song.getCatalogId());
+        }
+    }
+
+    /**
+     * Add a group of songs, like a page of a playlist
+     */
+    public void addAll(Collection<Song> songs) {
+        for (Song song : songs) {
+            add(song);
+        }
+    }
+
+    /**
+     * Add every song that is stored in the library, should be called off of the UI thread
+     */
+    public void addLibrary(LibraryDatabase database) {
+        addAll(database.getAllSongs());
+    }
+
+    /**
+     * Get the number of songs in the index
+     */
+    public synchronized int size() {
+        return indexed.cardinality();
+    }
+
+    public List<Song> search(String query) {
+        return search(query, MAX_RESULTS);
+    }
+
+    /**
+     * Find the songs where every word of the query starts a word of the title, artist or album
+     * @param maxResults the most songs to return
+     * @return the matching songs in the order that they were added to the catalog
+     */
+    public synchronized List<Song> search(String query, int maxResults) {
+        List<String> queryWords = tokenize(query);
+        List<Song> results = new ArrayList<Song>();
+        if (queryWords.size() == 0) {
+            return results;
+        }
+
+        BitSet matches = null;
+        for (String word : queryWords) {
+            BitSet wordMatches = findPrefix(word);
+            if (matches == null) {
+                matches = wordMatches;
+            } else {
+                matches.and(wordMatches);
+            }
+
+            if (matches.isEmpty()) {
+                return results;
+            }
+        }
+
+        for (int id = matches.nextSetBit(0); id >= 0 && results.size() < maxResults; id = matches.nextSetBit(id + 1)) {
+            Song song = catalog.getSong(id);
+            if (song != null) {
+                results.add(song);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Get every song with a word that starts with the prefix. The words are sorted, so they are all between the
+     * prefix itself and the prefix followed by the highest character
+     */
+    private BitSet findPrefix(String prefix) {
+        BitSet matches = new BitSet();
+        for (Map.Entry<String, Postings> entry : words.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+            entry.getValue().addTo(matches);
+        }
+
+        return matches;
+    }
+
+    private void addWords(HashSet<String> songWords, String text) {
+        songWords.addAll(tokenize(text));
+    }
+
+    /**
+     * Split text into lower case words with the accents removed, so that they never need to be typed
+     */
+    protected static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<String>();
+        if (text == null) {
+            return tokens;
+        }
+
+        String normalized = ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        for (String token : SEPARATORS.split(normalized.toLowerCase(Locale.US))) {
+            if (token.length() > 0) {
+                tokens.add(token);
+            }
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Catalog ids of the songs that use a word. Most words are only in a few songs, so this starts small and grows
+     * instead of using a list of boxed integers
+     */
+    private static class Postings {
+
+        private int[] ids = new int[2];
+        private int size;
+
+        public void add(int id) {
+            if (size == ids.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(ids, 0, grown, 0, size);
+                ids = grown;
+            }
+
+            ids[size++] = id;
+        }
+
+        public void addTo(BitSet bits) {
+            for (int i = 0; i < size; i++) {
+                bits.set(ids[i]);
+            }
+        }
+    }
+
+}
@@ -25,17 +25,63 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 /**
- * Data object for holding simple songs to be played
+ * Data object for holding simple songs to be played. Album and artist information is shared with every other song on
+ * the same album or by the same artist, see SongCatalog
  */
 public class Song implements Serializable {
 
     @Getter @Setter private String id;
     @Getter @Setter private String title;
-    @Getter @Setter private String album;
-    @Getter @Setter private String backgroundImageUrl;
-    @Getter @Setter private String cardImageUrl;
-    @Getter @Setter private String artist;
-    @Getter @Setter private String type;
+    @Getter @Setter private int catalogId = -1;
+    @Setter private Album album;
+    @Setter private Artist artist;
+
+    public String getAlbum() {
+        return album == null ? null : album.getName();
+    }
+
+    public String getArtist() {
+        return artist == null ? null : artist.getName();
+    }
+
+    /**
+     * Get the shared album, use getAlbum when only the name is needed
+     */
+    public Album getAlbumInfo() {
+        return album;
+    }
+
+    /**
+     * Get the shared artist, use getArtist when only the name is needed
+     */
+    public Artist getArtistInfo() {
+        return artist;
+    }
+
+    public String getType() {
+        return artist == null ? null : artist.getType();
+    }
+
+    /**
+     * Get the album artwork that best fits the size it will be shown at
+     * @param width the width in pixels that the image will be shown at
+     * @param height the height in pixels that the image will be shown at
+     */
+    public String getImageUrl(int width, int height) {
+        return album == null ? null : album.getImageUrl(width, height);
+    }
+
+    /**
+     * Backgrounds and cards both use the album artwork, these give the largest size of it. Use getImageUrl when the
+     * size it will be shown at is known
+     */
+    public String getBackgroundImageUrl() {
+        return album == null ? null : album.getImageUrl();
+    }
+
+    public String getCardImageUrl() {
+        return getBackgroundImageUrl();
+    }
 
     /**
      * Get a URI for the background image to use with picasso
@@ -71,7 +117,7 @@ public class Song implements Serializable {
                 ", title='" + title + '\'' +
                 ", backgroundImageUrl='" + getBackgroundImageUrl() + '\'' +
                 ", backgroundImageURI='" + getBackgroundImageURI().toString() + '\'' +
-                ", cardImageUrl='" + cardImageUrl + '\'' +
+                ", cardImageUrl='" + getCardImageUrl() + '\'' +
                 '}';
     }
 
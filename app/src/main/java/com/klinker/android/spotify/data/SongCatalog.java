@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.ArtistSimple;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+
+/**
+ * In memory store for every song that has been loaded. Albums and artists are interned so that songs share a single
+ * copy of them, and each song is only stored once no matter how many playlists it is in. Songs are given an int id
+ * that can be used to look them back up, which is much cheaper to hold on to than the song's uri
+ */
+public class SongCatalog {
+
+    private static volatile SongCatalog songCatalog;
+
+    /**
+     * Get a singleton catalog, shared between all classes
+     */
+    public static synchronized SongCatalog get() {
+        if (songCatalog == null) {
+            songCatalog = new SongCatalog();
+        }
+
+        return songCatalog;
+    }
+
+    private final HashMap<String, Album> albums = new HashMap<String, Album>();
+    private final HashMap<String, Artist> artists = new HashMap<String, Artist>();
+    private final HashMap<String, Integer> songIds = new HashMap<String, Integer>();
+    private final ArrayList<Song> songs = new ArrayList<Song>();
+
+    protected SongCatalog() {
+
+    }
+
+    /**
+     * Get the shared album for the key, creating it if we haven't seen it before
+     * @param key the album's id, or anything else that is unique to it
+     */
+    public synchronized Album getAlbum(String key, String name, List<AlbumImage> images) {
+        if (key == null) {
+            return null;
+        }
+
+        Album album = albums.get(key);
+        if (album == null) {
+            album = new Album(key, name, images);
+            albums.put(key, album);
+        } else if (images != null && images.size() > 0 && !isSameImages(album.getImages(), images)) {
+            // artwork has been changed on Spotify, every song on the album will pick up the new one
+            album.setImages(images);
+        }
+
+        return album;
+    }
+
+    private boolean isSameImages(List<AlbumImage> current, List<AlbumImage> images) {
+        if (current == null || current.size() != images.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < images.size(); i++) {
+            if (!TextUtils.equals(current.get(i).getUrl(), images.get(i).getUrl())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Convert Spotify's images into album images, keeping every size
+     */
+    public static List<AlbumImage> buildImages(List<Image> images) {
+        if (images == null) {
+            return null;
+        }
+
+        List<AlbumImage> albumImages = new ArrayList<AlbumImage>(images.size());
+        for (Image image : images) {
+            albumImages.add(new AlbumImage(image.url, image.width == null ? 0 : image.width,
+                    image.height == null ? 0 : image.height));
+        }
+
+        return albumImages;
+    }
+
+    /**
+     * Get the shared artist for the key, creating it if we haven't seen it before
+     * @param key the artist's id, or anything else that is unique to it
+     */
+    public synchronized Artist getArtist(String key, String name, String type) {
+        if (key == null) {
+            return null;
+        }
+
+        Artist artist = artists.get(key);
+        if (artist == null) {
+            artist = new Artist(key, name, type);
+            artists.put(key, artist);
+        }
+
+        return artist;
+    }
+
+    /**
+     * Get the song for the uri, adding it to the catalog if it isn't there yet. If it is, the stored song is updated
+     * with the given information and returned, so that every playlist shares it
+     */
+    public synchronized Song getSong(String uri, String title, Album album, Artist artist) {
+        Integer id = songIds.get(uri);
+        Song song;
+
+        if (id == null) {
+            song = new Song();
+            song.setId(uri);
+            song.setCatalogId(songs.size());
+            songIds.put(uri, song.getCatalogId());
+            songs.add(song);
+        } else {
+            song = songs.get(id);
+        }
+
+        song.setTitle(title);
+        song.setAlbum(album);
+        song.setArtist(artist);
+        return song;
+    }
+
+    /**
+     * Get a song by the id it was given in the catalog, or null if there isn't one
+     */
+    public synchronized Song getSong(int catalogId) {
+        return catalogId >= 0 && catalogId < songs.size() ? songs.get(catalogId) : null;
+    }
+
+    /**
+     * Get a song by its uri, or null if it hasn't been loaded
+     */
+    public synchronized Song getSong(String uri) {
+        Integer id = songIds.get(uri);
+        return id == null ? null : songs.get(id);
+    }
+
+    /**
+     * Get the number of songs in the catalog
+     */
+    public synchronized int size() {
+        return songs.size();
+    }
+
+    /**
+     * Convert a Spotify track into a catalog song. Nothing from the track is kept, so it can be garbage collected
+     * once it has been converted
+     * @return the song, or null if the track can't be played (local files don't have a uri)
+     */
+    public Song buildSong(Track track) {
+        if (track == null || TextUtils.isEmpty(track.uri)) {
+            return null;
+        }
+
+        Album album = null;
+        if (track.album != null) {
+            AlbumSimple simple = track.album;
+            // local files don't have an album id on Spotify, so fall back to the name
+            album = getAlbum(simple.id != null ? simple.id : simple.name, simple.name, buildImages(simple.images));
+        }
+
+        Artist artist = null;
+        if (track.artists != null && track.artists.size() > 0) {
+            ArtistSimple simple = track.artists.get(0);
+            artist = getArtist(simple.id != null ? simple.id : simple.name, simple.name, simple.type);
+        }
+
+        return getSong(track.uri, track.name, album, artist);
+    }
+
+    /**
+     * Convert a page of playlist tracks into catalog songs, skipping any that can't be played
+     */
+    public List<Song> buildSongs(List<PlaylistTrack> tracks) {
+        List<Song> songs = new ArrayList<Song>(tracks.size());
+
+        for (PlaylistTrack track : tracks) {
+            Song song = track == null ? null : buildSong(track.track);
+            if (song != null) {
+                songs.add(song);
+            }
+        }
+
+        return songs;
+    }
+
+}
@@ -18,24 +18,48 @@ package com.klinker.android.spotify.data;
 
 import android.content.Context;
 import android.util.Log;
+import com.google.gson.Gson;
 import com.klinker.android.spotify.R;
+import com.klinker.android.spotify.loader.HostLimiter;
 import com.klinker.android.spotify.loader.OnPlaylistLoaded;
+import com.klinker.android.spotify.loader.OnPlaylistPageLoaded;
+import com.klinker.android.spotify.loader.PlaylistTrackFetcher;
 import com.klinker.android.spotify.loader.SpotifyOAuthTokenRefresher;
-import com.klinker.android.spotify.util.PlaylistWrapper;
+import com.klinker.android.spotify.loader.TokenRefreshCoordinator;
+import com.klinker.android.spotify.loader.TokenRenewalScheduler;
+import com.klinker.android.spotify.util.OnAuthTokenRefreshedListener;
+import com.klinker.android.spotify.util.SharedHttpClient;
+import com.klinker.android.spotify.util.StartupTracer;
 import com.spotify.sdk.android.player.Config;
 import com.spotify.sdk.android.player.Player;
 import com.spotify.sdk.android.player.Spotify;
+import com.squareup.okhttp.Cache;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import kaaes.spotify.webapi.android.SpotifyApi;
+import kaaes.spotify.webapi.android.SpotifyService;
 import kaaes.spotify.webapi.android.models.Pager;
 import kaaes.spotify.webapi.android.models.Playlist;
 import kaaes.spotify.webapi.android.models.PlaylistSimple;
 import kaaes.spotify.webapi.android.models.PlaylistTrack;
 import lombok.Getter;
+import retrofit.RequestInterceptor;
+import retrofit.RestAdapter;
+import retrofit.client.OkClient;
+import retrofit.converter.GsonConverter;
 
 /**
  * Helper class for managing Spotify data
@@ -51,6 +75,28 @@ public class SpotifyHelper {
     public static final String AUTHORIZE_URL = BASE_URL + "/authorize";
 
     private static final String TAG = "SpotifyApi";
+
+    /**
+     * Max number of playlists that Spotify will return in a single page
+     */
+    private static final int PLAYLIST_PAGE_SIZE = 50;
+
+    /**
+     * Number of songs that are loaded for a playlist row at a time, the first page is loaded on startup and the rest
+     * are loaded as the user scrolls through the row
+     */
+    public static final int TRACKS_PER_PAGE = PlaylistTrackFetcher.PAGE_SIZE;
+
+    /**
+     * Number of playlist track pages that can be loading at the same time
+     */
+    private static final int FETCH_THREADS = 4;
+
+    /**
+     * Number of requests that can be in flight to the web api at the same time
+     */
+    private static final int REQUESTS_PER_HOST = 4;
+
     private static volatile SpotifyHelper spotifyHelper;
 
     /**
@@ -70,54 +116,205 @@ public class SpotifyHelper {
 
     private Context context;
     private Settings settings;
-    private SpotifyApi spotifyApi;
-    private boolean authTokenValid;
+    private LibraryService libraryService;
+    private ExecutorService fetchExecutor;
+    private HostLimiter hostLimiter;
+    private TokenRefreshCoordinator tokenRefreshCoordinator;
+    private TokenRenewalScheduler tokenRenewalScheduler;
+    private List<OnAuthTokenRefreshedListener> authTokenListeners =
+            new CopyOnWriteArrayList<OnAuthTokenRefreshedListener>();
+    private volatile boolean authTokenValid;
 
     private SpotifyHelper(Context context) {
         this.context = context;
         this.settings = Settings.get(context);
-        this.spotifyApi = new SpotifyApi();
+        SharedHttpClient.installCache(context.getCacheDir());
+        this.libraryService = buildLibraryService();
+        this.fetchExecutor = buildFetchExecutor();
+        this.hostLimiter = new HostLimiter(REQUESTS_PER_HOST);
+        this.tokenRefreshCoordinator = buildTokenRefreshCoordinator();
+        this.tokenRenewalScheduler = buildTokenRenewalScheduler();
 
         initAuthToken();
     }
 
     /**
-     * Initialize Spotify auth tokens
+     * Initialize Spotify auth tokens and schedule the first renewal. If the token is already expired or close to it,
+     * then the renewal runs right away
      */
     protected void initAuthToken() {
-        spotifyApi.setAccessToken(settings.spotifyAccount.getAuthToken());
-
-        if (needsTokenRefresh()) {
-            authTokenValid = false;
-            Thread tokenRefresher = getTokenRefresherThread();
-            tokenRefresher.setPriority(Thread.MIN_PRIORITY);
-            tokenRefresher.start();
-        } else {
-            authTokenValid = true;
-        }
+        authTokenValid = !needsTokenRefresh();
+        getTokenRenewalScheduler().schedule(settings.spotifyAccount.getExpirationDate());
     }
 
-    protected Thread getTokenRefresherThread() {
-        return new Thread(new Runnable() {
+    /**
+     * Check whether the auth token can be used. This goes false once the token is close to expiring, which should
+     * only happen when the scheduled renewal couldn't run, like when the device was asleep or offline
+     */
+    public boolean isAuthTokenValid() {
+        return authTokenValid && !needsTokenRefresh();
+    }
+
+    /**
+     * Build the coordinator that every token refresh goes through. Refreshes run on a single low priority thread
+     * that goes away when it isn't needed
+     */
+    protected TokenRefreshCoordinator buildTokenRefreshCoordinator() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "TokenRefresher");
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+
+        return new TokenRefreshCoordinator(new Runnable() {
             @Override
             public void run() {
                 refreshToken();
+
+                for (OnAuthTokenRefreshedListener listener : authTokenListeners) {
+                    listener.authTokenRefreshed();
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * Build the scheduler that renews the token before it expires. It gets its own thread since it waits on each
+     * renewal to finish
+     */
+    protected TokenRenewalScheduler buildTokenRenewalScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TokenRenewal");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
             }
         });
+
+        return new TokenRenewalScheduler(tokenRefreshCoordinator, executor);
     }
 
     /**
-     * Refresh the auth token when it is expired
+     * Listen for every new token, including the ones from scheduled renewals. Anything that holds on to the token,
+     * like the player, should register here
+     */
+    public void addAuthTokenRefreshedListener(OnAuthTokenRefreshedListener listener) {
+        if (!authTokenListeners.contains(listener)) {
+            authTokenListeners.add(listener);
+        }
+    }
+
+    public void removeAuthTokenRefreshedListener(OnAuthTokenRefreshedListener listener) {
+        authTokenListeners.remove(listener);
+    }
+
+    /**
+     * Refresh the auth token in the background. If a refresh is already running, this waits on that one instead of
+     * starting another
+     * @param listener notified once the token has been refreshed, can be null
+     * @return the refresh, which gives true if it worked
+     */
+    public Future<Boolean> requestTokenRefresh(OnAuthTokenRefreshedListener listener) {
+        return tokenRefreshCoordinator.refresh(listener);
+    }
+
+    /**
+     * Wait until the auth token can be used, joining the refresh that is already running or starting one if needed.
+     * Should be called off of the UI thread
+     * @return true if the token is valid, false if it couldn't be refreshed
+     */
+    public boolean awaitAuthToken() throws InterruptedException {
+        if (isAuthTokenValid()) {
+            return true;
+        }
+
+        try {
+            return requestTokenRefresh(null).get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "error waiting for auth token", e.getCause());
+            return false;
+        }
+    }
+
+    /**
+     * Build the service used for library calls that the web api library doesn't support, or doesn't load the way we
+     * need. It authenticates with the current token from the settings
+     */
+    protected LibraryService buildLibraryService() {
+        return buildRestAdapter(SpotifyApi.SPOTIFY_WEB_API_ENDPOINT).create(LibraryService.class);
+    }
+
+    /**
+     * Build the adapter for web api calls. Each request is sent with the current token from the settings, so nothing
+     * has to be updated when the token is refreshed
+     * @param endpoint the web api to call, this is only something other than Spotify's when testing against a local
+     *                 server
+     */
+    protected RestAdapter buildRestAdapter(String endpoint) {
+        return buildRestAdapter(endpoint, new RequestInterceptor() {
+            @Override
+            public void intercept(RequestFacade request) {
+                request.addHeader("Authorization", "Bearer " + settings.spotifyAccount.getAuthToken());
+            }
+        });
+    }
+
+    /**
+     * Get a web api service that uses a token that hasn't been saved yet, like the one we get right after logging in
+     */
+    public static SpotifyService buildSpotifyService(final String authToken) {
+        return buildRestAdapter(SpotifyApi.SPOTIFY_WEB_API_ENDPOINT, new RequestInterceptor() {
+            @Override
+            public void intercept(RequestFacade request) {
+                request.addHeader("Authorization", "Bearer " + authToken);
+            }
+        }).create(SpotifyService.class);
+    }
+
+    /**
+     * Web api calls go through the shared http client, so they use the same connections as everything else. Pages
+     * of playlist tracks are streamed in, everything else is bound with gson like normal
+     */
+    private static RestAdapter buildRestAdapter(String endpoint, RequestInterceptor interceptor) {
+        return new RestAdapter.Builder()
+                .setEndpoint(endpoint)
+                .setClient(new OkClient(SharedHttpClient.get()))
+                .setConverter(new TrackPageConverter(new GsonConverter(new Gson())))
+                .setRequestInterceptor(interceptor)
+                .build();
+    }
+
+    /**
+     * Build the executor that playlist pages are loaded on. The threads time out when they aren't being used, since
+     * we only need them while syncing
+     */
+    protected ExecutorService buildFetchExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(FETCH_THREADS, FETCH_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Refresh the auth token when it is expired. This does the refresh on the calling thread, use requestTokenRefresh
+     * so that it doesn't run at the same time as another refresh
      */
     public void refreshToken() {
         SpotifyOAuthTokenRefresher refresher = getTokenRefresher();
         RefreshToken token = refresher.useRefreshToken(settings.spotifyAccount.getRefreshToken());
 
         settings.setValue(context.getString(R.string.pref_spotify_auth_token_key), token.getAccessToken());
-        settings.setExpirationTimeFromNow(context.getString(R.string.pref_spotify_expiration_date_key), token.getExpiresIn());
+        long expiration = settings.setExpirationTimeFromNow(
+                context.getString(R.string.pref_spotify_expiration_date_key), token.getExpiresIn());
         authTokenValid = true;
 
-        spotifyApi.setAccessToken(token.getAccessToken());
+        getTokenRenewalScheduler().schedule(expiration);
     }
 
     /**
@@ -132,7 +329,7 @@ public class SpotifyHelper {
      */
     protected boolean needsTokenRefresh() {
         long expiration = settings.spotifyAccount.getExpirationDate();
-        return expiration - (5*60*1000) <= getCurrentTime() && expiration != -1;
+        return expiration - TokenRenewalScheduler.SKEW_MARGIN <= getCurrentTime() && expiration != -1;
     }
 
     protected long getCurrentTime() {
@@ -163,60 +360,188 @@ public class SpotifyHelper {
     /**
      * Get all playlists, should be called off of UI thread
      */
-    public PlaylistWrapper loadPlaylists() {
-        return loadPlaylists(null);
+    public void loadPlaylists() {
+        loadPlaylists(null);
     }
 
     /**
      * Get all playlists, should be called off of UI thread and callback can be used to link back to UI thread and
      * update status
      */
-    public PlaylistWrapper loadPlaylists(OnPlaylistLoaded callback) {
-        Pager<PlaylistSimple> playlists = spotifyApi.getService().getPlaylists(settings.spotifyAccount.getUserId());
-        HashMap<String, List<PlaylistTrack>> tracks = new HashMap<String, List<PlaylistTrack>>();
-
-        // logic for fetching tracks from playlist... only 100 can be fetched at a time, so we need to loop through
-        // each playlist and find all tracks in that playlist in increments of 100. By doing all of this right when
-        // we login, this could cause performance issues and slow startup times. In the future, it would be better
-        // to store this information in a database after the initial login and then just compare the changes to see
-        // what needs updated, if anything.
-        for (int i = 0; i < playlists.items.size(); i++) {
-            PlaylistSimple playlist = playlists.items.get(i);
-            Log.v(TAG, "playlist name: " + playlist.name);
-            int totalTracks = playlist.tracks.total;
-            int offset = 0;
-
-            HashMap<String, Object> options = new HashMap<String, Object>();
-            List<PlaylistTrack> playlistTracks = new ArrayList<PlaylistTrack>();
-
-            while (totalTracks > 0) {
-                options.put("offset", offset);
-                playlistTracks.addAll(spotifyApi.getService().getPlaylistTracks(
-                        playlist.owner.id,
-                        playlist.id,
-                        options
-                ).items);
-
-                totalTracks -= 100;
-                offset += 100;
+    public void loadPlaylists(OnPlaylistLoaded callback) {
+        loadPlaylists(LibraryDatabase.get(context), callback);
+    }
+
+    /**
+     * Sync all playlists into the library database, should be called off of UI thread. Tracks are only fetched for
+     * playlists whose snapshot id has changed since the last sync, everything else is served from the database. Only
+     * the first page of tracks is fetched for each playlist, use loadMoreSongs for the rest. The synced library is
+     * read back out of the database. If the callback is an OnPlaylistPageLoaded, then the songs are also streamed to
+     * it as they become available, with the position being the playlist's index in the library
+     */
+    public void loadPlaylists(LibraryDatabase database, final OnPlaylistLoaded callback) {
+        SharedHttpClient.getTrafficMeter().reset();
+        final List<LibraryPlaylist> playlists = loadAllPlaylists();
+        List<String> playlistIds = new ArrayList<String>(playlists.size());
+        List<LibraryPlaylist> changedPlaylists = new ArrayList<LibraryPlaylist>();
+        final List<Integer> changedPositions = new ArrayList<Integer>();
+        final AtomicInteger loadedPlaylists = new AtomicInteger();
+
+        // only 100 tracks can be fetched at a time, so reloading every playlist on each launch causes slow startup
+        // times for big libraries. Spotify changes a playlist's snapshot id whenever it is modified, so we only need
+        // to refetch the playlists whose snapshot doesn't match the one we stored on the last sync.
+        for (int i = 0; i < playlists.size(); i++) {
+            LibraryPlaylist playlist = playlists.get(i);
+            playlistIds.add(playlist.id);
+
+            if (needsTrackSync(database, playlist)) {
+                Log.v(TAG, "syncing playlist: " + playlist.name);
+                changedPlaylists.add(playlist);
+                changedPositions.add(i);
+            } else {
+                Log.v(TAG, "playlist unchanged: " + playlist.name);
+                database.savePlaylist(playlist, playlist.snapshot_id, i, null);
+
+                if (callback instanceof OnPlaylistPageLoaded) {
+                    ((OnPlaylistPageLoaded) callback).onPlaylistPageLoaded(playlist, i, 0,
+                            database.getPlaylistSongs(playlist.id, 0, TRACKS_PER_PAGE));
+                }
+
+                if (callback != null) {
+                    callback.onPlaylistLoaded(playlist, loadedPlaylists.getAndIncrement(), playlists.size());
+                }
+            }
+        }
+
+        // the fetcher loads all of the changed playlists at once, so keep counting up from the unchanged ones and
+        // map the fetcher's positions back to where the playlists sit in the library
+        OnPlaylistLoaded fetchCallback = null;
+        if (callback instanceof OnPlaylistPageLoaded) {
+            fetchCallback = new OnPlaylistPageLoaded() {
+                @Override
+                public void onPlaylistPageLoaded(PlaylistSimple playlist, int position, int offset, List<Song> songs) {
+                    ((OnPlaylistPageLoaded) callback).onPlaylistPageLoaded(playlist, changedPositions.get(position),
+                            offset, songs);
+                }
+
+                @Override
+                public void onPlaylistLoaded(PlaylistSimple playlist, int currentNumber, int totalNumber) {
+                    callback.onPlaylistLoaded(playlist, loadedPlaylists.getAndIncrement(), playlists.size());
+                }
+            };
+        } else if (callback != null) {
+            fetchCallback = new OnPlaylistLoaded() {
+                @Override
+                public void onPlaylistLoaded(PlaylistSimple playlist, int currentNumber, int totalNumber) {
+                    callback.onPlaylistLoaded(playlist, loadedPlaylists.getAndIncrement(), playlists.size());
+                }
+            };
+        }
+
+        List<List<PlaylistTrack>> changedTracks = getPlaylistTrackFetcher().fetch(changedPlaylists, TRACKS_PER_PAGE,
+                fetchCallback);
+
+        for (int i = 0; i < changedPlaylists.size(); i++) {
+            LibraryPlaylist playlist = changedPlaylists.get(i);
+            database.savePlaylist(playlist, playlist.snapshot_id, changedPositions.get(i), changedTracks.get(i));
+
+            // don't hold on to the raw Spotify objects any longer than we need to, big libraries won't fit in memory
+            changedTracks.set(i, null);
+        }
+
+        database.retainPlaylists(playlistIds);
+        logSyncTraffic();
+    }
+
+    /**
+     * Log how much was downloaded during the sync and how many responses were revalidated from the http cache
+     */
+    private void logSyncTraffic() {
+        Log.v(TAG, "sync traffic: " + SharedHttpClient.getTrafficMeter());
+
+        Cache cache = SharedHttpClient.get().getCache();
+        if (cache != null) {
+            Log.v(TAG, "http cache: " + cache.getHitCount() + " hits, " + cache.getNetworkCount() +
+                    " network requests, " + cache.getRequestCount() + " total");
+        }
+    }
+
+    /**
+     * Get the next page of songs for a playlist, should be called off of UI thread. Songs that are already stored are
+     * read from the database, otherwise the next page of tracks is loaded from Spotify and stored first
+     * @param offset the number of songs that have already been loaded for the playlist
+     * @return the songs, which will be empty once the whole playlist has been loaded
+     */
+    public List<Song> loadMoreSongs(LibraryDatabase database, String playlistId, int offset)
+            throws InterruptedException {
+        List<Song> songs = database.getPlaylistSongs(playlistId, offset, TRACKS_PER_PAGE);
+        LibraryPlaylist playlist = database.getPlaylist(playlistId);
+
+        // local files and removed tracks are skipped when they are stored, so a page from Spotify can give us fewer
+        // songs than we asked for. Keep going until the page is full or there is nothing left
+        while (songs.size() < TRACKS_PER_PAGE && playlist != null) {
+            int loaded = database.getLoadedCount(playlistId);
+            if (loaded >= playlist.tracks.total) {
+                break;
             }
 
-            if (callback != null) {
-                callback.onPlaylistLoaded(playlist, i, playlists.items.size());
+            List<PlaylistTrack> tracks = getPlaylistTrackFetcher().loadPage(playlist, loaded);
+            if (tracks.size() == 0) {
+                break;
             }
 
-            tracks.put(playlist.name, playlistTracks);
+            database.appendTracks(playlistId, loaded, tracks);
+            songs = database.getPlaylistSongs(playlistId, offset, TRACKS_PER_PAGE);
         }
 
-        return new PlaylistWrapper(playlists, tracks);
+        return songs;
+    }
+
+    /**
+     * Check whether the stored tracks for a playlist are out of date
+     */
+    protected boolean needsTrackSync(LibraryDatabase database, LibraryPlaylist playlist) {
+        return playlist.snapshot_id == null || !playlist.snapshot_id.equals(database.getSnapshotId(playlist.id));
+    }
+
+    /**
+     * Get every playlist for the user, paging through them since only 50 can be fetched at a time
+     */
+    protected List<LibraryPlaylist> loadAllPlaylists() {
+        List<LibraryPlaylist> playlists = new ArrayList<LibraryPlaylist>();
+        HashMap<String, Object> options = new HashMap<String, Object>();
+        options.put("limit", PLAYLIST_PAGE_SIZE);
+
+        Pager<LibraryPlaylist> page;
+        do {
+            options.put("offset", playlists.size());
+
+            StartupTracer.Span span = StartupTracer.get().begin("playlists_page@" + playlists.size());
+            try {
+                page = libraryService.getPlaylists(settings.spotifyAccount.getUserId(), options);
+            } finally {
+                span.end();
+            }
+
+            playlists.addAll(page.items);
+        } while (page.next != null && page.items.size() > 0);
+
+        return playlists;
+    }
+
+    /**
+     * Get a fetcher for loading the tracks of the playlists that have changed
+     */
+    protected PlaylistTrackFetcher getPlaylistTrackFetcher() {
+        return new PlaylistTrackFetcher(libraryService, fetchExecutor, hostLimiter);
     }
 
     protected void setSettings(Settings settings) {
         this.settings = settings;
     }
 
-    protected void setSpotifyApi(SpotifyApi spotifyApi) {
-        this.spotifyApi = spotifyApi;
+    protected void setLibraryService(LibraryService libraryService) {
+        this.libraryService = libraryService;
     }
 
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.ArtistSimple;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Converter that streams pages of playlist tracks instead of binding the whole response. Gson would build out every
+ * field of every track, including the long lists of markets on each track and album, just for us to copy a few strings
+ * out of them. This reads the response a token at a time and only keeps the uri and name of each track, the id, name
+ * and images of its album and its first artist. Everything else is skipped without being allocated. Any other type is
+ * handed off to the default converter
+ */
+public class TrackPageConverter implements Converter {
+
+    /**
+     * Fields projection for the playlist tracks endpoint, so that Spotify only sends what this converter reads
+     */
+    public static final String FIELDS =
+            "items(track(uri,name,album(id,name,images),artists(id,name,type))),total,offset,limit,next";
+
+    private static final String CHARSET = "UTF-8";
+
+    private Converter fallback;
+
+    /**
+     * @param fallback converter for everything that isn't a TrackPage
+     */
+    public TrackPageConverter(Converter fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Object fromBody(TypedInput body, Type type) throws ConversionException {
+        if (type != TrackPage.class) {
+            return fallback.fromBody(body, type);
+        }
+
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(body.in(), CHARSET);
+            return readPage(new JsonReader(reader));
+        } catch (IOException e) {
+            throw new ConversionException(e);
+        } catch (IllegalStateException e) {
+            // thrown by the reader when the json doesn't have the structure we expect
+            throw new ConversionException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // nothing left to read
+                }
+            }
+        }
+    }
+
+    @Override
+    public TypedOutput toBody(Object object) {
+        return fallback.toBody(object);
+    }
+
+    /**
+     * Read a page of tracks
+     */
+    public TrackPage readPage(JsonReader reader) throws IOException {
+        TrackPage page = new TrackPage();
+        page.items = new ArrayList<PlaylistTrack>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if ("items".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    page.items.add(readPlaylistTrack(reader));
+                }
+                reader.endArray();
+            } else if ("total".equals(name)) {
+                page.total = nextInt(reader);
+            } else if ("offset".equals(name)) {
+                page.offset = nextInt(reader);
+            } else if ("limit".equals(name)) {
+                page.limit = nextInt(reader);
+            } else if ("next".equals(name)) {
+                page.next = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return page;
+    }
+
+    private PlaylistTrack readPlaylistTrack(JsonReader reader) throws IOException {
+        PlaylistTrack playlistTrack = new PlaylistTrack();
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return playlistTrack;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("track".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                playlistTrack.track = readTrack(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return playlistTrack;
+    }
+
+    private Track readTrack(JsonReader reader) throws IOException {
+        Track track = new Track();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if ("uri".equals(name)) {
+                track.uri = nextString(reader);
+            } else if ("name".equals(name)) {
+                track.name = nextString(reader);
+            } else if ("album".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                track.album = readAlbum(reader);
+            } else if ("artists".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                track.artists = readArtists(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return track;
+    }
+
+    private AlbumSimple readAlbum(JsonReader reader) throws IOException {
+        AlbumSimple album = new AlbumSimple();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if ("id".equals(name)) {
+                album.id = nextString(reader);
+            } else if ("name".equals(name)) {
+                album.name = nextString(reader);
+            } else if ("images".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                album.images = readImages(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return album;
+    }
+
+    private List<Image> readImages(JsonReader reader) throws IOException {
+        List<Image> images = new ArrayList<Image>(3);
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Image image = new Image();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if ("url".equals(name)) {
+                    image.url = nextString(reader);
+                } else if ("width".equals(name)) {
+                    image.width = nextInteger(reader);
+                } else if ("height".equals(name)) {
+                    image.height = nextInteger(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            images.add(image);
+        }
+        reader.endArray();
+
+        return images;
+    }
+
+    /**
+     * Only the first artist is shown or stored, so the rest are skipped
+     */
+    private List<ArtistSimple> readArtists(JsonReader reader) throws IOException {
+        List<ArtistSimple> artists = new ArrayList<ArtistSimple>(1);
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (artists.size() > 0 || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            ArtistSimple artist = new ArtistSimple();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if ("id".equals(name)) {
+                    artist.id = nextString(reader);
+                } else if ("name".equals(name)) {
+                    artist.name = nextString(reader);
+                } else if ("type".equals(name)) {
+                    artist.type = nextString(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            artists.add(artist);
+        }
+        reader.endArray();
+
+        return artists;
+    }
+
+    private String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        return reader.nextString();
+    }
+
+    private Integer nextInteger(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        return reader.nextInt();
+    }
+
+    private int nextInt(JsonReader reader) throws IOException {
+        Integer value = nextInteger(reader);
+        return value == null ? 0 : value;
+    }
+
+}
@@ -35,7 +35,6 @@ import com.klinker.android.spotify.R;
 import com.klinker.android.spotify.activity.MainActivity;
 import com.klinker.android.spotify.data.AccessToken;
 import com.klinker.android.spotify.data.SpotifyHelper;
-import kaaes.spotify.webapi.android.SpotifyApi;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -187,11 +186,12 @@ public abstract class BaseOAuthFragment extends Fragment {
         protected JSONObject doInBackground(String... args) {
             AccessToken jParser = new AccessToken();
             JSONObject json = jParser.getToken(getTokenUrl(), code, getClientId(), getClientSecret(), getRedirectUri(), getGrantType());
+            if (json == null) {
+                return null;
+            }
 
             try {
-                SpotifyApi api = new SpotifyApi();
-                api.setAccessToken(json.getString("access_token"));
-                userId = api.getService().getMe().id;
+                userId = SpotifyHelper.buildSpotifyService(json.getString("access_token")).getMe().id;
                 Log.v(TAG, "userId: " + userId);
             } catch (JSONException e) {
                 throw new RuntimeException("error getting user id", e);
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.fragment;
+
+import android.app.Activity;
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v17.leanback.app.SearchFragment;
+import android.support.v17.leanback.widget.ArrayObjectAdapter;
+import android.support.v17.leanback.widget.HeaderItem;
+import android.support.v17.leanback.widget.ListRow;
+import android.support.v17.leanback.widget.ListRowPresenter;
+import android.support.v17.leanback.widget.ObjectAdapter;
+import android.support.v17.leanback.widget.OnItemViewClickedListener;
+import android.support.v17.leanback.widget.Presenter;
+import android.support.v17.leanback.widget.Row;
+import android.support.v17.leanback.widget.RowPresenter;
+import android.support.v17.leanback.widget.SpeechRecognitionCallback;
+import android.util.Log;
+import com.klinker.android.spotify.R;
+import com.klinker.android.spotify.activity.PlayerActivity;
+import com.klinker.android.spotify.data.PlayQueue;
+import com.klinker.android.spotify.data.PlayQueueRepository;
+import com.klinker.android.spotify.data.SearchIndex;
+import com.klinker.android.spotify.data.Song;
+import com.klinker.android.spotify.presenter.CardPresenter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Searches the songs in the library as the user types. Everything comes from the on device SearchIndex, so results
+ * update on every key press without going to the network
+ */
+public class LibrarySearchFragment extends SearchFragment implements SearchFragment.SearchResultProvider {
+
+    private static final String TAG = "LibrarySearchFragment";
+    private static final int REQUEST_SPEECH = 1;
+
+    private ArrayObjectAdapter rowsAdapter;
+    private CardPresenter cardPresenter = new CardPresenter();
+    private List<Song> results = new ArrayList<Song>();
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        rowsAdapter = new ArrayObjectAdapter(new ListRowPresenter());
+        setSearchResultProvider(this);
+        setOnItemViewClickedListener(getResultClickedListener());
+
+        // handle voice search ourselves, so that we don't need the record audio permission
+        setSpeechRecognitionCallback(new SpeechRecognitionCallback() {
+            @Override
+            public void recognizeSpeech() {
+                try {
+                    startActivityForResult(getRecognizerIntent(), REQUEST_SPEECH);
+                } catch (ActivityNotFoundException e) {
+                    Log.e(TAG, "voice search isn't available", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_SPEECH && resultCode == Activity.RESULT_OK) {
+            setSearchQuery(data, true);
+        }
+    }
+
+    @Override
+    public ObjectAdapter getResultsAdapter() {
+        return rowsAdapter;
+    }
+
+    @Override
+    public boolean onQueryTextChange(String newQuery) {
+        search(newQuery);
+        return true;
+    }
+
+    @Override
+    public boolean onQueryTextSubmit(String query) {
+        search(query);
+        return true;
+    }
+
+    /**
+     * Replace the results with the songs that match the query. The index is in memory, so this is quick enough to run
+     * on the UI thread for every key press
+     * @return the songs that were found
+     */
+    protected List<Song> search(String newQuery) {
+        List<Song> songs = SearchIndex.get().search(newQuery);
+        results = songs;
+
+        rowsAdapter.clear();
+        if (songs.size() > 0) {
+            ArrayObjectAdapter listRowAdapter = new ArrayObjectAdapter(cardPresenter);
+            listRowAdapter.addAll(0, songs);
+            rowsAdapter.add(new ListRow(new HeaderItem(0, getString(R.string.search_results, newQuery)),
+                    listRowAdapter));
+        }
+
+        return songs;
+    }
+
+    /**
+     * Play the clicked song, with the rest of the results queued up after it
+     */
+    private OnItemViewClickedListener getResultClickedListener() {
+        return new OnItemViewClickedListener() {
+            @Override
+            public void onItemClicked(Presenter.ViewHolder itemViewHolder, Object item,
+                                      RowPresenter.ViewHolder rowViewHolder, Row row) {
+                if (item instanceof Song) {
+                    startSong(results, Math.max(results.indexOf(item), 0));
+                }
+            }
+        };
+    }
+
+    /**
+     * Start the PlayerActivity with the songs, the same way that the browse rows do
+     * @return the id of the queue the songs were stored in
+     */
+    protected long startSong(List<Song> songs, int position) {
+        long queueId = PlayQueueRepository.get().putQueue(new PlayQueue(songs, position));
+
+        Intent intent = new Intent(getActivity(), PlayerActivity.class);
+        intent.putExtra(PlayerActivity.ARG_QUEUE_ID, queueId);
+        intent.setFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
+        startActivity(intent);
+
+        return queueId;
+    }
+
+}
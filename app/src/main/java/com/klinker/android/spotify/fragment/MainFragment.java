@@ -18,6 +18,7 @@ package com.klinker.android.spotify.fragment;
 
 import android.app.LoaderManager;
 import android.app.ProgressDialog;
+import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
 import android.graphics.Color;
@@ -27,6 +28,7 @@ import android.os.Handler;
 import android.support.v17.leanback.app.BackgroundManager;
 import android.support.v17.leanback.app.BrowseFragment;
 import android.support.v17.leanback.widget.*;
+import android.text.TextUtils;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Gravity;
@@ -36,26 +38,33 @@ import android.widget.TextView;
 
 import com.klinker.android.spotify.*;
 import com.klinker.android.spotify.activity.PlayerActivity;
+import com.klinker.android.spotify.activity.SearchActivity;
+import com.klinker.android.spotify.data.LibraryPlaylist;
+import com.klinker.android.spotify.data.LibrarySnapshot;
+import com.klinker.android.spotify.data.PlayQueue;
+import com.klinker.android.spotify.data.PlayQueueRepository;
 import com.klinker.android.spotify.data.Song;
-import com.klinker.android.spotify.loader.OnPlaylistLoaded;
-import com.klinker.android.spotify.loader.PicassoBackgroundManagerTarget;
+import com.klinker.android.spotify.loader.BackgroundTransitionScheduler;
+import com.klinker.android.spotify.loader.OnPlaylistPageLoaded;
 import com.klinker.android.spotify.loader.SongItemLoader;
 import com.klinker.android.spotify.presenter.CardPresenter;
 import com.klinker.android.spotify.provider.PlaylistProvider;
+import com.klinker.android.spotify.util.StartupTracer;
 import com.spotify.sdk.android.player.Player;
-import com.squareup.picasso.Picasso;
-import com.squareup.picasso.Target;
 import kaaes.spotify.webapi.android.models.Playlist;
 import kaaes.spotify.webapi.android.models.PlaylistSimple;
 
-import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Fragment for displaying playlists and songs to user after logging in
  */
 public class MainFragment extends BrowseFragment implements
-        LoaderManager.LoaderCallbacks<HashMap<String, List<Song>>>, OnPlaylistLoaded {
+        LoaderManager.LoaderCallbacks<List<LibrarySnapshot.Row>>, OnPlaylistPageLoaded {
 
     private static final String TAG = "MainFragment";
 
@@ -74,14 +83,31 @@ public class MainFragment extends BrowseFragment implements
      */
     private static int GRID_ITEM_HEIGHT = 200;
 
+    /**
+     * Header id for the settings row, so that it always sorts after the playlist rows
+     */
+    private static final long SETTINGS_ROW_ID = Long.MAX_VALUE;
+
+    /**
+     * How close to the end of a row the selected card can get before the next page of songs is loaded
+     */
+    private static final int PREFETCH_WINDOW = 20;
+
+    /**
+     * Max number of playlist pages that are loaded for the rows at once
+     */
+    private static final int LOAD_THREADS = 2;
+
     private ArrayObjectAdapter mRowsAdapter;
-    private Drawable mDefaultBackground;
-    private Target mBackgroundTarget;
-    private DisplayMetrics mMetrics;
-    private Timer mBackgroundTimer;
+    private CardPresenter mCardPresenter = new CardPresenter();
+    private BackgroundTransitionScheduler mBackgroundScheduler;
     private final Handler mHandler = new Handler();
-    private URI mBackgroundURI;
     private ProgressDialog loadingDialog;
+    private Row mSelectedRow;
+    private final Set<String> mLoadingPlaylists = new HashSet<String>();
+    private final Set<String> mCompletePlaylists = new HashSet<String>();
+    private final HashMap<String, QueuedPlaylist> mQueuedPlaylists = new HashMap<String, QueuedPlaylist>();
+    private final ExecutorService mLoadExecutor = buildLoadExecutor();
 
     /**
      * Load all of our playlist data, setup background and ui elements, initialize even listeners
@@ -103,10 +129,44 @@ public class MainFragment extends BrowseFragment implements
     protected void prepareBackgroundManager() {
         BackgroundManager backgroundManager = BackgroundManager.getInstance(getActivity());
         backgroundManager.attach(getActivity().getWindow());
-        mBackgroundTarget = new PicassoBackgroundManagerTarget(backgroundManager);
-        mDefaultBackground = getResources().getDrawable(R.drawable.default_background);
-        mMetrics = new DisplayMetrics();
-        getActivity().getWindowManager().getDefaultDisplay().getMetrics(mMetrics);
+        Drawable defaultBackground = getResources().getDrawable(R.drawable.default_background);
+        DisplayMetrics metrics = new DisplayMetrics();
+        getActivity().getWindowManager().getDefaultDisplay().getMetrics(metrics);
+
+        mBackgroundScheduler = new BackgroundTransitionScheduler(getActivity(), backgroundManager, metrics,
+                CardPresenter.getThumbnailSize(getActivity()), defaultBackground, BACKGROUND_UPDATE_DELAY);
+    }
+
+    /**
+     * Stop any background change that is still waiting or loading, and any pages that are still loading for the rows
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        if (mBackgroundScheduler != null) {
+            mBackgroundScheduler.cancel();
+        }
+
+        mLoadExecutor.shutdownNow();
+    }
+
+    /**
+     * Build the executor that pages are loaded on for the rows. Selecting cards can ask for pages quickly, so this
+     * keeps the number of threads bounded instead of starting a new one for each page, and lets them die when idle
+     */
+    protected ExecutorService buildLoadExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(LOAD_THREADS, LOAD_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Run a load off of the UI thread
+     */
+    protected void runInBackground(Runnable task) {
+        mLoadExecutor.execute(task);
     }
 
     /**
@@ -132,12 +192,12 @@ public class MainFragment extends BrowseFragment implements
      * Set up what should happen on search selected or item's selected or clicked on
      */
     protected void setupEventListeners() {
-//        setOnSearchClickedListener(new View.OnClickListener() {
-//            @Override
-//            public void onClick(View view) {
-//                // Do nothing on search, haven't yet added this functionality and may not
-//            }
-//        });
+        setOnSearchClickedListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                startActivity(new Intent(getActivity(), SearchActivity.class));
+            }
+        });
 
         setOnItemViewSelectedListener(getDefaultItemSelectedListener());
         setOnItemViewClickedListener(getDefaultItemClickedListener());
@@ -147,7 +207,7 @@ public class MainFragment extends BrowseFragment implements
      * Create a loader for getting all of our songs to display
      */
     @Override
-    public Loader<HashMap<String, List<Song>>> onCreateLoader(int arg0, Bundle arg1) {
+    public Loader<List<LibrarySnapshot.Row>> onCreateLoader(int arg0, Bundle arg1) {
         loadingDialog = new ProgressDialog(getActivity());
         loadingDialog.setIndeterminate(true);
         loadingDialog.setMessage(getString(R.string.loading_playlists));
@@ -156,54 +216,152 @@ public class MainFragment extends BrowseFragment implements
     }
 
     /**
-     * Callback for when loading playlists has finished
+     * Callback for when loading playlists has finished. Most of the rows will already be showing from the pages that
+     * were streamed in while loading, so only rebuild everything if the rows that are showing don't match up. This is
+     * the end of the launch, so the startup timeline is written out afterwards
      */
     @Override
-    public void onLoadFinished(Loader<HashMap<String, List<Song>>> arg0,
-            HashMap<String, List<Song>> data) {
+    public void onLoadFinished(Loader<List<LibrarySnapshot.Row>> arg0,
+            List<LibrarySnapshot.Row> data) {
 
-        if (loadingDialog != null && loadingDialog.isShowing()) {
-            loadingDialog.dismiss();
+        dismissLoadingDialog();
+
+        StartupTracer tracer = StartupTracer.get();
+        StartupTracer.Span span = tracer.begin("build_rows");
+        try {
+            showLibrary(data);
+        } finally {
+            span.end();
         }
 
+        tracer.finish(getActivity().getApplicationContext());
+    }
+
+    /**
+     * Show the loaded rows, only touching the rows that have changed if the same playlists are already showing
+     */
+    private void showLibrary(List<LibrarySnapshot.Row> data) {
         if (data == null) {
             return;
         }
 
-        // get all of the rows from the hashmap of data
-        mRowsAdapter = new ArrayObjectAdapter(new ListRowPresenter());
-        CardPresenter cardPresenter = new CardPresenter();
+        if (rowsMatch(data)) {
+            for (int i = 0; i < data.size(); i++) {
+                updateRow((ListRow) mRowsAdapter.get(i), data.get(i).getSongs());
+            }
 
-        int i = 0;
+            return;
+        }
 
-        for (Map.Entry<String, List<Song>> entry : data.entrySet()) {
-            ArrayObjectAdapter listRowAdapter = new ArrayObjectAdapter(cardPresenter);
-            List<Song> list = entry.getValue();
+        // playlists can move, so keep the songs of any row that is still in the library, wherever it is now
+        HashMap<String, ListRow> previousRows = new HashMap<String, ListRow>();
+        for (int i = 0; mRowsAdapter != null && i < mRowsAdapter.size(); i++) {
+            ListRow row = (ListRow) mRowsAdapter.get(i);
+            String playlistId = getPlaylistId(row);
+            if (playlistId != null) {
+                previousRows.put(playlistId, row);
+            }
+        }
+
+        // get all of the rows from the loaded data, in library order
+        mRowsAdapter = createRowsAdapter();
+
+        for (int i = 0; i < data.size(); i++) {
+            LibraryPlaylist playlist = data.get(i).getPlaylist();
+            ListRow previous = playlist.id == null ? null : previousRows.remove(playlist.id);
 
-            for (int j = 0; j < list.size(); j++) {
-                listRowAdapter.add(list.get(j));
+            ArrayObjectAdapter listRowAdapter;
+            if (previous != null) {
+                listRowAdapter = (ArrayObjectAdapter) previous.getAdapter();
+                updateRow(previous, data.get(i).getSongs());
+            } else {
+                listRowAdapter = new ArrayObjectAdapter(mCardPresenter);
+                listRowAdapter.addAll(0, data.get(i).getSongs());
             }
-            HeaderItem header = new HeaderItem(i, entry.getKey());
-            i++;
-            mRowsAdapter.add(new ListRow(header, listRowAdapter));
+
+            HeaderItem header = new PlaylistHeaderItem(i, playlist.name, playlist.id);
+            mRowsAdapter.add(i, new ListRow(header, listRowAdapter));
         }
 
-        // add settings row for last row
-        HeaderItem gridHeader = new HeaderItem(i, getResources().getString(R.string.preferences));
+        setAdapter(mRowsAdapter);
+    }
+
+    /**
+     * Create the adapter for the rows, with the settings row as the last row
+     */
+    private ArrayObjectAdapter createRowsAdapter() {
+        ArrayObjectAdapter rowsAdapter = new ArrayObjectAdapter(new ListRowPresenter());
+
+        HeaderItem gridHeader = new HeaderItem(SETTINGS_ROW_ID, getResources().getString(R.string.preferences));
 
         GridItemPresenter gridPresenter = new GridItemPresenter();
         ArrayObjectAdapter gridRowAdapter = new ArrayObjectAdapter(gridPresenter);
         gridRowAdapter.add(getResources().getString(R.string.personal_settings));
-        mRowsAdapter.add(new ListRow(gridHeader, gridRowAdapter));
+        rowsAdapter.add(new ListRow(gridHeader, gridRowAdapter));
 
-        setAdapter(mRowsAdapter);
+        return rowsAdapter;
+    }
+
+    /**
+     * Check whether the rows showing are the same playlists, in the same order, as the loaded data
+     */
+    private boolean rowsMatch(List<LibrarySnapshot.Row> data) {
+        if (mRowsAdapter == null || mRowsAdapter.size() != data.size() + 1) {
+            return false;
+        }
+
+        for (int i = 0; i < data.size(); i++) {
+            if (!isSamePlaylist((ListRow) mRowsAdapter.get(i), data.get(i).getPlaylist())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Replace the songs in the row, only touching the adapter if they have actually changed so that focus isn't lost.
+     * The row may have already loaded more pages than the data has, so only the start of the row is compared
+     */
+    private void updateRow(ListRow row, List<Song> songs) {
+        ArrayObjectAdapter adapter = (ArrayObjectAdapter) row.getAdapter();
+
+        if (!startsWith(adapter, songs)) {
+            adapter.clear();
+            adapter.addAll(0, songs);
+            mCompletePlaylists.remove(getPlaylistId(row));
+        }
+    }
+
+    /**
+     * Check whether the row starts with the same songs, in the same order
+     */
+    private boolean startsWith(ArrayObjectAdapter adapter, List<Song> songs) {
+        if (adapter.size() < songs.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < songs.size(); i++) {
+            String id = ((Song) adapter.get(i)).getId();
+            if (id == null ? songs.get(i).getId() != null : !id.equals(songs.get(i).getId())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void dismissLoadingDialog() {
+        if (loadingDialog != null && loadingDialog.isShowing()) {
+            loadingDialog.dismiss();
+        }
     }
 
     /**
      * Reset the loader, ie show no rows anymore
      */
     @Override
-    public void onLoaderReset(Loader<HashMap<String, List<Song>>> arg0) {
+    public void onLoaderReset(Loader<List<LibrarySnapshot.Row>> arg0) {
         mRowsAdapter.clear();
     }
 
@@ -215,13 +373,80 @@ public class MainFragment extends BrowseFragment implements
             @Override
             public void onItemSelected(Presenter.ViewHolder holder1, Object item, RowPresenter.ViewHolder holder2, Row row) {
                 if (item instanceof Song && ((Song) item).getBackgroundImageURI() != null) {
-                    mBackgroundURI = ((Song) item).getBackgroundImageURI();
-                    startBackgroundTimer();
+                    mBackgroundScheduler.select((Song) item);
+                }
+
+                if (row instanceof ListRow) {
+                    onRowItemSelected((ListRow) row, item);
                 }
             }
         };
     }
 
+    /**
+     * Load the next page of the row when it first gains focus, so that it is ready before the user scrolls into it,
+     * and again whenever the selected card gets close to the end of what has loaded
+     */
+    protected void onRowItemSelected(ListRow row, Object item) {
+        boolean rowChanged = row != mSelectedRow;
+        mSelectedRow = row;
+
+        ObjectAdapter adapter = row.getAdapter();
+        int index = adapter instanceof ArrayObjectAdapter ? ((ArrayObjectAdapter) adapter).indexOf(item) : 0;
+
+        if (rowChanged || adapter.size() - index <= PREFETCH_WINDOW) {
+            loadMoreSongs(row);
+        }
+    }
+
+    /**
+     * Load the next page of songs for a playlist row in the background and add them to the end of the row. Only one
+     * page is loaded for a row at a time
+     */
+    protected void loadMoreSongs(ListRow row) {
+        final String playlistId = getPlaylistId(row);
+        if (playlistId == null || mLoadingPlaylists.contains(playlistId) || mCompletePlaylists.contains(playlistId)) {
+            return;
+        }
+
+        final ArrayObjectAdapter adapter = (ArrayObjectAdapter) row.getAdapter();
+        final int offset = adapter.size();
+        final Context context = getActivity().getApplicationContext();
+        mLoadingPlaylists.add(playlistId);
+
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                final List<Song> songs = PlaylistProvider.loadMoreSongs(context, playlistId, offset);
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        addMoreSongs(playlistId, adapter, offset, songs);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Add a page of songs that was loaded for the row, growing it in place
+     */
+    protected void addMoreSongs(String playlistId, ArrayObjectAdapter adapter, int offset, List<Song> songs) {
+        mLoadingPlaylists.remove(playlistId);
+
+        if (songs == null) {
+            // failed to load, we will try again next time the row is scrolled
+            return;
+        }
+
+        if (songs.size() == 0) {
+            mCompletePlaylists.add(playlistId);
+        } else if (adapter.size() == offset) {
+            adapter.addAll(offset, songs);
+        }
+    }
+
     /**
      * Get functionality for clicking on an item
      */
@@ -230,9 +455,13 @@ public class MainFragment extends BrowseFragment implements
             @Override
             public void onItemClicked(Presenter.ViewHolder holder1, Object item, RowPresenter.ViewHolder holder2, Row row) {
                 if (item instanceof Song) {
-                    HashMap<String, List<Song>> playlists = PlaylistProvider.buildMedia(getActivity(), MainFragment.this);
-                    List<Song> songs = playlists.get(row.getHeaderItem().getName());
-                    startSong(songs, (Song) item);
+                    ObjectAdapter adapter = ((ListRow) row).getAdapter();
+                    List<Song> songs = new ArrayList<Song>(adapter.size());
+                    for (int i = 0; i < adapter.size(); i++) {
+                        songs.add((Song) adapter.get(i));
+                    }
+
+                    playPlaylist((ListRow) row, songs, getClickedPosition(holder1, holder2, songs, (Song) item));
                 } else if (item instanceof String) {
                     // TODO preferences
                 }
@@ -241,63 +470,121 @@ public class MainFragment extends BrowseFragment implements
     }
 
     /**
-     * Start playing the first song on the list by starting the PlayerActivity
+     * Play the row's playlist starting at the clicked song. The row only has the pages that have been scrolled to, so
+     * the player starts right away with those and the rest of the playlist is loaded in the background, then added to
+     * the end of the queue. Only one load runs for each playlist, clicking another song while it is running just
+     * points it at the newest queue
+     * @param rowSongs the songs that are showing in the row
+     * @param position the position of the clicked song in the row
      */
-    protected List<String> startSong(List<Song> songs, Song song) {
-        Log.d(TAG, "Item: " + song.getTitle());
+    protected void playPlaylist(ListRow row, List<Song> rowSongs, int position) {
+        final String playlistId = getPlaylistId(row);
+        long queueId = startSong(rowSongs, position);
 
-        // rotate the list so that the selected song is first. This way, the selected song will be first in the list and
-        // it will maintain the order of the rest of the songs after that item. After we hit the last item, it will
-        // automatically go back to the first item in the list and keep playing with that one
-        int index = songs.indexOf(song);
-        Collections.rotate(songs, -1 * index);
+        if (playlistId == null || mCompletePlaylists.contains(playlistId)) {
+            return;
+        }
 
-        // get the rest of the songs, images, titles, and articles
-        ArrayList<String> uris = new ArrayList<String>();
-        ArrayList<String> images = new ArrayList<String>();
-        ArrayList<String> titles = new ArrayList<String>();
-        ArrayList<String> artists = new ArrayList<String>();
+        boolean loading = mQueuedPlaylists.containsKey(playlistId);
+        mQueuedPlaylists.put(playlistId, new QueuedPlaylist(queueId, rowSongs));
 
-        for (Song s : songs) {
-            uris.add(s.getId());
-            images.add(s.getBackgroundImageUrl());
-            titles.add(s.getTitle());
-            artists.add(s.getArtist());
+        if (loading) {
+            return;
         }
 
-        // start the player activity
-        Intent intent = new Intent(getActivity(), PlayerActivity.class);
-        intent.putExtra(PlayerActivity.ARG_SONG_IDS, uris);
-        intent.putExtra(PlayerActivity.ARG_SONG_IMAGES, images);
-        intent.putExtra(PlayerActivity.ARG_SONG_TITLES, titles);
-        intent.putExtra(PlayerActivity.ARG_SONG_ARTISTS, artists);
-        intent.setFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
-        startActivity(intent);
+        final Context context = getActivity().getApplicationContext();
 
-        return uris;
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                final List<Song> songs = loadPlaylistSongs(context, playlistId);
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        addRestOfPlaylist(playlistId, songs);
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Update the background with the background manager
+     * Add the songs after the row to the newest queue that was started from the playlist. If the playlist changed
+     * while the row was showing, or it couldn't be loaded, then the queue is left with the songs the user saw
+     * @param songs the whole playlist, or null if it couldn't be loaded
      */
-    protected void updateBackground(URI uri) {
-        Picasso.with(getActivity())
-                .load(uri.toString())
-                .resize(mMetrics.widthPixels, mMetrics.heightPixels)
-                .centerCrop()
-                .error(mDefaultBackground)
-                .into(mBackgroundTarget);
+    private void addRestOfPlaylist(String playlistId, List<Song> songs) {
+        QueuedPlaylist queued = mQueuedPlaylists.remove(playlistId);
+        PlayQueue queue = PlayQueueRepository.get().getQueue(queued.queueId);
+
+        if (queue == null || songs == null || !startsWith(songs, queued.rowSongs)) {
+            return;
+        }
+
+        queue.addSongs(songs.subList(queued.rowSongs.size(), songs.size()));
     }
 
     /**
-     * Start a timer counting down how much time is left before switching to a new background
+     * Check whether the loaded playlist starts with the songs that were in the row
      */
-    private void startBackgroundTimer() {
-        if (null != mBackgroundTimer) {
-            mBackgroundTimer.cancel();
+    private boolean startsWith(List<Song> songs, List<Song> start) {
+        if (songs.size() < start.size()) {
+            return false;
         }
-        mBackgroundTimer = new Timer();
-        mBackgroundTimer.schedule(new UpdateBackgroundTask(), BACKGROUND_UPDATE_DELAY);
+
+        for (int i = 0; i < start.size(); i++) {
+            if (!TextUtils.equals(songs.get(i).getId(), start.get(i).getId())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Load every song in the playlist, exposed for testing
+     */
+    protected List<Song> loadPlaylistSongs(Context context, String playlistId) {
+        return PlaylistProvider.loadAllSongs(context, playlistId);
+    }
+
+    /**
+     * Get the position of the clicked card in its row. The same song can be in a playlist more than once, so this
+     * comes from the card's view instead of searching for the song
+     */
+    private int getClickedPosition(Presenter.ViewHolder itemViewHolder, RowPresenter.ViewHolder rowViewHolder,
+                                   List<Song> songs, Song song) {
+        if (rowViewHolder instanceof ListRowPresenter.ViewHolder) {
+            int position = ((ListRowPresenter.ViewHolder) rowViewHolder).getGridView()
+                    .getChildAdapterPosition(itemViewHolder.view);
+
+            if (position >= 0 && position < songs.size()) {
+                return position;
+            }
+        }
+
+        return Math.max(songs.indexOf(song), 0);
+    }
+
+    /**
+     * Start playing the selected song by starting the PlayerActivity. The queue is stored in the play queue
+     * repository and only its id is passed through the intent, so this doesn't get slower with bigger playlists
+     * @param position the position of the selected song in the list
+     * @return the id of the queue the songs were stored in
+     */
+    protected long startSong(List<Song> songs, int position) {
+        Log.d(TAG, "Item: " + songs.get(position).getTitle());
+
+        long queueId = PlayQueueRepository.get().putQueue(new PlayQueue(songs, position));
+
+        // start the player activity
+        Intent intent = new Intent(getActivity(), PlayerActivity.class);
+        intent.putExtra(PlayerActivity.ARG_QUEUE_ID, queueId);
+        intent.setFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
+        startActivity(intent);
+
+        return queueId;
     }
 
     /**
@@ -318,19 +605,124 @@ public class MainFragment extends BrowseFragment implements
     }
 
     /**
-     * TimerTask for updating the background after the time has finished counting down
+     * Callback for each page of songs as it loads, so that rows show up while the rest of the library is still loading.
+     * Rows are kept in library order no matter which playlist finishes first
      */
-    private class UpdateBackgroundTask extends TimerTask {
-        @Override
-        public void run() {
-            mHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (mBackgroundURI != null) {
-                        updateBackground(mBackgroundURI);
-                    }
+    @Override
+    public void onPlaylistPageLoaded(final PlaylistSimple playlist, final int position, final int offset,
+                                     final List<Song> songs) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isAdded()) {
+                    addPage(playlist, position, offset, songs);
                 }
-            });
+            }
+        });
+    }
+
+    /**
+     * Add a page of songs to the playlist's row, creating the row in the right spot if this is the first page. The
+     * stored rows are shown before the sync starts, so a first page that matches what is already showing leaves the
+     * row alone. If a different playlist is in that spot now, because one was added, removed or renamed since the last
+     * sync, then the row is replaced so that the songs don't end up under the old header
+     */
+    protected void addPage(PlaylistSimple playlist, int position, int offset, List<Song> songs) {
+        if (mRowsAdapter == null) {
+            mRowsAdapter = createRowsAdapter();
+            setAdapter(mRowsAdapter);
+        }
+
+        int index = 0;
+        ListRow row = null;
+
+        while (index < mRowsAdapter.size()) {
+            ListRow current = (ListRow) mRowsAdapter.get(index);
+            long id = current.getHeaderItem().getId();
+
+            if (id == position) {
+                row = current;
+                break;
+            } else if (id > position) {
+                break;
+            }
+
+            index++;
+        }
+
+        if (row != null && !isSamePlaylist(row, playlist)) {
+            mRowsAdapter.removeItems(index, 1);
+            row = null;
+        }
+
+        if (row == null) {
+            row = new ListRow(new PlaylistHeaderItem(position, playlist.name, playlist.id),
+                    new ArrayObjectAdapter(mCardPresenter));
+            mRowsAdapter.add(index, row);
+        }
+
+        ArrayObjectAdapter adapter = (ArrayObjectAdapter) row.getAdapter();
+        if (offset == 0 && (adapter.size() != songs.size() || !startsWith(adapter, songs))) {
+            // playlist is being loaded again, start from scratch
+            adapter.clear();
+            mCompletePlaylists.remove(playlist.id);
+            adapter.addAll(0, songs);
+        } else if (offset != 0) {
+            adapter.addAll(adapter.size(), songs);
+        }
+
+        if (songs.size() > 0) {
+            StartupTracer.get().markOnce("first_row");
+        }
+
+        dismissLoadingDialog();
+    }
+
+    /**
+     * Check whether the row is showing the playlist, under its current name
+     */
+    private boolean isSamePlaylist(ListRow row, PlaylistSimple playlist) {
+        String playlistId = getPlaylistId(row);
+        String name = row.getHeaderItem().getName();
+
+        return (playlistId == null ? playlist.id == null : playlistId.equals(playlist.id)) &&
+                (name == null ? playlist.name == null : name.equals(playlist.name));
+    }
+
+    /**
+     * Get the id of the playlist that a row is showing
+     * @return the id, or null if the row isn't a playlist or we don't know which one it is yet
+     */
+    protected String getPlaylistId(ListRow row) {
+        HeaderItem header = row.getHeaderItem();
+        return header instanceof PlaylistHeaderItem ? ((PlaylistHeaderItem) header).playlistId : null;
+    }
+
+    /**
+     * Header for a playlist row. Spotify lets more than one playlist have the same name, so the row keeps the id of
+     * its playlist for loading more songs instead of looking it up by name
+     */
+    private static class PlaylistHeaderItem extends HeaderItem {
+
+        private final String playlistId;
+
+        public PlaylistHeaderItem(long position, String name, String playlistId) {
+            super(position, name);
+            this.playlistId = playlistId;
+        }
+    }
+
+    /**
+     * The newest queue started from a playlist whose songs are still loading, and the row songs it started with
+     */
+    private static class QueuedPlaylist {
+
+        private final long queueId;
+        private final List<Song> rowSongs;
+
+        public QueuedPlaylist(long queueId, List<Song> rowSongs) {
+            this.queueId = queueId;
+            this.rowSongs = rowSongs;
         }
     }
 
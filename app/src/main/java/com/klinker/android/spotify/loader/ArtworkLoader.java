@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Target;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Loads album artwork as a bitmap through the shared Picasso instance, so it comes out of the same memory and disk
+ * cache as the backgrounds and cards and is decoded at the size we ask for instead of full resolution. Requests for
+ * the same url and size that are already in flight are shared instead of being started again. Should only be used
+ * from the UI thread
+ */
+public class ArtworkLoader {
+
+    /**
+     * Interface for getting the artwork once it has loaded
+     */
+    public interface OnArtworkLoadedListener {
+
+        /**
+         * @param url the url that was requested
+         * @param bitmap the artwork, or null if it failed to load
+         */
+        void onArtworkLoaded(String url, Bitmap bitmap);
+    }
+
+    private Picasso picasso;
+
+    // picasso only keeps weak references to targets, so we have to hold on to them until they finish
+    private HashMap<String, ArtworkTarget> pending = new HashMap<String, ArtworkTarget>();
+
+    public ArtworkLoader(Context context) {
+        this(Picasso.with(context));
+    }
+
+    /**
+     * Exposed for testing
+     */
+    protected ArtworkLoader(Picasso picasso) {
+        this.picasso = picasso;
+    }
+
+    /**
+     * Load the artwork at the url, center cropped to a square
+     * @param url the url of the image
+     * @param size the width and height in pixels to decode the image at
+     * @param listener the listener to give the bitmap to
+     */
+    public void load(String url, int size, OnArtworkLoadedListener listener) {
+        String key = url + ":" + size;
+        ArtworkTarget target = pending.get(key);
+
+        if (target != null) {
+            target.listeners.add(listener);
+            return;
+        }
+
+        target = new ArtworkTarget(key, url);
+        target.listeners.add(listener);
+        pending.put(key, target);
+
+        picasso.load(url)
+                .resize(size, size)
+                .centerCrop()
+                .into(target);
+    }
+
+    /**
+     * Stop giving results to the listener. The load is cancelled if nothing else is waiting on it
+     */
+    public void cancel(OnArtworkLoadedListener listener) {
+        Iterator<ArtworkTarget> targets = pending.values().iterator();
+        while (targets.hasNext()) {
+            ArtworkTarget target = targets.next();
+            target.listeners.remove(listener);
+
+            if (target.listeners.size() == 0) {
+                picasso.cancelRequest(target);
+                targets.remove();
+            }
+        }
+    }
+
+    /**
+     * Cancel every load that is still in flight
+     */
+    public void cancelAll() {
+        for (ArtworkTarget target : pending.values()) {
+            picasso.cancelRequest(target);
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * Exposed for testing
+     */
+    protected int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Target that hands the bitmap to everyone waiting on it
+     */
+    private class ArtworkTarget implements Target {
+
+        private String key;
+        private String url;
+        private List<OnArtworkLoadedListener> listeners = new ArrayList<OnArtworkLoadedListener>();
+
+        public ArtworkTarget(String key, String url) {
+            this.key = key;
+            this.url = url;
+        }
+
+        @Override
+        public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom loadedFrom) {
+            finish(bitmap);
+        }
+
+        @Override
+        public void onBitmapFailed(Drawable drawable) {
+            finish(null);
+        }
+
+        @Override
+        public void onPrepareLoad(Drawable drawable) {
+            // nothing to show while loading
+        }
+
+        private void finish(Bitmap bitmap) {
+            if (pending.get(key) == this) {
+                pending.remove(key);
+            }
+
+            for (OnArtworkLoadedListener listener : listeners) {
+                listener.onArtworkLoaded(url, bitmap);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Target;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Warms Picasso's memory cache with the backgrounds for the songs that are coming up, so that the background can be
+ * swapped as soon as the track changes. The images are requested with the same size and crop as the background
+ * itself, otherwise they would be cached under a different key. Should only be used from the UI thread
+ */
+public class ArtworkPrefetcher {
+
+    private Picasso picasso;
+    private int width;
+    private int height;
+
+    // picasso only keeps weak references to targets, so we have to hold on to them until they finish
+    private HashMap<String, PrefetchTarget> pending = new HashMap<String, PrefetchTarget>();
+
+    /**
+     * Create a new prefetcher
+     * @param width the width the background is shown at
+     * @param height the height the background is shown at
+     */
+    public ArtworkPrefetcher(Context context, int width, int height) {
+        this(Picasso.with(context), width, height);
+    }
+
+    /**
+     * Exposed for testing
+     */
+    protected ArtworkPrefetcher(Picasso picasso, int width, int height) {
+        this.picasso = picasso;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Start loading the urls that aren't already loading, and cancel any loads for urls that aren't in the list
+     * anymore, ie. the queue was shuffled
+     * @param urls the background urls of the upcoming songs, the first one is the most important
+     */
+    public void prefetch(List<String> urls) {
+        Iterator<Map.Entry<String, PrefetchTarget>> targets = pending.entrySet().iterator();
+        while (targets.hasNext()) {
+            Map.Entry<String, PrefetchTarget> target = targets.next();
+            if (!urls.contains(target.getKey())) {
+                picasso.cancelRequest(target.getValue());
+                targets.remove();
+            }
+        }
+
+        for (String url : urls) {
+            if (url == null || pending.containsKey(url)) {
+                continue;
+            }
+
+            PrefetchTarget target = new PrefetchTarget(url);
+            pending.put(url, target);
+
+            picasso.load(url)
+                    .resize(width, height)
+                    .centerCrop()
+                    .into(target);
+        }
+    }
+
+    /**
+     * Cancel every prefetch that is still loading
+     */
+    public void cancelAll() {
+        for (PrefetchTarget target : pending.values()) {
+            picasso.cancelRequest(target);
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * Exposed for testing
+     */
+    protected int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Target that lets go of itself once the image is in the cache. Nothing is done with the bitmap here, it is
+     * picked up from the memory cache when the background is changed
+     */
+    private class PrefetchTarget implements Target {
+
+        private String url;
+
+        public PrefetchTarget(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom loadedFrom) {
+            finish();
+        }
+
+        @Override
+        public void onBitmapFailed(Drawable drawable) {
+            finish();
+        }
+
+        @Override
+        public void onPrepareLoad(Drawable drawable) {
+            // nothing to show while loading
+        }
+
+        private void finish() {
+            if (pending.get(url) == this) {
+                pending.remove(url);
+            }
+        }
+    }
+
+}
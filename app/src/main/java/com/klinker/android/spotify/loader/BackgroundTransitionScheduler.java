@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v17.leanback.app.BackgroundManager;
+import android.util.DisplayMetrics;
+import com.klinker.android.spotify.data.Song;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Target;
+
+/**
+ * Switches the background to the album art of the selected card. Selections are debounced on the main looper, so
+ * holding down the d-pad only changes the background once it settles, and the full screen load for a selection that
+ * was passed over is cancelled. If the card's thumbnail is in memory, it is shown stretched right away and the full
+ * screen image replaces it when it is ready. Should only be used from the UI thread
+ */
+public class BackgroundTransitionScheduler {
+
+    private Handler handler;
+    private long delay;
+    private Picasso picasso;
+    private Target target;
+    private BackgroundManager backgroundManager;
+    private ThumbnailCache thumbnailCache;
+    private int thumbnailSize;
+    private int width;
+    private int height;
+    private Drawable errorDrawable;
+
+    private String pendingUrl;
+    private String pendingPreviewUrl;
+    private String shownUrl;
+    private Bitmap preview;
+
+    /**
+     * Create a new scheduler
+     * @param backgroundManager the manager to show the backgrounds with
+     * @param metrics the size of the screen, used for the full screen image
+     * @param thumbnailSize the size the card thumbnails are cached at
+     * @param errorDrawable background to show if the image can't be loaded
+     * @param delay how long the selection has to stay the same before the background changes
+     */
+    public BackgroundTransitionScheduler(Context context, BackgroundManager backgroundManager, DisplayMetrics metrics,
+                                         int thumbnailSize, Drawable errorDrawable, long delay) {
+        this(new Handler(Looper.getMainLooper()), Picasso.with(context),
+                new PicassoBackgroundManagerTarget(backgroundManager), ThumbnailCache.get(context),
+                metrics.widthPixels, metrics.heightPixels, thumbnailSize, errorDrawable, delay);
+        this.backgroundManager = backgroundManager;
+    }
+
+    /**
+     * Exposed for testing
+     */
+    protected BackgroundTransitionScheduler(Handler handler, Picasso picasso, Target target,
+                                            ThumbnailCache thumbnailCache, int width, int height, int thumbnailSize,
+                                            Drawable errorDrawable, long delay) {
+        this.handler = handler;
+        this.picasso = picasso;
+        this.target = target;
+        this.thumbnailCache = thumbnailCache;
+        this.width = width;
+        this.height = height;
+        this.thumbnailSize = thumbnailSize;
+        this.errorDrawable = errorDrawable;
+        this.delay = delay;
+    }
+
+    /**
+     * Change the background to the song's artwork once the selection has settled, using the size of the artwork
+     * that fits the screen
+     */
+    public void select(Song song) {
+        select(song.getImageUrl(width, height), song.getImageUrl(thumbnailSize, thumbnailSize));
+    }
+
+    /**
+     * Change the background to this image once the selection has settled. Calling this again before the delay is up
+     * replaces the pending image
+     * @param url the full screen image
+     * @param previewUrl the card thumbnail to show until the full screen image is ready
+     */
+    public void select(String url, String previewUrl) {
+        pendingUrl = url;
+        pendingPreviewUrl = previewUrl;
+        handler.removeCallbacks(transition);
+        handler.postDelayed(transition, delay);
+    }
+
+    /**
+     * Drop any pending change and stop loading the full screen image
+     */
+    public void cancel() {
+        handler.removeCallbacks(transition);
+        picasso.cancelRequest(target);
+        pendingUrl = null;
+        shownUrl = null;
+
+        thumbnailCache.release(preview);
+        preview = null;
+    }
+
+    private Runnable transition = new Runnable() {
+        @Override
+        public void run() {
+            startTransition();
+        }
+    };
+
+    /**
+     * Exposed for testing
+     */
+    protected void startTransition() {
+        String url = pendingUrl;
+        if (url == null || url.equals(shownUrl)) {
+            return;
+        }
+
+        shownUrl = url;
+        picasso.cancelRequest(target);
+
+        Bitmap thumbnail = null;
+        if (pendingPreviewUrl != null) {
+            thumbnail = thumbnailCache.getCached(pendingPreviewUrl, thumbnailSize);
+        }
+
+        if (thumbnail != null) {
+            showPreview(thumbnail);
+
+            // the old preview can't be reused until something else is showing
+            thumbnailCache.release(preview);
+            preview = thumbnail;
+        }
+
+        picasso.load(url)
+                .resize(width, height)
+                .centerCrop()
+                .error(errorDrawable)
+                .into(target);
+    }
+
+    /**
+     * Show the low resolution thumbnail until the full screen image has loaded
+     */
+    protected void showPreview(Bitmap thumbnail) {
+        backgroundManager.setBitmap(thumbnail);
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.graphics.Bitmap;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Pool of bitmaps that nothing is showing anymore, keyed by their size and config, so that new decodes can draw into
+ * them with inBitmap instead of allocating a new bitmap every time. Only mutable bitmaps can be reused
+ */
+public class BitmapPool {
+
+    private final int maxBytes;
+    private int currentBytes;
+    private final HashMap<String, LinkedList<Bitmap>> bitmaps = new HashMap<String, LinkedList<Bitmap>>();
+
+    /**
+     * Create a new pool
+     * @param maxBytes the max number of bytes of bitmaps to hold on to, extra bitmaps are left for the GC
+     */
+    public BitmapPool(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Take a bitmap out of the pool
+     * @return a bitmap with the exact size and config, or null if there isn't one
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        LinkedList<Bitmap> matching = bitmaps.get(getKey(width, height, config));
+        if (matching == null || matching.size() == 0) {
+            return null;
+        }
+
+        Bitmap bitmap = matching.removeFirst();
+        currentBytes -= bitmap.getByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Give a bitmap to the pool. It must not be shown anywhere else anymore, since it will be drawn over
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || currentBytes + bitmap.getByteCount() > maxBytes) {
+            return;
+        }
+
+        String key = getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        LinkedList<Bitmap> matching = bitmaps.get(key);
+        if (matching == null) {
+            matching = new LinkedList<Bitmap>();
+            bitmaps.put(key, matching);
+        }
+
+        matching.add(bitmap);
+        currentBytes += bitmap.getByteCount();
+    }
+
+    /**
+     * Get the number of bytes of bitmaps in the pool
+     */
+    public synchronized int getSize() {
+        return currentBytes;
+    }
+
+    private String getKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+
+}
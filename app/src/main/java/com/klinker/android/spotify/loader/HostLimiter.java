@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.loader;
+
+import java.util.HashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits how many requests can be made to a single host at one time. When a host tells us to slow down, every request
+ * to that host waits until the back off time has passed, not just the one that was rate limited
+ */
+public class HostLimiter {
+
+    private final int permitsPerHost;
+    private final HashMap<String, Semaphore> semaphores = new HashMap<String, Semaphore>();
+    private final HashMap<String, Long> resumeTimes = new HashMap<String, Long>();
+
+    /**
+     * Create a new limiter
+     * @param permitsPerHost the max number of requests that can be in flight to a single host
+     */
+    public HostLimiter(int permitsPerHost) {
+        this.permitsPerHost = permitsPerHost;
+    }
+
+    /**
+     * Wait for a free slot for the host and for any back off on the host to finish. Each call must be paired with a
+     * call to release
+     */
+    public void acquire(String host) throws InterruptedException {
+        getSemaphore(host).acquire();
+
+        try {
+            long delay;
+            while ((delay = getResumeTime(host) - getNow()) > 0) {
+                Thread.sleep(delay);
+            }
+        } catch (InterruptedException e) {
+            release(host);
+            throw e;
+        }
+    }
+
+    /**
+     * Give the slot back to the host once the request has finished
+     */
+    public void release(String host) {
+        getSemaphore(host).release();
+    }
+
+    /**
+     * Hold off on any new requests to the host for the given amount of time
+     */
+    public synchronized void backOff(String host, long delayMillis) {
+        long resumeTime = getNow() + delayMillis;
+        Long current = resumeTimes.get(host);
+
+        if (current == null || current < resumeTime) {
+            resumeTimes.put(host, resumeTime);
+        }
+    }
+
+    private synchronized long getResumeTime(String host) {
+        Long resumeTime = resumeTimes.get(host);
+        return resumeTime == null ? 0 : resumeTime;
+    }
+
+    private synchronized Semaphore getSemaphore(String host) {
+        Semaphore semaphore = semaphores.get(host);
+        if (semaphore == null) {
+            semaphore = new Semaphore(permitsPerHost, true);
+            semaphores.put(host, semaphore);
+        }
+
+        return semaphore;
+    }
+
+    protected long getNow() {
+        return System.currentTimeMillis();
+    }
+
+}
@@ -19,14 +19,13 @@ package com.klinker.android.spotify.loader;
 import android.util.Base64;
 import android.util.Log;
 import com.klinker.android.spotify.data.RefreshToken;
+import com.klinker.android.spotify.util.SharedHttpClient;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
 import lombok.Getter;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -40,13 +39,16 @@ public abstract class OAuthTokenRefresher {
 
     private static final String TAG = "OAuthApiTokenRefresher";
 
-    private HttpClient client;
+    // need this or we get xml returned
+    private static final MediaType FORM = MediaType.parse("application/x-www-form-urlencoded");
+
+    private OkHttpClient client;
 
     /**
-     * Construct OAuth refresher
+     * Construct OAuth refresher, requests go through the shared client so that they reuse its connections
      */
     public OAuthTokenRefresher() {
-        this.client = new DefaultHttpClient();
+        this.client = SharedHttpClient.get();
     }
 
     /**
@@ -76,7 +78,7 @@ public abstract class OAuthTokenRefresher {
      * Execute a post to given url with the entity
      */
     protected JSONObject executePostObject(String url, String entity) {
-        HttpPost post = newPostRequest(url, entity);
+        Request post = newPostRequest(url, entity);
         InputStream stream = executeRequest(client, post);
 
         if (stream != null) {
@@ -95,48 +97,46 @@ public abstract class OAuthTokenRefresher {
     /**
      * Create a new post request with the url and entity
      */
-    protected HttpPost newPostRequest(String url, String entity) {
-        HttpPost post = new HttpPost(url);
-        post = (HttpPost) addAuthHeader(post);
+    protected Request newPostRequest(String url, String entity) {
+        Request.Builder post = new Request.Builder().url(url);
+        post = addAuthHeader(post);
 
-        if (entity != null) {
-            try {
-                post.setEntity(new StringEntity(entity));
-            } catch (UnsupportedEncodingException e) {
-                Log.e(TAG, "error attaching entity to post", e);
-            }
-        }
+        // a post always needs a body, even if there is nothing to send
+        post.post(RequestBody.create(FORM, entity == null ? "" : entity));
 
-        return post;
+        return post.build();
     }
 
     /**
      * Add an auth header to request
      */
-    protected HttpUriRequest addAuthHeader(HttpUriRequest request) {
+    protected Request.Builder addAuthHeader(Request.Builder request) {
         byte[] base64 = Base64.encode((getClientId() + ":" + getClientSecret()).getBytes(), Base64.DEFAULT);
         String authorization = new String(base64).replace("\n", "").replace(" ", "");
         request.addHeader("Authorization", "Basic " + authorization);
-        request.addHeader("Content-Type", "application/x-www-form-urlencoded"); // need this or we get xml returned
         return request;
     }
 
     /**
      * Execute request through the client for the request object
      */
-    protected InputStream executeRequest(HttpClient client, HttpUriRequest request) {
+    protected InputStream executeRequest(OkHttpClient client, Request request) {
         try {
-            HttpResponse httpResponse = executeClientRequest(client, request);
-            HttpEntity httpEntity = httpResponse.getEntity();
-            return httpEntity.getContent();
+            Response response = executeClientRequest(client, request);
+            if (!response.isSuccessful()) {
+                Log.e(TAG, "error refreshing token: " + response.code() + " " + response.body().string());
+                return null;
+            }
+
+            return response.body().byteStream();
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
 
-    protected HttpResponse executeClientRequest(HttpClient client, HttpUriRequest request) throws IOException {
-        return client.execute(request);
+    protected Response executeClientRequest(OkHttpClient client, Request request) throws IOException {
+        return client.newCall(request).execute();
     }
 
     /**
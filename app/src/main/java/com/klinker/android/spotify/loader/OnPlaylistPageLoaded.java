@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.loader;
+
+import com.klinker.android.spotify.data.Song;
+import kaaes.spotify.webapi.android.models.PlaylistSimple;
+
+import java.util.List;
+
+/**
+ * Interface for callbacks as each page of a playlist loads, so that rows can be shown before the whole library has
+ * finished loading. Pages for a single playlist always arrive in order, starting with offset 0, but pages from
+ * different playlists can be mixed together. These are called off of the UI thread
+ */
+public interface OnPlaylistPageLoaded extends OnPlaylistLoaded {
+
+    /**
+     * @param playlist the playlist the page belongs to
+     * @param position the position of the playlist in the user's library, used to order the rows
+     * @param offset the index in the playlist of the first song in the page
+     * @param songs the songs in the page
+     */
+    void onPlaylistPageLoaded(PlaylistSimple playlist, int position, int offset, List<Song> songs);
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.loader;
+
+import android.util.Log;
+import com.klinker.android.spotify.data.LibraryService;
+import com.klinker.android.spotify.data.Song;
+import com.klinker.android.spotify.data.SongCatalog;
+import com.klinker.android.spotify.util.StartupTracer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kaaes.spotify.webapi.android.models.PlaylistSimple;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.client.Response;
+
+/**
+ * Fetches the tracks for a group of playlists. Every page of every playlist is submitted to a bounded executor up
+ * front, so the time it takes depends on the biggest playlist instead of the total number of tracks in the library.
+ * Results are merged back together in playlist and page order
+ */
+public class PlaylistTrackFetcher {
+
+    private static final String TAG = "PlaylistTrackFetcher";
+
+    /**
+     * Max number of tracks that Spotify will return in a single page
+     */
+    public static final int PAGE_SIZE = 100;
+
+    /**
+     * Host that all of the web api requests go to, used for limiting concurrent requests
+     */
+    public static final String API_HOST = "api.spotify.com";
+
+    /**
+     * How many times to retry a page that was rate limited or failed on the server before giving up on the load
+     */
+    private static final int MAX_RETRIES = 5;
+
+    /**
+     * How long to wait before retrying if Spotify doesn't tell us or if the server had an error
+     */
+    private static final long DEFAULT_RETRY_DELAY = 1000;
+
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    private LibraryService service;
+    private ExecutorService executor;
+    private HostLimiter hostLimiter;
+
+    /**
+     * Create a new fetcher
+     * @param service the service to load the pages with
+     * @param executor executor that the pages are loaded on, this bounds how many pages are loaded at once
+     * @param hostLimiter limiter for requests to the web api host
+     */
+    public PlaylistTrackFetcher(LibraryService service, ExecutorService executor, HostLimiter hostLimiter) {
+        this.service = service;
+        this.executor = executor;
+        this.hostLimiter = hostLimiter;
+    }
+
+    /**
+     * Fetch every track for each of the playlists, should be called off of the UI thread. The callback is notified
+     * as each playlist finishes loading, in the order that they finish. If the callback is an OnPlaylistPageLoaded,
+     * then it will also get each page as soon as it and the pages before it are ready, with the position being the
+     * playlist's index in the given list
+     * @return the tracks for each playlist, in the same order as the playlists that were passed in
+     */
+    public List<List<PlaylistTrack>> fetch(List<? extends PlaylistSimple> playlists, OnPlaylistLoaded callback) {
+        return fetch(playlists, Integer.MAX_VALUE, callback);
+    }
+
+    /**
+     * Fetch the tracks for each of the playlists, stopping after maxTracks for each one. The rest of a playlist can
+     * be loaded later with loadPage
+     * @return the tracks for each playlist, in the same order as the playlists that were passed in
+     */
+    public List<List<PlaylistTrack>> fetch(List<? extends PlaylistSimple> playlists, int maxTracks,
+                                           OnPlaylistLoaded callback) {
+        List<List<Future<List<PlaylistTrack>>>> pages = new ArrayList<List<Future<List<PlaylistTrack>>>>();
+        List<PlaylistProgress> progress = new ArrayList<PlaylistProgress>(playlists.size());
+        AtomicInteger loadedPlaylists = new AtomicInteger();
+        int maxPages = 0;
+
+        for (PlaylistSimple playlist : playlists) {
+            int pageCount = getPageCount(playlist, maxTracks);
+            pages.add(new ArrayList<Future<List<PlaylistTrack>>>(pageCount));
+            progress.add(new PlaylistProgress(playlist, progress.size(), pageCount, loadedPlaylists,
+                    playlists.size(), callback));
+            maxPages = Math.max(maxPages, pageCount);
+        }
+
+        // submit the pages round robin, so that the first page of every playlist is loaded before we get to the
+        // later pages of the big ones
+        for (int page = 0; page < maxPages; page++) {
+            for (int i = 0; i < playlists.size(); i++) {
+                if (page < getPageCount(playlists.get(i), maxTracks)) {
+                    pages.get(i).add(executor.submit(new PageTask(progress.get(i), page)));
+                }
+            }
+        }
+
+        // playlists with no tracks don't have any pages to wait on
+        for (int i = 0; i < playlists.size(); i++) {
+            if (pages.get(i).size() == 0) {
+                progress.get(i).notifyLoaded();
+            }
+        }
+
+        return mergePages(playlists, pages);
+    }
+
+    /**
+     * Wait for every page to finish and put them together in order
+     */
+    private List<List<PlaylistTrack>> mergePages(List<? extends PlaylistSimple> playlists,
+                                                 List<List<Future<List<PlaylistTrack>>>> pages) {
+        List<List<PlaylistTrack>> tracks = new ArrayList<List<PlaylistTrack>>(pages.size());
+
+        try {
+            for (int i = 0; i < pages.size(); i++) {
+                List<PlaylistTrack> playlistTracks = new ArrayList<PlaylistTrack>(pages.get(i).size() * PAGE_SIZE);
+                for (Future<List<PlaylistTrack>> page : pages.get(i)) {
+                    playlistTracks.addAll(page.get());
+                }
+
+                tracks.add(playlistTracks);
+            }
+        } catch (InterruptedException e) {
+            cancel(pages);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading playlist tracks", e);
+        } catch (ExecutionException e) {
+            cancel(pages);
+            throw new RuntimeException("Error loading playlist tracks", e.getCause());
+        }
+
+        return tracks;
+    }
+
+    private void cancel(List<List<Future<List<PlaylistTrack>>>> pages) {
+        for (List<Future<List<PlaylistTrack>>> playlistPages : pages) {
+            for (Future<List<PlaylistTrack>> page : playlistPages) {
+                page.cancel(true);
+            }
+        }
+    }
+
+    private int getPageCount(PlaylistSimple playlist, int maxTracks) {
+        int total = Math.min(playlist.tracks == null ? 0 : playlist.tracks.total, maxTracks);
+        return (total + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Load a single page of a playlist, waiting on the host limiter and retrying when Spotify rate limits us. Should
+     * be called off of the UI thread. Each attempt is traced, so retries show up in the startup timeline
+     */
+    public List<PlaylistTrack> loadPage(PlaylistSimple playlist, int offset) throws InterruptedException {
+        HashMap<String, Object> options = new HashMap<String, Object>();
+        options.put("offset", offset);
+        options.put("limit", PAGE_SIZE);
+
+        for (int attempt = 0; ; attempt++) {
+            hostLimiter.acquire(API_HOST);
+            StartupTracer.Span span = StartupTracer.get().begin("tracks_page " + playlist.id + "@" + offset);
+
+            try {
+                return service.getPlaylistTracks(playlist.owner.id, playlist.id, options).items;
+            } catch (RetrofitError e) {
+                long delay = getRetryDelay(e, attempt);
+                if (delay < 0) {
+                    throw e;
+                }
+
+                Log.v(TAG, "retrying " + playlist.name + " at offset " + offset + " in " + delay + "ms");
+                hostLimiter.backOff(API_HOST, delay);
+            } finally {
+                span.end();
+                hostLimiter.release(API_HOST);
+            }
+        }
+    }
+
+    /**
+     * Figure out how long to wait before retrying a failed request
+     * @return the delay in milliseconds, or -1 if the request should not be retried
+     */
+    protected long getRetryDelay(RetrofitError error, int attempt) {
+        Response response = error.getResponse();
+        if (response == null || attempt >= MAX_RETRIES) {
+            return -1;
+        }
+
+        if (response.getStatus() == STATUS_TOO_MANY_REQUESTS) {
+            String retryAfter = getHeader(response, HEADER_RETRY_AFTER);
+
+            try {
+                return retryAfter == null ? DEFAULT_RETRY_DELAY : Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                return DEFAULT_RETRY_DELAY;
+            }
+        } else if (response.getStatus() >= 500) {
+            return DEFAULT_RETRY_DELAY << attempt;
+        } else {
+            return -1;
+        }
+    }
+
+    private String getHeader(Response response, String name) {
+        if (response.getHeaders() == null) {
+            return null;
+        }
+
+        for (Header header : response.getHeaders()) {
+            if (name.equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Keeps track of how many pages are left for a playlist, so that we can report when the whole playlist is done.
+     * Pages that finish early are held on to until the pages before them are ready
+     */
+    private static class PlaylistProgress {
+
+        private PlaylistSimple playlist;
+        private int position;
+        private int remainingPages;
+        private int nextPage;
+        private HashMap<Integer, List<PlaylistTrack>> pendingPages = new HashMap<Integer, List<PlaylistTrack>>();
+        private AtomicInteger loadedPlaylists;
+        private int totalPlaylists;
+        private OnPlaylistLoaded callback;
+
+        public PlaylistProgress(PlaylistSimple playlist, int position, int pageCount, AtomicInteger loadedPlaylists,
+                                int totalPlaylists, OnPlaylistLoaded callback) {
+            this.playlist = playlist;
+            this.position = position;
+            this.remainingPages = pageCount;
+            this.loadedPlaylists = loadedPlaylists;
+            this.totalPlaylists = totalPlaylists;
+            this.callback = callback;
+        }
+
+        public synchronized void onPageLoaded(int page, List<PlaylistTrack> tracks) {
+            if (callback instanceof OnPlaylistPageLoaded) {
+                pendingPages.put(page, tracks);
+
+                while (pendingPages.containsKey(nextPage)) {
+                    List<Song> songs = SongCatalog.get().buildSongs(pendingPages.remove(nextPage));
+                    ((OnPlaylistPageLoaded) callback).onPlaylistPageLoaded(playlist, position, nextPage * PAGE_SIZE,
+                            songs);
+                    nextPage++;
+                }
+            }
+
+            if (--remainingPages == 0) {
+                notifyLoaded();
+            }
+        }
+
+        public void notifyLoaded() {
+            if (callback != null) {
+                callback.onPlaylistLoaded(playlist, loadedPlaylists.getAndIncrement(), totalPlaylists);
+            }
+        }
+    }
+
+    /**
+     * Task for loading a single page of a playlist
+     */
+    private class PageTask implements Callable<List<PlaylistTrack>> {
+
+        private PlaylistProgress progress;
+        private int page;
+
+        public PageTask(PlaylistProgress progress, int page) {
+            this.progress = progress;
+            this.page = page;
+        }
+
+        @Override
+        public List<PlaylistTrack> call() throws Exception {
+            List<PlaylistTrack> tracks = loadPage(progress.playlist, page * PAGE_SIZE);
+            progress.onPageLoaded(page, tracks);
+            return tracks;
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import com.klinker.android.spotify.data.TrackPageConverter;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Shapes web api requests so that Spotify only sends back what we are going to read. Each endpoint that we know about
+ * gets the largest page size that it allows and, where the endpoint supports it, a fields projection that matches what
+ * our decoder reads. Options that the caller already set are left alone. Requests to any other host go through as is
+ */
+public class RequestShaper implements Interceptor {
+
+    private static final String PARAM_LIMIT = "limit";
+    private static final String PARAM_FIELDS = "fields";
+
+    /**
+     * Web api endpoint that we shape and keep track of
+     */
+    public static class Endpoint {
+
+        private final String name;
+        private final Pattern path;
+        private final int limit;
+        private final String fields;
+
+        /**
+         * @param name name used when reporting traffic for the endpoint
+         * @param path pattern that the request path has to match
+         * @param limit max page size that the endpoint allows, or 0 if it isn't paged
+         * @param fields projection to send, or null if the endpoint doesn't support one
+         */
+        public Endpoint(String name, String path, int limit, String fields) {
+            this.name = name;
+            this.path = Pattern.compile(path);
+            this.limit = limit;
+            this.fields = fields;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public String getFields() {
+            return fields;
+        }
+    }
+
+    /**
+     * Spotify only supports fields on the playlist tracks endpoint, the list of playlists can only be paged
+     */
+    public static final List<Endpoint> ENDPOINTS = Collections.unmodifiableList(new ArrayList<Endpoint>() {{
+        add(new Endpoint("playlist_tracks", "^/v1/users/[^/]+/playlists/[^/]+/tracks/?$", 100,
+                TrackPageConverter.FIELDS));
+        add(new Endpoint("playlists", "^/v1/users/[^/]+/playlists/?$", 50, null));
+        add(new Endpoint("me", "^/v1/me/?$", 0, null));
+    }});
+
+    /**
+     * Find the web api endpoint for a url
+     * @return the endpoint, or null if it isn't one that we know about
+     */
+    public static Endpoint getEndpoint(URL url) {
+        if (!PlaylistTrackFetcher.API_HOST.equals(url.getHost())) {
+            return null;
+        }
+
+        for (Endpoint endpoint : ENDPOINTS) {
+            if (endpoint.path.matcher(url.getPath()).matches()) {
+                return endpoint;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Endpoint endpoint = getEndpoint(request.url());
+
+        if (endpoint != null) {
+            String url = shapeUrl(request.urlString(), endpoint);
+            if (!url.equals(request.urlString())) {
+                request = request.newBuilder().url(url).build();
+            }
+        }
+
+        return chain.proceed(request);
+    }
+
+    /**
+     * Add the endpoint's limit and fields to the url, unless they are already there
+     */
+    protected String shapeUrl(String url, Endpoint endpoint) {
+        StringBuilder shaped = new StringBuilder(url);
+        String query = getQuery(url);
+
+        if (endpoint.limit > 0 && !hasParam(query, PARAM_LIMIT)) {
+            appendParam(shaped, PARAM_LIMIT, String.valueOf(endpoint.limit));
+        }
+
+        if (endpoint.fields != null && !hasParam(query, PARAM_FIELDS)) {
+            appendParam(shaped, PARAM_FIELDS, endpoint.fields);
+        }
+
+        return shaped.toString();
+    }
+
+    private String getQuery(String url) {
+        int start = url.indexOf('?');
+        return start == -1 ? null : url.substring(start + 1);
+    }
+
+    private boolean hasParam(String query, String name) {
+        if (query == null) {
+            return false;
+        }
+
+        for (String param : query.split("&")) {
+            if (param.equals(name) || param.startsWith(name + "=")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void appendParam(StringBuilder url, String name, String value) {
+        url.append(url.indexOf("?") == -1 ? '?' : '&');
+
+        try {
+            url.append(name).append('=').append(URLEncoder.encode(value, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 should always be supported", e);
+        }
+    }
+
+}
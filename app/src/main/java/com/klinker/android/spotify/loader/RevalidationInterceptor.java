@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Makes sure that cached web api responses are always checked with the server before they are used. Spotify can
+ * send a max age with its responses, and serving a stale list of playlists would hide changes from the snapshot
+ * sync. Marking the response as no-cache still lets it be stored, but the cache will then ask the server with
+ * If-None-Match every time, which costs a 304 with no body when nothing changed. This has to be a network
+ * interceptor so that it runs before the response is written to the cache
+ */
+public class RevalidationInterceptor implements Interceptor {
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_EXPIRES = "Expires";
+    private static final String NO_CACHE = "no-cache";
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+
+        if (!shouldRevalidate(request) || response.header(HEADER_ETAG) == null) {
+            return response;
+        }
+
+        return response.newBuilder()
+                .header(HEADER_CACHE_CONTROL, NO_CACHE)
+                .removeHeader(HEADER_EXPIRES)
+                .build();
+    }
+
+    /**
+     * Check whether a request is to one of the web api endpoints that we keep in sync
+     */
+    protected boolean shouldRevalidate(Request request) {
+        return RequestShaper.getEndpoint(request.url()) != null;
+    }
+
+}
@@ -16,19 +16,18 @@
 
 package com.klinker.android.spotify.loader;
 
-import java.util.HashMap;
 import java.util.List;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
 import android.util.Log;
+import com.klinker.android.spotify.data.LibrarySnapshot;
 import com.klinker.android.spotify.provider.PlaylistProvider;
-import com.klinker.android.spotify.data.Song;
 
 /**
- * Loads songs and playlist information from PlaylistProvider
+ * Loads the library's rows, each playlist with its first songs, from PlaylistProvider
  */
-public class SongItemLoader extends AsyncTaskLoader<HashMap<String, List<Song>>> {
+public class SongItemLoader extends AsyncTaskLoader<List<LibrarySnapshot.Row>> {
 
     private static final String TAG = "SongItemLoader";
     private Context mContext;
@@ -41,7 +40,7 @@ public class SongItemLoader extends AsyncTaskLoader<HashMap<String, List<Song>>>
     }
 
     @Override
-    public HashMap<String, List<Song>> loadInBackground() {
+    public List<LibrarySnapshot.Row> loadInBackground() {
         try {
             return PlaylistProvider.buildMedia(mContext, callback);
         } catch (Exception e) {
@@ -0,0 +1,499 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import com.klinker.android.spotify.util.SharedHttpClient;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Cache for the thumbnails shown on the browse cards. Thumbnails are kept in a memory cache that is bounded by bytes,
+ * and on disk already decoded down to card size, keyed by the url and the size. Scrolling back over cards that have
+ * been seen before is served from memory, and after that from a small file on disk, so the network and the full size
+ * decode only happen the first time an image is shown.
+ *
+ * Everyone that is given a thumbnail holds a reference to it and has to release it when it isn't shown anymore. Once
+ * a thumbnail has been dropped from the memory cache and nothing holds a reference to it, it goes into a BitmapPool
+ * to be decoded over
+ */
+public class ThumbnailCache {
+
+    private static final String TAG = "ThumbnailCache";
+
+    /**
+     * Directory in the app's cache dir that the thumbnails are written to
+     */
+    private static final String DIRECTORY = "thumbnails";
+
+    /**
+     * Max number of bytes to keep on disk, the oldest thumbnails are deleted past this
+     */
+    private static final long MAX_DISK_SIZE = 20 * 1024 * 1024;
+
+    /**
+     * Fraction of the app's memory to use for the memory cache
+     */
+    private static final int MEMORY_FRACTION = 8;
+
+    /**
+     * Fraction of the memory cache's size to use for the bitmap pool
+     */
+    private static final int POOL_FRACTION = 4;
+
+    /**
+     * Number of thumbnails to load at once
+     */
+    private static final int LOADER_THREADS = 3;
+
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * Interface for getting the thumbnail once it has loaded. Always called on the UI thread
+     */
+    public interface OnThumbnailLoadedListener {
+
+        /**
+         * @param url the url that was requested
+         * @param bitmap the thumbnail, or null if it failed to load. The listener holds a reference to it and has
+         *               to release it
+         */
+        void onThumbnailLoaded(String url, Bitmap bitmap);
+    }
+
+    private static volatile ThumbnailCache thumbnailCache;
+
+    /**
+     * Get a singleton cache, shared between all classes
+     */
+    public static synchronized ThumbnailCache get(Context context) {
+        if (thumbnailCache == null) {
+            context = context.getApplicationContext();
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            int memoryBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_FRACTION;
+
+            thumbnailCache = new ThumbnailCache(new File(context.getCacheDir(), DIRECTORY), memoryBytes,
+                    Executors.newFixedThreadPool(LOADER_THREADS), new Handler(Looper.getMainLooper()));
+        }
+
+        return thumbnailCache;
+    }
+
+    private LruCache<String, Bitmap> memoryCache;
+    private BitmapPool pool;
+    private final IdentityHashMap<Bitmap, Integer> references = new IdentityHashMap<Bitmap, Integer>();
+    private final Set<Bitmap> removedFromMemory = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+    private File directory;
+    private ExecutorService executor;
+    private Handler handler;
+    private OkHttpClient client;
+    private long diskSize = -1;
+
+    /**
+     * Exposed for testing
+     */
+    protected ThumbnailCache(File directory, int memoryBytes, ExecutorService executor, Handler handler) {
+        this.directory = directory;
+        this.executor = executor;
+        this.handler = handler;
+        this.client = SharedHttpClient.get();
+        this.pool = new BitmapPool(memoryBytes / POOL_FRACTION);
+        this.memoryCache = new LruCache<String, Bitmap>(memoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) {
+                    onRemovedFromMemory(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * Get a thumbnail if it is already in memory, and take a reference to it
+     * @return the thumbnail, or null if it has to be loaded
+     */
+    public Bitmap getCached(String url, int size) {
+        synchronized (references) {
+            Bitmap bitmap = memoryCache.get(getKey(url, size));
+            if (bitmap != null) {
+                acquire(bitmap);
+            }
+
+            return bitmap;
+        }
+    }
+
+    /**
+     * Give back a reference to a thumbnail once it isn't shown anymore
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        synchronized (references) {
+            Integer count = references.get(bitmap);
+            if (count == null) {
+                return;
+            }
+
+            if (count > 1) {
+                references.put(bitmap, count - 1);
+            } else {
+                references.remove(bitmap);
+                if (removedFromMemory.remove(bitmap)) {
+                    pool.put(bitmap);
+                }
+            }
+        }
+    }
+
+    private void acquire(Bitmap bitmap) {
+        Integer count = references.get(bitmap);
+        references.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    private void onRemovedFromMemory(Bitmap bitmap) {
+        synchronized (references) {
+            if (references.containsKey(bitmap)) {
+                // still on screen, it goes to the pool once it is released
+                removedFromMemory.add(bitmap);
+            } else {
+                pool.put(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Exposed for testing
+     */
+    protected BitmapPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Load a thumbnail. If it is in memory, the listener is called right away, otherwise it is loaded from disk or
+     * the network off of the UI thread. The load should be cancelled if the thumbnail isn't needed anymore
+     * @param url the url of the full image
+     * @param size the width and height in pixels to decode the thumbnail at
+     * @param listener the listener to give the thumbnail to on the UI thread
+     * @return the load, so that it can be cancelled, or null if the thumbnail was already in memory
+     */
+    public Future<?> load(final String url, final int size, final OnThumbnailLoadedListener listener) {
+        Bitmap cached = getCached(url, size);
+        if (cached != null) {
+            listener.onThumbnailLoaded(url, cached);
+            return null;
+        }
+
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = loadBlocking(url, size);
+                if (Thread.currentThread().isInterrupted()) {
+                    release(bitmap);
+                    return;
+                }
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onThumbnailLoaded(url, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Load a thumbnail from memory, disk or the network, in that order, and take a reference to it. Should be called
+     * off of the UI thread
+     * @return the thumbnail, or null if it couldn't be loaded
+     */
+    protected Bitmap loadBlocking(String url, int size) {
+        Bitmap bitmap = getCached(url, size);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        String key = getKey(url, size);
+        File file = new File(directory, getFileName(key));
+        if (file.exists()) {
+            bitmap = decodeFile(file, size);
+            file.setLastModified(System.currentTimeMillis());
+        }
+
+        if (bitmap == null) {
+            try {
+                bitmap = decode(download(url), size);
+            } catch (IOException e) {
+                Log.e(TAG, "error loading thumbnail " + url, e);
+                return null;
+            }
+
+            if (bitmap != null) {
+                write(file, bitmap);
+            }
+        }
+
+        if (bitmap != null) {
+            // take the reference before anything else can push it out of memory and into the pool
+            synchronized (references) {
+                memoryCache.put(key, bitmap);
+                acquire(bitmap);
+            }
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Download the full image
+     */
+    protected byte[] download(String url) throws IOException {
+        Response response = client.newCall(new Request.Builder().url(url).build()).execute();
+        if (!response.isSuccessful()) {
+            throw new IOException("unexpected response " + response.code());
+        }
+
+        return response.body().bytes();
+    }
+
+    /**
+     * Decode a thumbnail that was written to disk. It is already the right size, so a pooled bitmap can be reused. If
+     * the pooled bitmap doesn't end up holding the thumbnail it goes back in the pool, and a file that can't be
+     * decoded is deleted so that it is downloaded again instead of failing on every bind
+     */
+    private Bitmap decodeFile(File file, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        Bitmap pooled = pool.get(size, size, Bitmap.Config.ARGB_8888);
+        options.inBitmap = pooled;
+
+        Bitmap bitmap;
+        try {
+            bitmap = decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            // the file wasn't the size we expected, so the pooled bitmap couldn't be used
+            options.inBitmap = null;
+            bitmap = decodeFile(file.getPath(), options);
+        }
+
+        if (pooled != null && bitmap != pooled) {
+            pool.put(pooled);
+        }
+
+        if (bitmap == null) {
+            Log.w(TAG, "deleting thumbnail that couldn't be decoded " + file);
+            delete(file);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Exposed for testing
+     */
+    protected Bitmap decodeFile(String path, BitmapFactory.Options options) {
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    /**
+     * Decode the image straight down to the thumbnail size. The image is subsampled by a power of two first, so the
+     * full size bitmap is never allocated, and then drawn the rest of the way into a pooled bitmap
+     */
+    protected Bitmap decode(byte[] data, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, size);
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        if (bitmap == null) {
+            return null;
+        }
+
+        Bitmap thumbnail = pool.get(size, size, Bitmap.Config.ARGB_8888);
+        if (thumbnail == null) {
+            thumbnail = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        } else {
+            // pooled bitmaps still have the last thumbnail in them, which would show through transparent artwork
+            thumbnail.eraseColor(Color.TRANSPARENT);
+        }
+
+        new Canvas(thumbnail).drawBitmap(bitmap, null, new Rect(0, 0, size, size),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        bitmap.recycle();
+
+        return thumbnail;
+    }
+
+    /**
+     * Get the largest power of two that the image can be divided by and still be at least as big as the thumbnail
+     */
+    protected static int getSampleSize(int width, int height, int size) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= size && height / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+
+        return sampleSize;
+    }
+
+    /**
+     * Write the thumbnail to disk and make room for it if we are over the limit
+     */
+    private synchronized void write(File file, Bitmap bitmap) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+
+        File temp = new File(directory, file.getName() + ".tmp");
+        OutputStream out = null;
+
+        try {
+            out = new FileOutputStream(temp);
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.e(TAG, "error writing thumbnail", e);
+            temp.delete();
+            return;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // nothing else to do
+                }
+            }
+        }
+
+        if (temp.renameTo(file)) {
+            diskSize = getDiskSize() + file.length();
+            trimDisk();
+        } else {
+            temp.delete();
+        }
+    }
+
+    private synchronized void delete(File file) {
+        long length = file.length();
+        if (file.delete() && diskSize >= 0) {
+            diskSize -= length;
+        }
+    }
+
+    private long getDiskSize() {
+        if (diskSize < 0) {
+            diskSize = 0;
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    diskSize += file.length();
+                }
+            }
+        }
+
+        return diskSize;
+    }
+
+    /**
+     * Delete the least recently used thumbnails until we are back under the limit
+     */
+    private void trimDisk() {
+        if (diskSize <= MAX_DISK_SIZE) {
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long left = lhs.lastModified();
+                long right = rhs.lastModified();
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < files.length && diskSize > MAX_DISK_SIZE; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                diskSize -= length;
+            }
+        }
+    }
+
+    private String getKey(String url, int size) {
+        return url + ":" + size;
+    }
+
+    private String getFileName(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(String.format("%02x", b & 0xff));
+            }
+
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        } catch (IOException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.util.Log;
+import com.klinker.android.spotify.util.OnAuthTokenRefreshedListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Makes sure that only one token refresh is running at a time. Anyone that asks for a refresh while one is already
+ * running waits on that same refresh instead of starting another one, so we only hit the token url once and only one
+ * thread is writing the new token to the settings
+ */
+public class TokenRefreshCoordinator {
+
+    private static final String TAG = "TokenRefreshCoordinator";
+
+    private final Runnable refresh;
+    private final ExecutorService executor;
+    private final List<OnAuthTokenRefreshedListener> listeners = new ArrayList<OnAuthTokenRefreshedListener>();
+    private FutureTask<Boolean> current;
+
+    /**
+     * Create a new coordinator
+     * @param refresh the work to refresh the token and save it, a runtime exception means that it failed
+     * @param executor executor to run the refresh on
+     */
+    public TokenRefreshCoordinator(Runnable refresh, ExecutorService executor) {
+        this.refresh = refresh;
+        this.executor = executor;
+    }
+
+    /**
+     * Start a refresh, or join the one that is already running
+     * @param listener notified once, off of the UI thread, when the refresh succeeds. Can be null. Adding the same
+     *                 listener more than once before the refresh finishes still only notifies it once
+     * @return the refresh, which gives true if it worked
+     */
+    public synchronized Future<Boolean> refresh(OnAuthTokenRefreshedListener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+
+        if (current == null) {
+            current = new FutureTask<Boolean>(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return runRefresh();
+                }
+            });
+
+            executor.execute(current);
+        }
+
+        return current;
+    }
+
+    /**
+     * Check whether there is a refresh running right now
+     */
+    public synchronized boolean isRefreshing() {
+        return current != null;
+    }
+
+    private boolean runRefresh() {
+        boolean refreshed;
+        try {
+            refresh.run();
+            refreshed = true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "error refreshing token", e);
+            refreshed = false;
+        }
+
+        List<OnAuthTokenRefreshedListener> waiting;
+        synchronized (this) {
+            // anyone asking after this point needs a new refresh
+            waiting = new ArrayList<OnAuthTokenRefreshedListener>(listeners);
+            listeners.clear();
+            current = null;
+        }
+
+        if (refreshed) {
+            for (OnAuthTokenRefreshedListener listener : waiting) {
+                listener.authTokenRefreshed();
+            }
+        }
+
+        return refreshed;
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.util.Log;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renews the auth token before it expires, so that nothing has to wait on a refresh when it goes to use the token.
+ * The renewal is scheduled a few minutes ahead of the expiration date to leave room for clock skew and a slow
+ * network. Renewals go through the coordinator, so they are shared with any refresh that is already running, and
+ * failed renewals are retried with an exponential back off until one works
+ */
+public class TokenRenewalScheduler {
+
+    private static final String TAG = "TokenRenewalScheduler";
+
+    /**
+     * How long before the token expires that it should be renewed
+     */
+    public static final long SKEW_MARGIN = 5 * 60 * 1000;
+
+    /**
+     * How long to wait before retrying the first failed renewal, this doubles with each failure after that
+     */
+    private static final long MIN_RETRY_DELAY = 10 * 1000;
+
+    /**
+     * Longest that we will wait between retries
+     */
+    private static final long MAX_RETRY_DELAY = 5 * 60 * 1000;
+
+    private final TokenRefreshCoordinator coordinator;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> pending;
+    private int failures;
+
+    /**
+     * Create a new scheduler
+     * @param coordinator coordinator that the renewals are run through
+     * @param executor executor to wait on and run the renewals with
+     */
+    public TokenRenewalScheduler(TokenRefreshCoordinator coordinator, ScheduledExecutorService executor) {
+        this.coordinator = coordinator;
+        this.executor = executor;
+    }
+
+    /**
+     * Schedule the next renewal for a token, replacing the one that was scheduled before. This should be called each
+     * time a new token is saved
+     * @param expirationDate the time that the token expires, or -1 if there isn't a token to renew
+     */
+    public synchronized void schedule(long expirationDate) {
+        failures = 0;
+
+        if (expirationDate == -1) {
+            cancel();
+        } else {
+            scheduleRenewal(getRenewalDelay(expirationDate));
+        }
+    }
+
+    /**
+     * Stop any renewal that is waiting to run
+     */
+    public synchronized void cancel() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    /**
+     * Check whether there is a renewal waiting to run
+     */
+    public synchronized boolean isScheduled() {
+        return pending != null;
+    }
+
+    private void scheduleRenewal(long delay) {
+        cancel();
+
+        Log.v(TAG, "renewing token in " + delay + "ms");
+        pending = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                renew();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run the renewal and wait for it to finish. A successful refresh schedules the next renewal itself when it saves
+     * the new token, so only failures need to be handled here
+     */
+    protected void renew() {
+        synchronized (this) {
+            pending = null;
+        }
+
+        Future<Boolean> refresh = coordinator.refresh(null);
+        boolean renewed;
+
+        try {
+            renewed = refresh.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            renewed = false;
+        }
+
+        if (!renewed) {
+            synchronized (this) {
+                // someone else may have already saved a new token and scheduled the next renewal
+                if (pending == null) {
+                    long delay = getRetryDelay(++failures);
+                    Log.v(TAG, "token renewal failed " + failures + " times");
+                    scheduleRenewal(delay);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get how long to wait before renewing a token, renewing right away if it is already close to expiring
+     */
+    protected long getRenewalDelay(long expirationDate) {
+        return Math.max(0, expirationDate - SKEW_MARGIN - getNow());
+    }
+
+    /**
+     * Get how long to wait before retrying after a number of failed renewals in a row
+     */
+    protected long getRetryDelay(int failures) {
+        long delay = MIN_RETRY_DELAY << Math.min(failures - 1, 16);
+        return Math.min(delay, MAX_RETRY_DELAY);
+    }
+
+    protected long getNow() {
+        return System.currentTimeMillis();
+    }
+
+}
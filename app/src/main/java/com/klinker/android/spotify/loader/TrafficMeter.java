@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Counts the bytes that come back over the wire for each web api endpoint, so that we can see how much each part of
+ * a sync costs. This should be added as a network interceptor, so that it sees the body before it is unzipped. Traffic
+ * that isn't to a known endpoint is counted under its host
+ */
+public class TrafficMeter implements Interceptor {
+
+    private final Map<String, AtomicLong> bytes = new TreeMap<String, AtomicLong>();
+    private final Map<String, AtomicLong> requests = new TreeMap<String, AtomicLong>();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+
+        String name = getName(request);
+        getCounter(requests, name).incrementAndGet();
+
+        if (response.body() == null) {
+            return response;
+        }
+
+        ResponseBody body = response.body();
+        BufferedSource source = Okio.buffer(new CountingSource(body.source(), getCounter(bytes, name)));
+        return response.newBuilder()
+                .body(new MeteredBody(body.contentType(), body.contentLength(), source))
+                .build();
+    }
+
+    /**
+     * Get the name that traffic for the request is counted under
+     */
+    protected String getName(Request request) {
+        RequestShaper.Endpoint endpoint = RequestShaper.getEndpoint(request.url());
+        return endpoint == null ? request.url().getHost() : endpoint.getName();
+    }
+
+    /**
+     * Get the number of body bytes that have been read from responses for an endpoint
+     */
+    public long getBytesReceived(String name) {
+        return getCount(bytes, name);
+    }
+
+    /**
+     * Get the number of requests that have been made to an endpoint
+     */
+    public long getRequestCount(String name) {
+        return getCount(requests, name);
+    }
+
+    /**
+     * Clear the counts, so that the next sync can be measured on its own
+     */
+    public synchronized void reset() {
+        bytes.clear();
+        requests.clear();
+    }
+
+    private synchronized long getCount(Map<String, AtomicLong> counts, String name) {
+        AtomicLong count = counts.get(name);
+        return count == null ? 0 : count.get();
+    }
+
+    private synchronized AtomicLong getCounter(Map<String, AtomicLong> counts, String name) {
+        AtomicLong count = counts.get(name);
+        if (count == null) {
+            count = new AtomicLong();
+            counts.put(name, count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Summary of the traffic for each endpoint, for logging
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (String name : requests.keySet()) {
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+
+            summary.append(name).append(": ").append(getCount(requests, name)).append(" requests, ")
+                    .append(getCount(bytes, name)).append(" bytes");
+        }
+
+        return summary.toString();
+    }
+
+    /**
+     * Source that adds the bytes read through it to a counter
+     */
+    private static class CountingSource extends ForwardingSource {
+
+        private AtomicLong counter;
+
+        public CountingSource(BufferedSource delegate, AtomicLong counter) {
+            super(delegate);
+            this.counter = counter;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+                counter.addAndGet(read);
+            }
+
+            return read;
+        }
+    }
+
+    /**
+     * Response body that reads through the counting source
+     */
+    private static class MeteredBody extends ResponseBody {
+
+        private MediaType contentType;
+        private long contentLength;
+        private BufferedSource source;
+
+        public MeteredBody(MediaType contentType, long contentLength, BufferedSource source) {
+            this.contentType = contentType;
+            this.contentLength = contentLength;
+            this.source = source;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+
+}
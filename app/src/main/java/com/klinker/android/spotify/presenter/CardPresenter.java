@@ -29,13 +29,13 @@ import android.view.ViewGroup;
 
 import com.klinker.android.spotify.R;
 import com.klinker.android.spotify.data.Song;
+import com.klinker.android.spotify.loader.ThumbnailCache;
+import com.klinker.android.spotify.util.StartupTracer;
 import com.klinker.android.spotify.util.Utils;
-import com.squareup.picasso.Picasso;
-import com.squareup.picasso.Target;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.net.URI;
+import java.util.concurrent.Future;
 
 /**
  * Presenter for displaying playlists and songs to a user. This is based off of a RecyclerView
@@ -48,6 +48,13 @@ public class CardPresenter extends Presenter {
     private static int CARD_WIDTH = 250;
     private static int CARD_HEIGHT = 250;
 
+    /**
+     * Get the size in pixels that the card thumbnails are loaded and cached at
+     */
+    public static int getThumbnailSize(Context context) {
+        return Utils.dpToPx(CARD_WIDTH, context);
+    }
+
     /**
      * ViewHolder to hold all data that we wish to present
      */
@@ -55,7 +62,8 @@ public class CardPresenter extends Presenter {
         @Getter @Setter private Song song;
         private ImageCardView mCardView;
         private Drawable mDefaultCardImage;
-        private PicassoImageCardViewTarget mImageCardViewTarget;
+        private ThumbnailCardViewTarget mImageCardViewTarget;
+        private Future<?> mImageLoad;
 
         /**
          * Constructs new ViewHolder based off of view
@@ -63,19 +71,33 @@ public class CardPresenter extends Presenter {
         public ViewHolder(View view) {
             super(view);
             mCardView = (ImageCardView) view;
-            mImageCardViewTarget = new PicassoImageCardViewTarget(mCardView);
+            mImageCardViewTarget = new ThumbnailCardViewTarget(mCardView);
             mDefaultCardImage = new ColorDrawable(mContext.getResources().getColor(R.color.fastlane_background));
         }
 
         /**
-         * Use picasso to update the card icon with album artwork
+         * Load the album artwork for the card icon through the thumbnail cache
+         */
+        protected void updateCardViewImage(String url) {
+            clearCardViewImage();
+
+            mImageCardViewTarget.mUrl = url;
+            mImageCardViewTarget.mErrorImage = mDefaultCardImage;
+            mImageLoad = ThumbnailCache.get(mContext)
+                    .load(url, getThumbnailSize(mContext), mImageCardViewTarget);
+        }
+
+        /**
+         * Cancel the image load if it hasn't finished and give back the thumbnail that is showing, so that it can be
+         * reused once it is out of the memory cache
          */
-        protected void updateCardViewImage(URI uri) {
-            Picasso.with(mContext)
-                    .load(uri.toString())
-                    .resize(Utils.dpToPx(CARD_WIDTH, mContext), Utils.dpToPx(CARD_HEIGHT, mContext))
-                    .error(mDefaultCardImage)
-                    .into(mImageCardViewTarget);
+        protected void clearCardViewImage() {
+            if (mImageLoad != null) {
+                mImageLoad.cancel(true);
+                mImageLoad = null;
+            }
+
+            mImageCardViewTarget.clear();
         }
     }
 
@@ -106,12 +128,17 @@ public class CardPresenter extends Presenter {
             ((ViewHolder) viewHolder).mCardView.setContentText(song.getArtist());
             ((ViewHolder) viewHolder).mCardView.setMainImageDimensions(CARD_WIDTH, CARD_HEIGHT);
             ((ViewHolder) viewHolder).mImageCardViewTarget.mImageCardView.getMainImageView().setImageDrawable(null);
-            ((ViewHolder) viewHolder).updateCardViewImage(song.getCardImageURI());
+            ((ViewHolder) viewHolder).updateCardViewImage(song.getImageUrl(getThumbnailSize(mContext),
+                    getThumbnailSize(mContext)));
         }
     }
 
+    /**
+     * Stop loading the image for cards that have scrolled off of the screen
+     */
     @Override
     public void onUnbindViewHolder(Presenter.ViewHolder viewHolder) {
+        ((ViewHolder) viewHolder).clearCardViewImage();
     }
 
     @Override
@@ -119,27 +146,45 @@ public class CardPresenter extends Presenter {
         // TO DO
     }
 
-    public static class PicassoImageCardViewTarget implements Target {
+    /**
+     * Sets the thumbnail on the card, as long as the card hasn't been bound to a different song while it was loading
+     */
+    public static class ThumbnailCardViewTarget implements ThumbnailCache.OnThumbnailLoadedListener {
         private ImageCardView mImageCardView;
+        private String mUrl;
+        private Drawable mErrorImage;
+        private Bitmap mBitmap;
 
-        public PicassoImageCardViewTarget(ImageCardView imageCardView) {
+        public ThumbnailCardViewTarget(ImageCardView imageCardView) {
             mImageCardView = imageCardView;
         }
 
         @Override
-        public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom loadedFrom) {
-            Drawable bitmapDrawable = new BitmapDrawable(mContext.getResources(), bitmap);
-            mImageCardView.setMainImage(bitmapDrawable);
-        }
-
-        @Override
-        public void onBitmapFailed(Drawable drawable) {
-            mImageCardView.setMainImage(drawable);
+        public void onThumbnailLoaded(String url, Bitmap bitmap) {
+            if (!url.equals(mUrl)) {
+                ThumbnailCache.get(mContext).release(bitmap);
+                return;
+            }
+
+            ThumbnailCache.get(mContext).release(mBitmap);
+            mBitmap = bitmap;
+
+            if (bitmap != null) {
+                mImageCardView.setMainImage(new BitmapDrawable(mContext.getResources(), bitmap));
+                StartupTracer.get().markOnce("first_image_bind");
+            } else {
+                mImageCardView.setMainImage(mErrorImage);
+            }
         }
 
-        @Override
-        public void onPrepareLoad(Drawable drawable) {
-            // Do nothing, default_background manager has its own transitions
+        /**
+         * Take the thumbnail off of the card and give it back to the cache
+         */
+        public void clear() {
+            mUrl = null;
+            mImageCardView.setMainImage(null);
+            ThumbnailCache.get(mContext).release(mBitmap);
+            mBitmap = null;
         }
     }
 
@@ -18,17 +18,27 @@ package com.klinker.android.spotify.provider;
 
 import android.content.Context;
 
-import android.text.TextUtils;
+import android.util.Log;
+import com.klinker.android.spotify.data.LibraryDatabase;
+import com.klinker.android.spotify.data.LibraryPlaylist;
+import com.klinker.android.spotify.data.LibrarySnapshot;
+import com.klinker.android.spotify.data.SearchIndex;
 import com.klinker.android.spotify.data.Song;
+import com.klinker.android.spotify.data.SongCatalog;
 import com.klinker.android.spotify.data.SpotifyHelper;
 import com.klinker.android.spotify.loader.OnPlaylistLoaded;
-import com.klinker.android.spotify.util.PlaylistWrapper;
+import com.klinker.android.spotify.loader.OnPlaylistPageLoaded;
+import com.klinker.android.spotify.util.StartupTracer;
 
 import kaaes.spotify.webapi.android.models.*;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides playlist information to Main Fragment
@@ -37,9 +47,15 @@ public class PlaylistProvider {
 
     private static final String TAG = "PlaylistProvider";
 
-    private static HashMap<String, List<Song>> mPlaylistList;
+    private static List<LibrarySnapshot.Row> mPlaylistList;
     private static Context mContext;
 
+    /**
+     * Reading every stored song for the search index isn't needed to show the rows, so it is done on a single low
+     * priority thread after the rows are returned
+     */
+    private static final Executor mIndexExecutor = buildIndexExecutor();
+
     /**
      * Set the context for the provider
      */
@@ -56,54 +72,197 @@ public class PlaylistProvider {
     }
 
     /**
-     * Get the already fetched playlist list
+     * Get the already fetched playlist rows
      */
-    public static HashMap<String, List<Song>> getPlaylistList() {
+    public static List<LibrarySnapshot.Row> getPlaylistList() {
         return mPlaylistList;
     }
 
     /**
-     * Build the playlist list
+     * Build the playlist list. The rows from the last sync are read from the library snapshot, or from the database if
+     * there isn't one, and if the callback is an OnPlaylistPageLoaded they are streamed to it right away, before we
+     * wait on the auth token. Playlists are then synced into the library database, which only downloads the ones that
+     * have changed, and the first page of every row is read back out of the database and saved as the new snapshot.
+     * If the token can't be refreshed or the sync fails, then the stored rows are returned instead. Either way, every
+     * stored song is added to the search index in the background. Each step is traced as a phase of the launch
      */
-    public static HashMap<String, List<Song>> buildMedia(Context context, OnPlaylistLoaded callback) {
+    public static List<LibrarySnapshot.Row> buildMedia(Context context, OnPlaylistLoaded callback) {
         if (null != mPlaylistList) {
             return getPlaylistList();
         }
 
+        LibraryDatabase database = LibraryDatabase.get(context);
+        LibrarySnapshot snapshot = LibrarySnapshot.get(context);
         SpotifyHelper helper = SpotifyHelper.get(context);
-        PlaylistWrapper playlistWrapper = helper.loadPlaylists(callback);
+        SearchIndex index = SearchIndex.get();
+        StartupTracer tracer = StartupTracer.get();
+
+        List<LibrarySnapshot.Row> stored;
+        StartupTracer.Span span = tracer.begin("show_stored_library");
+        try {
+            stored = loadStoredLibrary(snapshot, database);
+            if (callback instanceof OnPlaylistPageLoaded) {
+                showStoredLibrary(stored, (OnPlaylistPageLoaded) callback);
+            }
+        } finally {
+            span.end();
+        }
+
+        // the rows that are showing can be searched right away, the rest of the library is added after the sync
+        for (LibrarySnapshot.Row row : stored) {
+            index.addAll(row.getSongs());
+        }
+
+        span = tracer.begin("await_auth_token");
+        try {
+            if (!helper.awaitAuthToken()) {
+                Log.w(TAG, "auth token couldn't be refreshed, using the stored library");
+                indexLibrary(mIndexExecutor, index, database);
+                return stored;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            span.end();
+        }
+
+        span = tracer.begin("load_playlists");
+        try {
+            helper.loadPlaylists(database, callback);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "error syncing the library, using the stored library", e);
+            indexLibrary(mIndexExecutor, index, database);
+            return stored;
+        } finally {
+            span.end();
+        }
 
-        mPlaylistList = playlistWrapper.getProviderInformation();
+        span = tracer.begin("save_library");
+        try {
+            List<LibrarySnapshot.Row> rows = readDatabaseRows(database);
+            snapshot.write(rows);
+            mPlaylistList = rows;
+        } finally {
+            span.end();
+        }
+
+        indexLibrary(mIndexExecutor, index, database);
 
         return mPlaylistList;
     }
 
     /**
-     * Build a song from a Spotify track object
+     * Add every stored song to the search index on the executor. The rows that are showing are already in the index,
+     * so only searches for songs further down the playlists have to wait on this
      */
-    public Song buildSong(Track track) {
-        if (TextUtils.isEmpty(track.uri)) {
-            return null;
+    protected static void indexLibrary(Executor executor, final SearchIndex index, final LibraryDatabase database) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                index.addLibrary(database);
+            }
+        });
+    }
+
+    private static Executor buildIndexExecutor() {
+        return new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "SearchIndexer");
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Get the rows from the last sync. The snapshot is tried first since it is one quick read, the database is only
+     * used when the snapshot is missing or was written by a different version
+     */
+    protected static List<LibrarySnapshot.Row> loadStoredLibrary(LibrarySnapshot snapshot, LibraryDatabase database) {
+        List<LibrarySnapshot.Row> rows = snapshot.read();
+        return rows == null ? readDatabaseRows(database) : rows;
+    }
+
+    /**
+     * Read each stored playlist and the first page of its songs out of the database
+     */
+    protected static List<LibrarySnapshot.Row> readDatabaseRows(LibraryDatabase database) {
+        List<LibraryPlaylist> playlists = database.getPlaylists();
+        List<LibrarySnapshot.Row> rows = new ArrayList<LibrarySnapshot.Row>(playlists.size());
+
+        for (LibraryPlaylist playlist : playlists) {
+            rows.add(new LibrarySnapshot.Row(playlist,
+                    database.getPlaylistSongs(playlist.id, 0, SpotifyHelper.TRACKS_PER_PAGE)));
         }
 
-        Song song = new Song();
-        song.setId(track.uri);
-        song.setTitle(track.name);
-        song.setAlbum(track.album.name);
+        return rows;
+    }
+
+    /**
+     * Send the first page of every stored playlist to the callback, so that the rows from the last sync show up
+     * without waiting on the network
+     */
+    protected static void showStoredLibrary(List<LibrarySnapshot.Row> rows, OnPlaylistPageLoaded callback) {
+        for (int i = 0; i < rows.size(); i++) {
+            callback.onPlaylistPageLoaded(rows.get(i).getPlaylist(), i, 0, rows.get(i).getSongs());
+        }
+    }
 
-        List<Image> images = track.album.images;
-        if (images.size() > 0) {
-            song.setBackgroundImageUrl(images.get(0).url);
-            song.setCardImageUrl(images.get(0).url);
+    /**
+     * Load the next page of songs for a playlist row, should be called off of the UI thread
+     * @param offset the number of songs that are already showing in the row
+     * @return the next songs, an empty list when the whole playlist is showing, or null if they could not be loaded
+     */
+    public static List<Song> loadMoreSongs(Context context, String playlistId, int offset) {
+        try {
+            List<Song> songs = SpotifyHelper.get(context).loadMoreSongs(LibraryDatabase.get(context), playlistId,
+                    offset);
+            SearchIndex.get().addAll(songs);
+            return songs;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading more songs for " + playlistId, e);
+            return null;
         }
+    }
+
+    /**
+     * Load every song in a playlist for the play queue, should be called off of the UI thread. Songs that are stored
+     * are read from the database and the rest are paged in from Spotify
+     * @return the songs, which can stop short of the end of the playlist if a page could not be loaded
+     */
+    public static List<Song> loadAllSongs(Context context, String playlistId) {
+        return loadAllSongs(SpotifyHelper.get(context), LibraryDatabase.get(context), playlistId);
+    }
 
-        List<ArtistSimple> artists = track.artists;
-        if (artists.size() > 0) {
-            song.setArtist(artists.get(0).name);
-            song.setType(artists.get(0).type);
+    protected static List<Song> loadAllSongs(SpotifyHelper helper, LibraryDatabase database, String playlistId) {
+        List<Song> songs = new ArrayList<Song>(database.getPlaylistSongs(playlistId));
+
+        try {
+            List<Song> page;
+            while ((page = helper.loadMoreSongs(database, playlistId, songs.size())).size() > 0) {
+                songs.addAll(page);
+                SearchIndex.get().addAll(page);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading the rest of " + playlistId + ", playing the first " + songs.size(), e);
         }
 
-        return song;
+        return songs;
+    }
+
+    /**
+     * Build a song from a Spotify track object, the song is shared through the SongCatalog
+     */
+    public Song buildSong(Track track) {
+        return SongCatalog.get().buildSong(track);
     }
 
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.util;
+
+import com.klinker.android.spotify.data.AlbumImage;
+
+import java.util.List;
+
+/**
+ * Picks which size of an album's artwork to load for the place it will be shown, so that a card doesn't download and
+ * decode the 640px cover just to shrink it down
+ */
+public class ImageResolver {
+
+    private ImageResolver() {
+    }
+
+    /**
+     * Get the smallest image that is at least as big as the target in both directions. If none of them are big
+     * enough, the largest one is used
+     * @return the url of the image, or null if there aren't any
+     */
+    public static String resolve(List<AlbumImage> images, int width, int height) {
+        if (images == null || images.size() == 0) {
+            return null;
+        }
+
+        AlbumImage best = null;
+        for (AlbumImage image : images) {
+            if (isUnknownSize(image)) {
+                // can't tell if it is big enough, so only use it if there is nothing else
+                continue;
+            }
+
+            if (image.getWidth() >= width && image.getHeight() >= height
+                    && (best == null || getArea(image) < getArea(best))) {
+                best = image;
+            }
+        }
+
+        return best != null ? best.getUrl() : getLargest(images);
+    }
+
+    /**
+     * Get the largest image. Images without a size are assumed to be the full size one
+     * @return the url of the image, or null if there aren't any
+     */
+    public static String getLargest(List<AlbumImage> images) {
+        if (images == null || images.size() == 0) {
+            return null;
+        }
+
+        AlbumImage largest = null;
+        for (AlbumImage image : images) {
+            if (isUnknownSize(image)) {
+                return image.getUrl();
+            }
+
+            if (largest == null || getArea(image) > getArea(largest)) {
+                largest = image;
+            }
+        }
+
+        return largest.getUrl();
+    }
+
+    private static boolean isUnknownSize(AlbumImage image) {
+        return image.getWidth() <= 0 || image.getHeight() <= 0;
+    }
+
+    private static long getArea(AlbumImage image) {
+        return (long) image.getWidth() * image.getHeight();
+    }
+
+}
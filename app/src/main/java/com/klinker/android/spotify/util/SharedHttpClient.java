@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.util;
+
+import android.util.Log;
+import com.klinker.android.spotify.loader.RequestShaper;
+import com.klinker.android.spotify.loader.RevalidationInterceptor;
+import com.klinker.android.spotify.loader.TrafficMeter;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the one http client that all of our network traffic goes through: token refreshes, web api calls and artwork
+ * downloads. Sharing it means that requests reuse warm connections from the same pool instead of doing a new TLS
+ * handshake each time, and connections to the api can be multiplexed over HTTP/2. Responses are gzipped
+ * transparently as long as the request doesn't set its own Accept-Encoding header. Web api requests are shaped to ask
+ * for only the fields that we read, and the bytes that come back are metered for each endpoint. Once a cache is
+ * installed, unchanged playlists only cost a 304 round trip
+ */
+public class SharedHttpClient {
+
+    private static final String TAG = "SharedHttpClient";
+    private static final String CACHE_DIRECTORY = "http";
+    private static final long CACHE_SIZE = 10 * 1024 * 1024;
+
+    private static final long CONNECT_TIMEOUT = 15;
+    private static final long READ_TIMEOUT = 20;
+
+    private static volatile OkHttpClient client;
+    private static final TrafficMeter trafficMeter = new TrafficMeter();
+
+    /**
+     * Get the shared client. Anything that needs different settings should clone it, so that it keeps the same pool
+     */
+    public static synchronized OkHttpClient get() {
+        if (client == null) {
+            client = buildClient();
+        }
+
+        return client;
+    }
+
+    /**
+     * Give the shared client a disk cache, so that web api responses with an ETag are stored and revalidated with
+     * If-None-Match instead of being downloaded again. Only the first call does anything
+     * @param cacheDir the app's cache directory
+     * @return the cache, or null if it couldn't be opened
+     */
+    public static synchronized Cache installCache(File cacheDir) {
+        OkHttpClient client = get();
+        if (client.getCache() == null) {
+            try {
+                client.setCache(new Cache(new File(cacheDir, CACHE_DIRECTORY), CACHE_SIZE));
+            } catch (IOException e) {
+                // requests still work without the cache, they just can't be revalidated
+                Log.e(TAG, "error opening http cache", e);
+            }
+        }
+
+        return client.getCache();
+    }
+
+    /**
+     * Get the meter that counts the bytes received by the shared client for each endpoint
+     */
+    public static TrafficMeter getTrafficMeter() {
+        return trafficMeter;
+    }
+
+    /**
+     * Build the client. It uses the default connection pool, so that any other OkHttp client in the process, like the
+     * one Picasso creates, shares the same connections
+     */
+    protected static OkHttpClient buildClient() {
+        OkHttpClient client = new OkHttpClient();
+        client.setConnectionPool(ConnectionPool.getDefault());
+        client.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.SPDY_3, Protocol.HTTP_1_1));
+        client.setConnectTimeout(CONNECT_TIMEOUT, TimeUnit.SECONDS);
+        client.setReadTimeout(READ_TIMEOUT, TimeUnit.SECONDS);
+        client.interceptors().add(new RequestShaper());
+        client.networkInterceptors().add(trafficMeter);
+        client.networkInterceptors().add(new RevalidationInterceptor());
+        return client;
+    }
+
+    private SharedHttpClient() {
+
+    }
+
+}
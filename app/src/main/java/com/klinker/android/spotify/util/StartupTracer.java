@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.util;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Records how long each phase of a cold start takes: creating the main activity, waiting on the auth token, syncing
+ * the playlists page by page, building the rows and binding the first card image. Every span is also an
+ * android.os.Trace section, so it shows up in systrace, and is kept in memory with nanosecond times from when the
+ * process started. Once the launch is finished the spans are written to a timeline file, one per launch, so that
+ * logs pulled from a box can show which phase got slower. Nothing is recorded after that, so the rest of the session
+ * only pays for the trace sections
+ */
+public class StartupTracer {
+
+    private static final String TAG = "StartupTracer";
+
+    public static final String TRACE_DIRECTORY = "startup_traces";
+    public static final String FILE_PREFIX = "startup_";
+    public static final String FILE_EXTENSION = ".tsv";
+
+    /**
+     * Bump this whenever the columns in the timeline change
+     */
+    protected static final int VERSION = 1;
+
+    /**
+     * Number of launches to keep timelines for, older ones are deleted
+     */
+    protected static final int MAX_TRACES = 5;
+
+    /**
+     * Big libraries make thousands of page requests, so stop holding on to spans after this many
+     */
+    protected static final int MAX_SPANS = 5000;
+
+    /**
+     * Longest name that Trace.beginSection accepts
+     */
+    private static final int MAX_SECTION_NAME = 127;
+
+    private static volatile StartupTracer startupTracer;
+
+    /**
+     * Get a singleton tracer, shared between all classes. The first call sets the start of the timeline, so this
+     * should be called as early as possible when the process starts
+     */
+    public static synchronized StartupTracer get() {
+        if (startupTracer == null) {
+            startupTracer = new StartupTracer();
+        }
+
+        return startupTracer;
+    }
+
+    public static void remove() {
+        startupTracer = null;
+    }
+
+    private final long origin;
+    private final long wallClock;
+    private final List<Span> spans = new ArrayList<Span>();
+    private final HashSet<String> marks = new HashSet<String>();
+    private volatile boolean recording = true;
+    private int droppedSpans;
+
+    protected StartupTracer() {
+        this.origin = getNanoTime();
+        this.wallClock = System.currentTimeMillis();
+    }
+
+    /**
+     * Start a span on the current thread. Spans have to be ended on the thread that started them, in the reverse
+     * order that they were started, since the trace sections nest
+     * @param name the phase, like "load_playlists" or "tracks_page playlist@100"
+     */
+    public Span begin(String name) {
+        beginSection(name);
+        return new Span(name, Thread.currentThread().getName(), getNanoTime());
+    }
+
+    /**
+     * Record a point in time, like the first card image showing, only the first mark with the name is kept
+     */
+    public void markOnce(String name) {
+        if (!recording) {
+            return;
+        }
+
+        synchronized (this) {
+            if (!marks.add(name)) {
+                return;
+            }
+        }
+
+        long now = getNanoTime();
+        record(new Span(name, Thread.currentThread().getName(), now), now);
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    private synchronized void record(Span span, long end) {
+        if (!recording) {
+            return;
+        }
+
+        if (spans.size() >= MAX_SPANS) {
+            droppedSpans++;
+            return;
+        }
+
+        span.end = end;
+        spans.add(span);
+    }
+
+    /**
+     * Stop recording and write the timeline for this launch on a background thread. Only the first call does anything
+     * @param context used to find the files directory
+     */
+    public void finish(Context context) {
+        final File directory = new File(context.getFilesDir(), TRACE_DIRECTORY);
+        final List<Span> timeline = stopRecording();
+        if (timeline == null) {
+            return;
+        }
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write(directory, timeline);
+            }
+        }).start();
+    }
+
+    /**
+     * Stop recording
+     * @return the recorded spans in the order they started, or null if recording had already stopped
+     */
+    protected synchronized List<Span> stopRecording() {
+        if (!recording) {
+            return null;
+        }
+
+        recording = false;
+        Collections.sort(spans, new Comparator<Span>() {
+            @Override
+            public int compare(Span first, Span second) {
+                return first.start < second.start ? -1 : first.start == second.start ? 0 : 1;
+            }
+        });
+
+        if (droppedSpans > 0) {
+            Log.w(TAG, "dropped " + droppedSpans + " spans past the limit of " + MAX_SPANS);
+        }
+
+        return new ArrayList<Span>(spans);
+    }
+
+    /**
+     * Write the timeline as tab separated lines of name, thread, start and duration, both in nanoseconds from when
+     * the process started. The first line holds the version and the wall clock time that the process started
+     * @return the file that was written, or null if it couldn't be
+     */
+    protected File write(File directory, List<Span> timeline) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "couldn't create " + directory);
+            return null;
+        }
+
+        File file = new File(directory, FILE_PREFIX + wallClock + FILE_EXTENSION);
+        BufferedWriter writer = null;
+
+        try {
+            writer = new BufferedWriter(new FileWriter(file));
+            writer.write("# startup timeline v" + VERSION + " started=" + wallClock + " sdk=" + Build.VERSION.SDK_INT +
+                    " device=" + Build.MODEL + "\n");
+
+            for (Span span : timeline) {
+                writer.write(span.name + "\t" + span.thread + "\t" + (span.start - origin) + "\t" +
+                        (span.end - span.start) + "\n");
+            }
+
+            writer.close();
+            writer = null;
+
+            Log.v(TAG, "wrote " + timeline.size() + " spans to " + file);
+            deleteOldTraces(directory);
+            return file;
+        } catch (IOException e) {
+            Log.e(TAG, "error writing startup timeline", e);
+            file.delete();
+            return null;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // the write already failed, nothing else to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Only keep the newest timelines. The files are named by start time, so sorting by name puts them in order
+     */
+    private void deleteOldTraces(File directory) {
+        String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+
+        List<String> traces = new ArrayList<String>();
+        for (String name : names) {
+            if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_EXTENSION)) {
+                traces.add(name);
+            }
+        }
+
+        Collections.sort(traces, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                // the numbers in the names aren't padded, so compare the lengths before the characters
+                return first.length() != second.length() ? first.length() - second.length() :
+                        first.compareTo(second);
+            }
+        });
+
+        for (int i = 0; i < traces.size() - MAX_TRACES; i++) {
+            new File(directory, traces.get(i)).delete();
+        }
+    }
+
+    protected void beginSection(String name) {
+        Trace.beginSection(name.length() > MAX_SECTION_NAME ? name.substring(0, MAX_SECTION_NAME) : name);
+    }
+
+    protected void endSection() {
+        Trace.endSection();
+    }
+
+    protected long getNanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * A single phase of the launch. End it with end(), in a finally block so that the trace sections stay balanced
+     */
+    public class Span {
+
+        private final String name;
+        private final String thread;
+        private final long start;
+        private long end;
+
+        private Span(String name, String thread, long start) {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+        }
+
+        public void end() {
+            endSection();
+            record(this, getNanoTime());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDuration() {
+            return end - start;
+        }
+    }
+
+}
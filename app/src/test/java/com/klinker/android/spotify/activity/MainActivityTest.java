@@ -16,20 +16,15 @@
 
 package com.klinker.android.spotify.activity;
 
-import android.app.Activity;
-import android.app.ProgressDialog;
 import android.content.Intent;
 import com.klinker.android.spotify.R;
 import com.klinker.android.spotify.data.SpotifyHelper;
 import org.junit.Test;
 import org.mockito.Mock;
-import org.robolectric.Robolectric;
 
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
-import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 public class MainActivityTest extends AbstractActivityHelper {
@@ -37,9 +32,6 @@ public class MainActivityTest extends AbstractActivityHelper {
     @Mock
     private SpotifyHelper spotifyHelper;
 
-    @Mock
-    private ProgressDialog progressDialog;
-
     @Test
     public void test_onCreate_noAuth() {
         doReturn(null).when(account).getAuthToken();
@@ -56,7 +48,6 @@ public class MainActivityTest extends AbstractActivityHelper {
         MainActivity activity = (MainActivity) getActivity();
         doReturn(spotifyHelper).when(activity).getSpotifyHelper();
         doReturn(true).when(spotifyHelper).isAuthTokenValid();
-        doReturn(progressDialog).when(activity).initProgressDialog(activity);
 
         activity.onCreate(null);
 
@@ -69,27 +60,12 @@ public class MainActivityTest extends AbstractActivityHelper {
         MainActivity activity = (MainActivity) getActivity();
         doReturn(spotifyHelper).when(activity).getSpotifyHelper();
         doReturn(false).when(spotifyHelper).isAuthTokenValid();
-        doReturn(progressDialog).when(activity).initProgressDialog(activity);
 
         activity.onCreate(null);
 
-        verify(activity).waitForAuthToken();
-    }
-
-    @Test
-    public void test_initProgressDialog() {
-        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
-        ProgressDialog dialog = ((MainActivity) getActivity()).initProgressDialog(activity);
-
-        assertNotNull(dialog);
-        assertTrue(dialog.isIndeterminate());
-    }
-
-    @Test
-    public void test_dismissProgressDialog() {
-        ((MainActivity) getActivity()).dismissProgressDialog(progressDialog);
-
-        verify(progressDialog, times(1)).dismiss();
+        // the stored rows show right away, the token is refreshed in the background
+        verify(activity).setContentView(R.layout.main);
+        verify(activity, never()).finish();
     }
 
     @Override
@@ -97,4 +73,4 @@ public class MainActivityTest extends AbstractActivityHelper {
         return new MainActivity();
     }
 
-}
\ No newline at end of file
+}
@@ -17,12 +17,12 @@
 package com.klinker.android.spotify.data;
 
 import com.klinker.android.spotify.AbstractSpotifyHelper;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpRequest;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.DefaultHttpClient;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,13 +43,7 @@ public class AccessTokenTest extends AbstractSpotifyHelper {
     private AccessToken accessToken;
 
     @Mock
-    private DefaultHttpClient client;
-
-    @Mock
-    private HttpResponse response;
-
-    @Mock
-    private HttpEntity entity;
+    private OkHttpClient client;
 
     @Mock
     private InputStream stream;
@@ -65,9 +59,7 @@ public class AccessTokenTest extends AbstractSpotifyHelper {
         accessToken = Mockito.spy(new AccessToken());
 
         doReturn(client).when(accessToken).getHttpClient();
-        doReturn(response).when(accessToken).executeRequest(any(HttpPost.class));
-        doReturn(entity).when(response).getEntity();
-        doReturn(stream).when(entity).getContent();
+        doReturn(stream).when(accessToken).executeRequest(any(Request.class));
         doReturn(streamReader).when(accessToken).getInputStreamReader(stream);
         doReturn(reader).when(accessToken).getBufferedReader(streamReader);
         doReturn(null).when(reader).readLine();
@@ -98,4 +90,39 @@ public class AccessTokenTest extends AbstractSpotifyHelper {
         assertEquals("test_refresh_token", invokeGetToken().getString("refresh_token"));
     }
 
+    @Test
+    public void test_getToken_error() throws Exception {
+        doReturn(null).when(accessToken).executeRequest(any(Request.class));
+
+        assertNull(invokeGetToken());
+    }
+
+    @Test
+    public void test_executeRequest() throws Exception {
+        AccessToken token = Mockito.spy(new AccessToken());
+        Request post = new Request.Builder().url("http://test_address").build();
+        doReturn(createResponse(post, 200, "{}")).when(token).executeClientRequest(post);
+
+        BufferedReader body = new BufferedReader(new InputStreamReader(token.executeRequest(post)));
+        assertEquals("{}", body.readLine());
+    }
+
+    @Test
+    public void test_executeRequest_error() throws Exception {
+        AccessToken token = Mockito.spy(new AccessToken());
+        Request post = new Request.Builder().url("http://test_address").build();
+        doReturn(createResponse(post, 400, "{\"error\":\"invalid_grant\"}")).when(token).executeClientRequest(post);
+
+        assertNull(token.executeRequest(post));
+    }
+
+    private Response createResponse(Request request, int code, String body) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .body(ResponseBody.create(MediaType.parse("application/json"), body))
+                .build();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import android.app.Activity;
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.ArtistSimple;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.PlaylistSimple;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.PlaylistTracksInformation;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.UserSimple;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.Robolectric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LibraryDatabaseTest extends AbstractSpotifyHelper {
+
+    private LibraryDatabase database;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        database = new LibraryDatabase(activity);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void test_emptyLibrary() {
+        assertFalse(database.hasLibrary());
+        assertEquals(0, database.getLibrary().size());
+        assertNull(database.getSnapshotId("playlist"));
+    }
+
+    @Test
+    public void test_savePlaylist() {
+        database.savePlaylist(createPlaylist("1", "first"), "snapshot", 0, createTracks(3));
+
+        assertTrue(database.hasLibrary());
+        assertEquals("snapshot", database.getSnapshotId("1"));
+
+        List<Song> songs = database.getLibrary().get("first");
+        assertEquals(3, songs.size());
+        assertEquals("uri0", songs.get(0).getId());
+        assertEquals("track0", songs.get(0).getTitle());
+        assertEquals("album0", songs.get(0).getAlbum());
+        assertEquals("www.google.com/0", songs.get(0).getCardImageUrl());
+        assertEquals("www.google.com/0", songs.get(0).getBackgroundImageUrl());
+        assertEquals("artist0", songs.get(0).getArtist());
+        assertEquals("artist", songs.get(0).getType());
+        assertEquals("uri2", songs.get(2).getId());
+    }
+
+    @Test
+    public void test_savePlaylist_unchangedKeepsTracks() {
+        database.savePlaylist(createPlaylist("1", "first"), "snapshot", 0, createTracks(3));
+        database.savePlaylist(createPlaylist("1", "renamed"), "new snapshot", 0, null);
+
+        assertEquals("snapshot", database.getSnapshotId("1"));
+        assertEquals(3, database.getLibrary().get("renamed").size());
+    }
+
+    @Test
+    public void test_savePlaylist_skipsLocalTracks() {
+        List<PlaylistTrack> tracks = createTracks(2);
+        tracks.get(0).track.uri = "";
+        tracks.add(new PlaylistTrack());
+
+        database.savePlaylist(createPlaylist("1", "first"), "snapshot", 0, tracks);
+
+        List<Song> songs = database.getLibrary().get("first");
+        assertEquals(1, songs.size());
+        assertEquals("uri1", songs.get(0).getId());
+    }
+
+    @Test
+    public void test_getLibrary_order() {
+        database.savePlaylist(createPlaylist("2", "second"), "snapshot", 1, createTracks(1));
+        database.savePlaylist(createPlaylist("1", "first"), "snapshot", 0, createTracks(2));
+        database.savePlaylist(createPlaylist("3", "empty"), "snapshot", 2, new ArrayList<PlaylistTrack>());
+
+        LinkedHashMap<String, List<Song>> library = database.getLibrary();
+
+        assertEquals(Arrays.asList("first", "second", "empty"), new ArrayList<String>(library.keySet()));
+        assertEquals(0, library.get("empty").size());
+    }
+
+    @Test
+    public void test_getPlaylistSongs() {
+        database.savePlaylist(createPlaylist("1", "first"), "snapshot", 0, createTracks(2));
+        database.savePlaylist(createPlaylist("2", "second"), "snapshot", 1, createTracks(3));
+
+        List<Song> songs = database.getPlaylistSongs("2");
+
+        assertEquals(3, songs.size());
+        assertEquals("uri0", songs.get(0).getId());
+        assertEquals("uri2", songs.get(2).getId());
+        assertEquals(0, database.getPlaylistSongs("missing").size());
+    }
+
+    @Test
+    public void test_getAllSongs() {
+        database.savePlaylist(createPlaylist("2", "Favorites"), "snapshot", 1, createTracks(3));
+        database.savePlaylist(createPlaylist("1", "Favorites"), "snapshot", 0, createTracks(2));
+        database.savePlaylist(createPlaylist("3", "empty"), "snapshot", 2, new ArrayList<PlaylistTrack>());
+
+        // playlists with the same name are both read
+        List<Song> songs = database.getAllSongs();
+
+        assertEquals(5, songs.size());
+        assertEquals("uri1", songs.get(1).getId());
+        assertEquals("uri0", songs.get(2).getId());
+        assertEquals("uri2", songs.get(4).getId());
+        assertEquals("www.google.com/2", songs.get(4).getCardImageUrl());
+    }
+
+    @Test
+    public void test_getLibrary_limitsSongs() {
+        database.savePlaylist(createPlaylist("1", "first"), "snapshot", 0, createTracks(5));
+        database.savePlaylist(createPlaylist("2", "second"), "snapshot", 1, createTracks(1));
+
+        LinkedHashMap<String, List<Song>> library = database.getLibrary(2);
+
+        assertEquals(2, library.get("first").size());
+        assertEquals(1, library.get("second").size());
+        assertEquals(2, database.getPlaylistSongs("1", 2, 2).size());
+        assertEquals("uri4", database.getPlaylistSongs("1", 4, 2).get(0).getId());
+    }
+
+    @Test
+    public void test_appendTracks() {
+        PlaylistSimple playlist = createPlaylist("1", "first");
+        playlist.tracks.total = 5;
+        database.savePlaylist(playlist, "snapshot", 0, createTracks(2));
+
+        assertEquals(2, database.getLoadedCount("1"));
+        assertTrue(database.appendTracks("1", 2, createTracks(3)));
+        assertFalse(database.appendTracks("1", 2, createTracks(3)));
+
+        List<Song> songs = database.getPlaylistSongs("1");
+        assertEquals(5, database.getLoadedCount("1"));
+        assertEquals(5, songs.size());
+        assertEquals("uri1", songs.get(1).getId());
+        assertEquals("uri0", songs.get(2).getId());
+    }
+
+    @Test
+    public void test_getPlaylist() {
+        PlaylistSimple playlist = createPlaylist("1", "first");
+        playlist.tracks.total = 5;
+        database.savePlaylist(playlist, "snapshot", 0, createTracks(2));
+
+        LibraryPlaylist stored = database.getPlaylist("1");
+
+        assertEquals("first", stored.name);
+        assertEquals("owner", stored.owner.id);
+        assertEquals("snapshot", stored.snapshot_id);
+        assertEquals(5, stored.tracks.total);
+        assertNull(database.getPlaylist("missing"));
+    }
+
+    @Test
+    public void test_getPlaylists() {
+        database.savePlaylist(createPlaylist("2", "second"), "snapshot2", 1, createTracks(2));
+        database.savePlaylist(createPlaylist("1", "first"), "snapshot1", 0, createTracks(2));
+
+        List<LibraryPlaylist> playlists = database.getPlaylists();
+
+        assertEquals(2, playlists.size());
+        assertEquals("1", playlists.get(0).id);
+        assertEquals("first", playlists.get(0).name);
+        assertEquals("snapshot1", playlists.get(0).snapshot_id);
+        assertEquals("2", playlists.get(1).id);
+    }
+
+    @Test
+    public void test_retainPlaylists() {
+        database.savePlaylist(createPlaylist("1", "first"), "snapshot", 0, createTracks(2));
+        database.savePlaylist(createPlaylist("2", "second"), "snapshot", 1, createTracks(2));
+
+        database.retainPlaylists(Arrays.asList("2"));
+
+        assertNull(database.getSnapshotId("1"));
+        assertEquals(1, database.getLibrary().size());
+        assertEquals(2, database.getLibrary().get("second").size());
+    }
+
+    @Test
+    public void test_retainPlaylists_moreThanArgumentLimit() {
+        database.savePlaylist(createPlaylist("removed", "removed"), "snapshot", 0, createTracks(1));
+        database.savePlaylist(createPlaylist("kept", "kept"), "snapshot", 1, createTracks(1));
+
+        // sqlite only allows 999 arguments in a statement by default
+        List<String> playlistIds = new ArrayList<String>();
+        for (int i = 0; i < 2000; i++) {
+            playlistIds.add("playlist" + i);
+        }
+
+        playlistIds.add("kept");
+        database.retainPlaylists(playlistIds);
+
+        assertNull(database.getSnapshotId("removed"));
+        assertEquals("snapshot", database.getSnapshotId("kept"));
+        assertEquals(1, database.getLibrary().size());
+
+        // the retained ids don't carry over to the next sync
+        database.retainPlaylists(new ArrayList<String>());
+        assertEquals(0, database.getLibrary().size());
+    }
+
+    private PlaylistSimple createPlaylist(String id, String name) {
+        PlaylistSimple playlist = new PlaylistSimple();
+        playlist.id = id;
+        playlist.name = name;
+        playlist.owner = new UserSimple();
+        playlist.owner.id = "owner";
+        playlist.tracks = new PlaylistTracksInformation();
+        return playlist;
+    }
+
+    private List<PlaylistTrack> createTracks(int count) {
+        List<PlaylistTrack> tracks = new ArrayList<PlaylistTrack>();
+
+        for (int i = 0; i < count; i++) {
+            Track track = new Track();
+            track.uri = "uri" + i;
+            track.name = "track" + i;
+
+            track.album = new AlbumSimple();
+            track.album.id = "album" + i;
+            track.album.name = "album" + i;
+
+            Image image = new Image();
+            image.url = "www.google.com/" + i;
+            track.album.images = new ArrayList<Image>();
+            track.album.images.add(image);
+
+            ArtistSimple artist = new ArtistSimple();
+            artist.id = "artist" + i;
+            artist.name = "artist" + i;
+            artist.type = "artist";
+            track.artists = new ArrayList<ArtistSimple>();
+            track.artists.add(artist);
+
+            PlaylistTrack playlistTrack = new PlaylistTrack();
+            playlistTrack.track = track;
+            tracks.add(playlistTrack);
+        }
+
+        return tracks;
+    }
+
+}
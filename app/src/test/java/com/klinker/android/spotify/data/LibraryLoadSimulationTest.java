@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import android.app.Activity;
+import android.util.Log;
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.klinker.android.spotify.R;
+import com.klinker.android.spotify.loader.OnPlaylistPageLoaded;
+import com.klinker.android.spotify.loader.SpotifyOAuthTokenRefresher;
+import com.klinker.android.spotify.loader.TokenRenewalScheduler;
+import com.klinker.android.spotify.simulation.FakeSpotifyWebApi;
+import com.klinker.android.spotify.simulation.LibraryShape;
+import com.klinker.android.spotify.simulation.SimulationReport;
+import kaaes.spotify.webapi.android.models.PlaylistSimple;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.robolectric.Robolectric;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * Runs the whole library load against a local fake of the web api: refreshing the token, syncing the playlists and
+ * their first pages, then paging through the rest of every playlist. It is skipped in normal test runs, run it with
+ * -Dsimulation.enabled=true, and add -Dsimulation.playlists=500 -Dsimulation.tracksPerPlaylist=200 and friends (see
+ * LibraryShape) to profile bigger libraries. Reports are logged and added to simulation.reportFile
+ */
+public class LibraryLoadSimulationTest extends AbstractSpotifyHelper {
+
+    private static final String TAG = "LibraryLoadSimulation";
+
+    private LibraryShape shape;
+    private FakeSpotifyWebApi api;
+    private SpotifyHelper helper;
+    private LibraryDatabase database;
+
+    @Mock
+    private TokenRenewalScheduler renewalScheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(LibraryShape.isEnabled());
+
+        shape = LibraryShape.fromSystemProperties();
+        api = new FakeSpotifyWebApi(shape);
+        api.start();
+
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        Settings settings = Settings.get(activity);
+        settings.setValue(activity.getString(R.string.pref_spotify_user_id_key), FakeSpotifyWebApi.USER_ID);
+        settings.setValue(activity.getString(R.string.pref_spotify_refresh_token_key), "simulated_refresh_token");
+        settings.setValue(activity.getString(R.string.pref_spotify_expiration_date_key), 0l);
+
+        helper = Mockito.spy(SpotifyHelper.get(activity));
+        helper.setSettings(settings);
+        helper.setLibraryService(helper.buildRestAdapter(api.getApiEndpoint()).create(LibraryService.class));
+        doReturn(renewalScheduler).when(helper).getTokenRenewalScheduler();
+        doReturn(new SpotifyOAuthTokenRefresher() {
+            @Override
+            public String getTokenUrl() {
+                return api.getTokenUrl();
+            }
+        }).when(helper).getTokenRefresher();
+
+        database = new LibraryDatabase(activity);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (database != null) {
+            database.close();
+        }
+
+        if (api != null) {
+            api.shutdown();
+        }
+    }
+
+    @Test
+    public void test_coldSync() throws Exception {
+        SimulationReport report = simulate();
+
+        List<LibraryPlaylist> playlists = database.getPlaylists();
+        assertEquals(shape.playlists, playlists.size());
+        for (LibraryPlaylist playlist : playlists) {
+            int expected = shape.loadFullPlaylists ? shape.tracksPerPlaylist :
+                    Math.min(shape.tracksPerPlaylist, SpotifyHelper.TRACKS_PER_PAGE);
+            assertEquals(expected, database.getLoadedCount(playlist.id));
+        }
+
+        assertEquals(1, api.getTokenRequests());
+        assertTrue(report.getTimeToFirstRow() >= 0);
+        assertTrue(report.getTimeToFirstRow() <= report.getSyncMillis());
+    }
+
+    @Test
+    public void test_warmResync() throws Exception {
+        simulate();
+        int trackRequests = api.getTrackRequests();
+
+        shape.loadFullPlaylists = false;
+        SimulationReport report = simulate();
+
+        // nothing changed on the server, so every row comes out of the database
+        assertEquals(trackRequests, api.getTrackRequests());
+        assertEquals(shape.playlists, database.getPlaylists().size());
+        assertTrue(report.getTimeToFirstRow() >= 0);
+    }
+
+    /**
+     * Load the library the same way the app does on launch and report how it went
+     */
+    private SimulationReport simulate() throws Exception {
+        final SimulationReport report = new SimulationReport(shape);
+
+        helper.refreshToken();
+        helper.loadPlaylists(database, new OnPlaylistPageLoaded() {
+            @Override
+            public void onPlaylistPageLoaded(PlaylistSimple playlist, int position, int offset, List<Song> songs) {
+                if (songs.size() > 0) {
+                    report.onFirstRow();
+                }
+            }
+
+            @Override
+            public void onPlaylistLoaded(PlaylistSimple playlist, int currentNumber, int totalNumber) {
+            }
+        });
+        report.onSyncFinished();
+
+        if (shape.loadFullPlaylists) {
+            for (LibraryPlaylist playlist : database.getPlaylists()) {
+                int offset = SpotifyHelper.TRACKS_PER_PAGE;
+                List<Song> songs;
+                do {
+                    songs = helper.loadMoreSongs(database, playlist.id, offset);
+                    offset += songs.size();
+                } while (songs.size() > 0);
+            }
+
+            report.onFullLoadFinished();
+        }
+
+        report.finish(api);
+        Log.i(TAG, report.toString());
+        report.appendTo(new File(shape.reportFile));
+        return report;
+    }
+
+}
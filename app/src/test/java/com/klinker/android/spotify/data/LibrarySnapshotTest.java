@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import kaaes.spotify.webapi.android.models.PlaylistTracksInformation;
+import kaaes.spotify.webapi.android.models.UserSimple;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LibrarySnapshotTest extends AbstractSpotifyHelper {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private LibrarySnapshot snapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(folder.getRoot(), LibrarySnapshot.FILE_NAME);
+        snapshot = new LibrarySnapshot(file);
+    }
+
+    @Test
+    public void test_read_missing() {
+        assertNull(snapshot.read());
+    }
+
+    @Test
+    public void test_writeAndRead() {
+        SongCatalog catalog = SongCatalog.get();
+        List<AlbumImage> images = new ArrayList<AlbumImage>();
+        images.add(new AlbumImage("www.google.com/album", 640, 640));
+        Album album = catalog.getAlbum("snapshot_album", "album", images);
+        Artist artist = catalog.getArtist("snapshot_artist", "artist", "artist");
+
+        List<Song> songs = new ArrayList<Song>();
+        songs.add(catalog.getSong("snapshot:1", "first", album, artist));
+        songs.add(catalog.getSong("snapshot:2", null, album, null));
+
+        List<LibrarySnapshot.Row> rows = new ArrayList<LibrarySnapshot.Row>();
+        rows.add(new LibrarySnapshot.Row(createPlaylist("first", 30), songs));
+        rows.add(new LibrarySnapshot.Row(createPlaylist("empty", 0), new ArrayList<Song>()));
+
+        assertTrue(snapshot.write(rows));
+        List<LibrarySnapshot.Row> read = snapshot.read();
+
+        assertEquals(2, read.size());
+        assertEquals("first", read.get(0).getPlaylist().id);
+        assertEquals("first name", read.get(0).getPlaylist().name);
+        assertEquals("owner", read.get(0).getPlaylist().owner.id);
+        assertEquals("first snapshot", read.get(0).getPlaylist().snapshot_id);
+        assertEquals(30, read.get(0).getPlaylist().tracks.total);
+        assertEquals(0, read.get(1).getSongs().size());
+
+        Song song = read.get(0).getSongs().get(0);
+        assertSame(songs.get(0), song);
+        assertSame(album, song.getAlbumInfo());
+        assertSame(artist, song.getArtistInfo());
+        assertEquals("www.google.com/album", song.getImageUrl(640, 640));
+        assertNull(read.get(0).getSongs().get(1).getArtistInfo());
+        assertNull(read.get(0).getSongs().get(1).getTitle());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void test_read_otherVersion() throws Exception {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(LibrarySnapshot.VERSION + 1);
+        out.close();
+
+        assertNull(snapshot.read());
+    }
+
+    @Test
+    public void test_read_truncated() throws Exception {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(LibrarySnapshot.VERSION);
+        out.writeInt(3);
+        out.close();
+
+        assertNull(snapshot.read());
+    }
+
+    private LibraryPlaylist createPlaylist(String id, int total) {
+        LibraryPlaylist playlist = new LibraryPlaylist();
+        playlist.id = id;
+        playlist.name = id + " name";
+        playlist.snapshot_id = id + " snapshot";
+        playlist.owner = new UserSimple();
+        playlist.owner.id = "owner";
+        playlist.tracks = new PlaylistTracksInformation();
+        playlist.tracks.total = total;
+        return playlist;
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlayQueueRepositoryTest extends AbstractSpotifyHelper {
+
+    private PlayQueueRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = new PlayQueueRepository();
+    }
+
+    @Test
+    public void test_putQueue() {
+        PlayQueue queue = createQueue();
+
+        long id = repository.putQueue(queue);
+
+        assertSame(queue, repository.getQueue(id));
+        assertNotEquals(id, repository.putQueue(createQueue()));
+    }
+
+    @Test
+    public void test_getQueue_missing() {
+        assertNull(repository.getQueue(-1));
+    }
+
+    @Test
+    public void test_putQueue_dropsOldQueues() {
+        long first = repository.putQueue(createQueue());
+        long second = repository.putQueue(createQueue());
+
+        // using the first queue again keeps it from being dropped
+        repository.getQueue(first);
+
+        for (int i = 0; i < 3; i++) {
+            repository.putQueue(createQueue());
+        }
+
+        assertNotNull(repository.getQueue(first));
+        assertNull(repository.getQueue(second));
+    }
+
+    private PlayQueue createQueue() {
+        List<Song> songs = new ArrayList<Song>();
+        songs.add(new Song());
+        return new PlayQueue(songs, 0);
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PlayQueueTest extends AbstractSpotifyHelper {
+
+    @Test
+    public void test_startsAtSelectedSong() {
+        PlayQueue queue = createQueue(2, "a", "b", "c", "d");
+
+        assertEquals(0, queue.getCursor());
+        assertEquals("c", queue.getCurrentSong().getId());
+        assertEquals(Arrays.asList("c", "d", "a", "b"), queue.getUris());
+    }
+
+    @Test
+    public void test_moveTo() {
+        PlayQueue queue = createQueue(0, "a", "b", "c");
+
+        assertEquals(0, queue.moveTo("a"));
+        assertEquals(1, queue.moveTo("b"));
+        assertEquals(2, queue.moveTo("c"));
+        assertEquals(1, queue.moveTo("b"));
+        assertEquals(-1, queue.moveTo("missing"));
+        assertEquals(1, queue.getCursor());
+    }
+
+    @Test
+    public void test_moveTo_duplicates() {
+        PlayQueue queue = createQueue(0, "a", "b", "a", "a", "c");
+
+        assertEquals(0, queue.moveTo("a"));
+        assertEquals(1, queue.moveTo("b"));
+        assertEquals(2, queue.moveTo("a"));
+        assertEquals(3, queue.moveTo("a"));
+        assertEquals(4, queue.moveTo("c"));
+
+        // skipping back
+        assertEquals(3, queue.moveTo("a"));
+        assertEquals(2, queue.moveTo("a"));
+    }
+
+    @Test
+    public void test_moveTo_jumpWrapsAround() {
+        PlayQueue queue = createQueue(0, "a", "b", "c", "d", "a");
+
+        queue.moveTo("a");
+        queue.moveTo("b");
+        queue.moveTo("c");
+
+        // shuffled to a song that is not next to the cursor, take the next one after it
+        assertEquals(4, queue.moveTo("a"));
+        assertEquals(1, queue.moveTo("b"));
+    }
+
+    @Test
+    public void test_getUpcoming() {
+        PlayQueue queue = createQueue(0, "a", "b", "c", "d");
+        queue.moveTo("a");
+        queue.moveTo("b");
+        queue.moveTo("c");
+
+        assertEquals(1, queue.getUpcoming(2, false).size());
+        assertEquals("d", queue.getUpcoming(2, false).get(0).getId());
+
+        List<Song> wrapped = queue.getUpcoming(2, true);
+        assertEquals("d", wrapped.get(0).getId());
+        assertEquals("a", wrapped.get(1).getId());
+
+        assertEquals(3, queue.getUpcoming(10, true).size());
+    }
+
+    @Test
+    public void test_setShuffled_keepsPlayedSongs() {
+        PlayQueue queue = createQueue(0, "a", "b", "c", "d", "e", "f");
+        queue.moveTo("a");
+        queue.moveTo("b");
+
+        queue.setShuffled(true, new Random(1));
+
+        List<String> uris = queue.getUris();
+        assertEquals("a", uris.get(0));
+        assertEquals("b", uris.get(1));
+        assertEquals(1, queue.getCursor());
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c", "d", "e", "f")), new HashSet<String>(uris));
+
+        // the player reports the current song again once it is restarted
+        assertEquals(1, queue.moveTo("b"));
+        assertEquals(2, queue.moveTo(uris.get(2)));
+    }
+
+    @Test
+    public void test_setShuffled_off() {
+        PlayQueue queue = createQueue(0, "a", "b", "c", "d", "e");
+        queue.setShuffled(true, new Random(1));
+        queue.moveTo("a");
+        queue.moveTo(queue.getSong(1).getId());
+        String current = queue.getCurrentSong().getId();
+
+        queue.setShuffled(false, null);
+
+        // the rest of the songs go back to playlist order after the current one
+        List<String> expected = new ArrayList<String>();
+        List<String> playlist = Arrays.asList("a", "b", "c", "d", "e");
+        int index = playlist.indexOf(current);
+        for (int i = 1; i < playlist.size(); i++) {
+            String uri = playlist.get((index + i) % playlist.size());
+            if (!uri.equals("a")) {
+                expected.add(uri);
+            }
+        }
+
+        assertEquals(expected, queue.getUris().subList(2, 5));
+    }
+
+    @Test
+    public void test_addSongs() {
+        PlayQueue queue = createQueue(2, "a", "b", "c", "d");
+        final List<PlayQueue> added = new ArrayList<PlayQueue>();
+        queue.setOnSongsAddedListener(new PlayQueue.OnSongsAddedListener() {
+            @Override
+            public void onSongsAdded(PlayQueue queue) {
+                added.add(queue);
+            }
+        });
+
+        assertEquals(0, queue.moveTo("c"));
+        queue.addSongs(createSongs("e", "f"));
+
+        // the rest of the playlist goes before the queue wraps back around to the start
+        assertEquals(Arrays.asList("c", "d", "e", "f", "a", "b"), queue.getUris());
+        assertEquals(1, added.size());
+        assertSame(queue, added.get(0));
+        assertEquals(1, queue.moveTo("d"));
+        assertEquals(2, queue.moveTo("e"));
+    }
+
+    @Test
+    public void test_addSongs_afterWrapping() {
+        PlayQueue queue = createQueue(2, "a", "b", "c", "d");
+        queue.moveTo("c");
+        queue.moveTo("d");
+        queue.moveTo("a");
+
+        queue.addSongs(createSongs("e"));
+
+        // the end of the playlist already played, so the new songs come up next
+        assertEquals(Arrays.asList("c", "d", "a", "e", "b"), queue.getUris());
+        assertEquals(2, queue.getCursor());
+        assertEquals(3, queue.moveTo("e"));
+    }
+
+    @Test
+    public void test_addSongs_copiesList() {
+        List<Song> songs = createSongs("a", "b");
+        PlayQueue queue = new PlayQueue(songs, 0);
+
+        songs.clear();
+        queue.addSongs(new ArrayList<Song>());
+
+        assertEquals(Arrays.asList("a", "b"), queue.getUris());
+    }
+
+    private PlayQueue createQueue(int startIndex, String... ids) {
+        return new PlayQueue(createSongs(ids), startIndex);
+    }
+
+    private List<Song> createSongs(String... ids) {
+        List<Song> songs = new ArrayList<Song>();
+
+        for (String id : ids) {
+            Song song = new Song();
+            song.setId(id);
+            songs.add(song);
+        }
+
+        return songs;
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class SearchIndexTest extends AbstractSpotifyHelper {
+
+    private SongCatalog catalog;
+    private SearchIndex index;
+
+    @Before
+    public void setUp() {
+        catalog = new SongCatalog();
+        index = new SearchIndex(catalog);
+    }
+
+    @Test
+    public void test_tokenize() {
+        assertEquals(Arrays.asList("beyonce", "crazy", "in", "love"),
+                SearchIndex.tokenize("Beyonc\u00e9 - Crazy in Love"));
+        assertEquals(0, SearchIndex.tokenize(null).size());
+        assertEquals(0, SearchIndex.tokenize(" - ").size());
+    }
+
+    @Test
+    public void test_search_prefix() {
+        Song first = addSong("uri1", "Crazy in Love", "Dangerously in Love", "Beyonc\u00e9");
+        addSong("uri2", "Halo", "I Am... Sasha Fierce", "Beyonc\u00e9");
+        Song third = addSong("uri3", "Crazy", "St. Elsewhere", "Gnarls Barkley");
+
+        assertEquals(Arrays.asList(first, third), index.search("cra"));
+        assertEquals(2, index.search("BEYON").size());
+        assertEquals(0, index.search("xyz").size());
+        assertEquals(0, index.search("").size());
+    }
+
+    @Test
+    public void test_search_everyWordMustMatch() {
+        Song first = addSong("uri1", "Crazy in Love", "Dangerously in Love", "Beyonc\u00e9");
+        addSong("uri2", "Crazy", "St. Elsewhere", "Gnarls Barkley");
+
+        assertEquals(Arrays.asList(first), index.search("crazy bey"));
+        assertEquals(Arrays.asList(first), index.search("dang lo"));
+        assertEquals(0, index.search("crazy halo").size());
+    }
+
+    @Test
+    public void test_search_maxResults() {
+        for (int i = 0; i < 10; i++) {
+            addSong("uri" + i, "Song " + i, "album", "artist");
+        }
+
+        assertEquals(3, index.search("song", 3).size());
+        assertEquals(10, index.search("artist").size());
+    }
+
+    @Test
+    public void test_add_skipsIndexedSongs() {
+        Song song = addSong("uri1", "Halo", "album", "artist");
+        index.add(song);
+        index.addAll(Arrays.asList(song, song));
+
+        assertEquals(1, index.size());
+        assertEquals(1, index.search("halo").size());
+    }
+
+    @Test
+    public void test_addLibrary() {
+        Song song = catalog.getSong("uri1", "Halo", null, null);
+        Song other = catalog.getSong("uri2", "Hallelujah", null, null);
+
+        LibraryDatabase database = mock(LibraryDatabase.class);
+        doReturn(Arrays.asList(song, other, song)).when(database).getAllSongs();
+
+        index.addLibrary(database);
+
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList(song, other), index.search("ha"));
+    }
+
+    @Test
+    public void test_search_largeLibrary() {
+        for (int i = 0; i < 50000; i++) {
+            addSong("uri" + i, "Track " + i, "Album " + (i / 10), "Artist " + (i / 100));
+        }
+
+        assertEquals(50000, index.size());
+        assertEquals(SearchIndex.MAX_RESULTS, index.search("t").size());
+        assertEquals(1, index.search("track 12345").size());
+        assertEquals("Track 12345", index.search("track 12345").get(0).getTitle());
+    }
+
+    private Song addSong(String uri, String title, String album, String artist) {
+        Song song = catalog.getSong(uri, title, catalog.getAlbum(album, album, null),
+                catalog.getArtist(artist, artist, artist));
+        index.add(song);
+        return song;
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.data;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.ArtistSimple;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SongCatalogTest extends AbstractSpotifyHelper {
+
+    private SongCatalog catalog;
+
+    @Before
+    public void setUp() {
+        catalog = new SongCatalog();
+    }
+
+    @Test
+    public void test_buildSong_sharesAlbumAndArtist() {
+        Song first = catalog.buildSong(createTrack("uri1", "album", "artist"));
+        Song second = catalog.buildSong(createTrack("uri2", "album", "artist"));
+
+        assertNotSame(first, second);
+        assertEquals("album", second.getAlbum());
+        assertEquals("www.google.com/album", second.getCardImageUrl());
+        assertEquals("www.google.com/album", second.getBackgroundImageUrl());
+        assertEquals("artist", second.getArtist());
+        assertEquals("artist", second.getType());
+        assertSame(catalog.getAlbum("album", null, null), catalog.getAlbum("album", "album", null));
+        assertSame(catalog.getArtist("artist", null, null), catalog.getArtist("artist", "artist", null));
+    }
+
+    @Test
+    public void test_buildSong_sameUriSharesSong() {
+        Song first = catalog.buildSong(createTrack("uri1", "album", "artist"));
+        Song second = catalog.buildSong(createTrack("uri1", "album", "artist"));
+
+        assertSame(first, second);
+        assertEquals(1, catalog.size());
+    }
+
+    @Test
+    public void test_getSong_byId() {
+        Song first = catalog.buildSong(createTrack("uri1", "album", "artist"));
+        Song second = catalog.buildSong(createTrack("uri2", "other album", "other artist"));
+
+        assertEquals(0, first.getCatalogId());
+        assertEquals(1, second.getCatalogId());
+        assertSame(second, catalog.getSong(1));
+        assertSame(first, catalog.getSong("uri1"));
+        assertNull(catalog.getSong(2));
+        assertNull(catalog.getSong("missing"));
+    }
+
+    @Test
+    public void test_getAlbum_updatesArtwork() {
+        Song song = catalog.buildSong(createTrack("uri1", "album", "artist"));
+        List<AlbumImage> images = new ArrayList<AlbumImage>();
+        images.add(new AlbumImage("www.google.com/new", 640, 640));
+        catalog.getAlbum("album", "album", images);
+
+        assertEquals("www.google.com/new", song.getCardImageUrl());
+    }
+
+    @Test
+    public void test_buildSong_keepsEveryImageSize() {
+        Track track = createTrack("uri1", "album", "artist");
+        track.album.images.clear();
+        track.album.images.add(createImage("www.google.com/640", 640));
+        track.album.images.add(createImage("www.google.com/300", 300));
+        track.album.images.add(createImage("www.google.com/64", 64));
+
+        Song song = catalog.buildSong(track);
+
+        assertEquals("www.google.com/640", song.getBackgroundImageUrl());
+        assertEquals("www.google.com/300", song.getImageUrl(250, 250));
+        assertEquals("www.google.com/64", song.getImageUrl(64, 64));
+        assertEquals("www.google.com/640", song.getImageUrl(1920, 1080));
+    }
+
+    @Test
+    public void test_buildSongs_skipsUnplayable() {
+        List<PlaylistTrack> tracks = new ArrayList<PlaylistTrack>();
+        tracks.add(createPlaylistTrack(createTrack("uri1", "album", "artist")));
+        tracks.add(createPlaylistTrack(createTrack("", "album", "artist")));
+        tracks.add(createPlaylistTrack(null));
+        tracks.add(null);
+
+        List<Song> songs = catalog.buildSongs(tracks);
+
+        assertEquals(1, songs.size());
+        assertEquals("uri1", songs.get(0).getId());
+    }
+
+    private Image createImage(String url, int size) {
+        Image image = new Image();
+        image.url = url;
+        image.width = size;
+        image.height = size;
+        return image;
+    }
+
+    private PlaylistTrack createPlaylistTrack(Track track) {
+        PlaylistTrack playlistTrack = new PlaylistTrack();
+        playlistTrack.track = track;
+        return playlistTrack;
+    }
+
+    private Track createTrack(String uri, String albumName, String artistName) {
+        Track track = new Track();
+        track.uri = uri;
+        track.name = "track " + uri;
+
+        track.album = new AlbumSimple();
+        track.album.id = albumName;
+        track.album.name = albumName;
+
+        Image image = new Image();
+        image.url = "www.google.com/" + albumName;
+        track.album.images = new ArrayList<Image>();
+        track.album.images.add(image);
+
+        ArtistSimple artist = new ArtistSimple();
+        artist.id = artistName;
+        artist.name = artistName;
+        artist.type = "artist";
+        track.artists = new ArrayList<ArtistSimple>();
+        track.artists.add(artist);
+
+        return track;
+    }
+
+}
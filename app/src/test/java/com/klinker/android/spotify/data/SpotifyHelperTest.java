@@ -19,24 +19,36 @@ package com.klinker.android.spotify.data;
 import android.app.Activity;
 import com.klinker.android.spotify.AbstractSpotifyHelper;
 import com.klinker.android.spotify.loader.SpotifyOAuthTokenRefresher;
-import kaaes.spotify.webapi.android.SpotifyApi;
+import com.klinker.android.spotify.loader.TokenRefreshCoordinator;
+import com.klinker.android.spotify.loader.TokenRenewalScheduler;
+import com.klinker.android.spotify.util.OnAuthTokenRefreshedListener;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.PlaylistTracksInformation;
+import kaaes.spotify.webapi.android.models.UserSimple;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.robolectric.Robolectric;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class SpotifyHelperTest extends AbstractSpotifyHelper {
 
     private SpotifyHelper helper;
 
-    @Mock
-    private Thread thread;
-
     @Mock
     private SpotifyOAuthTokenRefresher tokenRefresher;
 
@@ -49,6 +61,18 @@ public class SpotifyHelperTest extends AbstractSpotifyHelper {
     @Mock
     private SpotifyAccount account;
 
+    @Mock
+    private LibraryService libraryService;
+
+    @Mock
+    private LibraryDatabase database;
+
+    @Mock
+    private TokenRenewalScheduler renewalScheduler;
+
+    @Mock
+    private OnAuthTokenRefreshedListener tokenListener;
+
     @Before
     public void setUp() {
         Activity activity = Robolectric.buildActivity(Activity.class).create().get();
@@ -57,56 +81,79 @@ public class SpotifyHelperTest extends AbstractSpotifyHelper {
         settings.spotifyAccount = account;
         doReturn("test_refresh_token").when(account).getRefreshToken();
         doReturn("test_auth_token").when(account).getAuthToken();
+        doReturn(renewalScheduler).when(helper).getTokenRenewalScheduler();
     }
 
     @Test
     public void test_init() {
         assertNotNull(helper.getSettings());
-        assertNotNull(helper.getSpotifyApi());
+        assertNotNull(helper.getLibraryService());
     }
 
     @Test
     public void test_initAuthToken_noRefresh() {
-        SpotifyApi api = Mockito.spy(helper.getSpotifyApi());
-        helper.setSpotifyApi(api);
         doReturn(false).when(helper).needsTokenRefresh();
+        doReturn(3000000l).when(account).getExpirationDate();
 
         helper.initAuthToken();
 
-        verify(api).setAccessToken("test_auth_token");
+        verify(renewalScheduler).schedule(3000000l);
         assertTrue(helper.isAuthTokenValid());
     }
 
     @Test
     public void test_initAuthToken() {
-        SpotifyApi api = Mockito.spy(helper.getSpotifyApi());
-        helper.setSpotifyApi(api);
         doReturn(true).when(helper).needsTokenRefresh();
-        doReturn(thread).when(helper).getTokenRefresherThread();
+        doReturn(3000000l).when(account).getExpirationDate();
+
+        helper.initAuthToken();
 
+        verify(renewalScheduler).schedule(3000000l);
+        assertFalse(helper.isAuthTokenValid());
+    }
+
+    @Test
+    public void test_isAuthTokenValid_closeToExpiring() {
+        doReturn(false).when(helper).needsTokenRefresh();
         helper.initAuthToken();
+        assertTrue(helper.isAuthTokenValid());
 
-        verify(api).setAccessToken("test_auth_token");
-        verify(thread).start();
+        doReturn(true).when(helper).needsTokenRefresh();
         assertFalse(helper.isAuthTokenValid());
     }
 
     @Test
-    public void test_getTokenRefresherThread() {
-        Thread thread = helper.getTokenRefresherThread();
-        thread.start();
+    public void test_requestTokenRefresh() throws Exception {
+        doNothing().when(helper).refreshToken();
+        helper.addAuthTokenRefreshedListener(tokenListener);
+        helper.addAuthTokenRefreshedListener(tokenListener);
+        TokenRefreshCoordinator coordinator = helper.buildTokenRefreshCoordinator();
+
+        assertTrue(coordinator.refresh(null).get());
+        verify(helper).refreshToken();
+        verify(tokenListener).authTokenRefreshed();
+
+        helper.removeAuthTokenRefreshedListener(tokenListener);
+        assertTrue(coordinator.refresh(null).get());
+        verify(tokenListener).authTokenRefreshed();
+    }
+
+    @Test
+    public void test_awaitAuthToken_valid() throws Exception {
+        doReturn(true).when(helper).isAuthTokenValid();
 
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    Thread.sleep(100);
-                } catch (Exception e) {
-                }
+        assertTrue(helper.awaitAuthToken());
+        verify(helper, never()).requestTokenRefresh(null);
+    }
+
+    @Test
+    public void test_awaitAuthToken_refreshes() throws Exception {
+        doReturn(false).when(helper).isAuthTokenValid();
+        doNothing().when(helper).refreshToken();
+        doReturn(helper.buildTokenRefreshCoordinator().refresh(null)).when(helper).requestTokenRefresh(null);
 
-                verify(helper).refreshToken();
-            }
-        }).start();
+        assertTrue(helper.awaitAuthToken());
+        verify(helper).requestTokenRefresh(null);
     }
 
     @Test
@@ -115,11 +162,14 @@ public class SpotifyHelperTest extends AbstractSpotifyHelper {
         doReturn(refreshToken).when(tokenRefresher).useRefreshToken("test_refresh_token");
         doReturn("test_access_token").when(refreshToken).getAccessToken();
         doReturn(3600l).when(refreshToken).getExpiresIn();
+        doReturn(3600000l).when(settings).setExpirationTimeFromNow("spotify_expiration_date", 3600l);
+        doReturn(false).when(helper).needsTokenRefresh();
 
         helper.refreshToken();
 
         verify(settings).setValue("spotify_auth_token", "test_access_token");
         verify(settings).setExpirationTimeFromNow("spotify_expiration_date", 3600l);
+        verify(renewalScheduler).schedule(3600000l);
         assertTrue(helper.isAuthTokenValid());
     }
 
@@ -155,4 +205,79 @@ public class SpotifyHelperTest extends AbstractSpotifyHelper {
         assertFalse(helper.needsTokenRefresh());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void test_loadPlaylists_onlyChangedPlaylists() {
+        Pager<LibraryPlaylist> playlists = new Pager<LibraryPlaylist>();
+        playlists.items = new ArrayList<LibraryPlaylist>();
+        playlists.items.add(createPlaylist("unchanged", "snapshot"));
+        playlists.items.add(createPlaylist("changed", "new_snapshot"));
+
+        TrackPage tracks = new TrackPage();
+        tracks.items = new ArrayList<PlaylistTrack>();
+
+        helper.setLibraryService(libraryService);
+        doReturn(playlists).when(libraryService).getPlaylists(anyString(), anyMap());
+        doReturn(tracks).when(libraryService).getPlaylistTracks(anyString(), anyString(), anyMap());
+        doReturn("snapshot").when(database).getSnapshotId("unchanged");
+        doReturn("old_snapshot").when(database).getSnapshotId("changed");
+
+        helper.loadPlaylists(database, null);
+
+        verify(libraryService, never()).getPlaylistTracks(anyString(), eq("unchanged"), anyMap());
+        verify(libraryService).getPlaylistTracks(anyString(), eq("changed"), anyMap());
+        verify(database).savePlaylist(playlists.items.get(0), "snapshot", 0, null);
+        verify(database).savePlaylist(playlists.items.get(1), "new_snapshot", 1, tracks.items);
+    }
+
+    @Test
+    public void test_loadMoreSongs_fetchesMissingPage() throws Exception {
+        LibraryPlaylist playlist = createPlaylist("playlist", "snapshot");
+        playlist.tracks.total = 150;
+
+        TrackPage tracks = new TrackPage();
+        tracks.items = new ArrayList<PlaylistTrack>();
+        tracks.items.add(new PlaylistTrack());
+
+        List<Song> songs = new ArrayList<Song>();
+        songs.add(new Song());
+
+        helper.setLibraryService(libraryService);
+        doReturn(tracks).when(libraryService).getPlaylistTracks(anyString(), anyString(), anyMap());
+        doReturn(playlist).when(database).getPlaylist("playlist");
+        when(database.getLoadedCount("playlist")).thenReturn(100, 150);
+        when(database.getPlaylistSongs("playlist", 100, SpotifyHelper.TRACKS_PER_PAGE))
+                .thenReturn(new ArrayList<Song>(), songs);
+
+        assertEquals(songs, helper.loadMoreSongs(database, "playlist", 100));
+        verify(database).appendTracks("playlist", 100, tracks.items);
+        verify(libraryService).getPlaylistTracks(eq("owner"), eq("playlist"), anyMap());
+    }
+
+    @Test
+    public void test_loadMoreSongs_storedPage() throws Exception {
+        List<Song> songs = new ArrayList<Song>();
+        for (int i = 0; i < SpotifyHelper.TRACKS_PER_PAGE; i++) {
+            songs.add(new Song());
+        }
+
+        helper.setLibraryService(libraryService);
+        doReturn(createPlaylist("playlist", "snapshot")).when(database).getPlaylist("playlist");
+        doReturn(songs).when(database).getPlaylistSongs("playlist", 0, SpotifyHelper.TRACKS_PER_PAGE);
+
+        assertEquals(songs, helper.loadMoreSongs(database, "playlist", 0));
+        verify(libraryService, never()).getPlaylistTracks(anyString(), anyString(), anyMap());
+    }
+
+    private LibraryPlaylist createPlaylist(String id, String snapshotId) {
+        LibraryPlaylist playlist = new LibraryPlaylist();
+        playlist.id = id;
+        playlist.name = id;
+        playlist.snapshot_id = snapshotId;
+        playlist.owner = new UserSimple();
+        playlist.owner.id = "owner";
+        playlist.tracks = new PlaylistTracksInformation();
+        playlist.tracks.total = 1;
+        return playlist;
+    }
+
+}
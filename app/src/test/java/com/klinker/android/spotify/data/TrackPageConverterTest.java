@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.verify;
+
+public class TrackPageConverterTest extends AbstractSpotifyHelper {
+
+    private static final String PAGE = "{" +
+            "\"href\":\"https://api.spotify.com/v1/users/owner/playlists/id/tracks\"," +
+            "\"items\":[" +
+            "{\"added_at\":\"2015-01-01T00:00:00Z\",\"added_by\":null,\"is_local\":false,\"track\":{" +
+            "\"album\":{\"album_type\":\"album\",\"available_markets\":[\"US\",\"CA\",\"MX\"]," +
+            "\"external_urls\":{\"spotify\":\"url\"},\"id\":\"album0\",\"images\":[" +
+            "{\"height\":640,\"url\":\"large\",\"width\":640},{\"height\":null,\"url\":\"small\",\"width\":null}]," +
+            "\"name\":\"album name\",\"type\":\"album\"}," +
+            "\"artists\":[{\"external_urls\":{},\"id\":\"artist0\",\"name\":\"first\",\"type\":\"artist\"}," +
+            "{\"id\":\"artist1\",\"name\":\"second\",\"type\":\"artist\"}]," +
+            "\"available_markets\":[\"US\",\"CA\"],\"disc_number\":1,\"duration_ms\":1000,\"explicit\":false," +
+            "\"external_ids\":{\"isrc\":\"123\"},\"id\":\"track0\",\"name\":\"track name\",\"popularity\":50," +
+            "\"preview_url\":null,\"track_number\":1,\"type\":\"track\",\"uri\":\"spotify:track:0\"}}," +
+            "{\"added_at\":null,\"is_local\":true,\"track\":{\"album\":{\"id\":null,\"images\":[],\"name\":\"local\"}," +
+            "\"artists\":[],\"id\":null,\"name\":\"local file\",\"uri\":\"spotify:local:1\"}}," +
+            "{\"added_at\":null,\"track\":null}" +
+            "]," +
+            "\"limit\":100,\"next\":null,\"offset\":200,\"previous\":\"prev\",\"total\":203}";
+
+    private TrackPageConverter converter;
+
+    @Mock
+    private Converter fallback;
+
+    @Before
+    public void setUp() {
+        converter = new TrackPageConverter(fallback);
+    }
+
+    @Test
+    public void test_fromBody() throws Exception {
+        TrackPage page = (TrackPage) converter.fromBody(createBody(PAGE), TrackPage.class);
+
+        assertEquals(203, page.total);
+        assertEquals(200, page.offset);
+        assertEquals(100, page.limit);
+        assertNull(page.next);
+        assertEquals(3, page.items.size());
+
+        Track track = page.items.get(0).track;
+        assertEquals("spotify:track:0", track.uri);
+        assertEquals("track name", track.name);
+        assertNull(track.available_markets);
+        assertNull(track.id);
+        assertEquals("album0", track.album.id);
+        assertEquals("album name", track.album.name);
+        assertNull(track.album.available_markets);
+        assertEquals(2, track.album.images.size());
+        assertEquals("large", track.album.images.get(0).url);
+        assertEquals(640, (int) track.album.images.get(0).width);
+        assertNull(track.album.images.get(1).width);
+        assertEquals(1, track.artists.size());
+        assertEquals("artist0", track.artists.get(0).id);
+        assertEquals("first", track.artists.get(0).name);
+        assertEquals("artist", track.artists.get(0).type);
+
+        Track local = page.items.get(1).track;
+        assertNull(local.album.id);
+        assertEquals("local", local.album.name);
+        assertEquals(0, local.artists.size());
+
+        assertNull(page.items.get(2).track);
+    }
+
+    @Test
+    public void test_fromBody_buildsSongs() throws Exception {
+        TrackPage page = (TrackPage) converter.fromBody(createBody(PAGE), TrackPage.class);
+
+        PlaylistTrack first = page.items.get(0);
+        Song song = SongCatalog.get().buildSong(first.track);
+
+        assertEquals("spotify:track:0", song.getId());
+        assertEquals("album name", song.getAlbum());
+        assertEquals("first", song.getArtist());
+        assertEquals("large", song.getBackgroundImageUrl());
+    }
+
+    @Test(expected = ConversionException.class)
+    public void test_fromBody_badJson() throws Exception {
+        converter.fromBody(createBody("{\"items\":{\"track\":1}"), TrackPage.class);
+    }
+
+    @Test
+    public void test_fromBody_otherType() throws Exception {
+        TypedInput body = createBody("{}");
+
+        converter.fromBody(body, LibraryPlaylist.class);
+
+        verify(fallback).fromBody(body, LibraryPlaylist.class);
+    }
+
+    private TypedInput createBody(String json) throws Exception {
+        return new TypedByteArray("application/json; charset=utf-8", json.getBytes("UTF-8"));
+    }
+
+}
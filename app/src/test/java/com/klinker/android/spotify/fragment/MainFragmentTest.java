@@ -17,25 +17,37 @@
 package com.klinker.android.spotify.fragment;
 
 import android.app.LoaderManager;
+import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
 import android.support.v17.leanback.widget.ArrayObjectAdapter;
+import android.support.v17.leanback.widget.ListRow;
 import android.view.View;
 import com.klinker.android.spotify.AbstractSpotifyHelper;
 import com.klinker.android.spotify.R;
+import com.klinker.android.spotify.activity.PlayerActivity;
+import com.klinker.android.spotify.data.LibraryPlaylist;
+import com.klinker.android.spotify.data.LibrarySnapshot;
+import com.klinker.android.spotify.data.PlayQueue;
+import com.klinker.android.spotify.data.PlayQueueRepository;
 import com.klinker.android.spotify.data.Song;
 import com.klinker.android.spotify.provider.PlaylistProvider;
 import com.klinker.android.spotify.util.TestUtil;
+import kaaes.spotify.webapi.android.models.PlaylistSimple;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 public class MainFragmentTest extends AbstractSpotifyHelper {
@@ -84,34 +96,236 @@ public class MainFragmentTest extends AbstractSpotifyHelper {
 
     @Test
     public void test_setupEventListeners() {
-        //verify(fragment).setOnSearchClickedListener(any(View.OnClickListener.class));
+        verify(fragment).setOnSearchClickedListener(any(View.OnClickListener.class));
         verify(fragment).setOnItemViewSelectedListener(fragment.getDefaultItemSelectedListener());
         verify(fragment).setOnItemViewClickedListener(fragment.getDefaultItemClickedListener());
     }
 
     @Test
     public void test_onCreateLoader() {
-        Loader<HashMap<String, List<Song>>> loader = fragment.onCreateLoader(0, null);
+        Loader<List<LibrarySnapshot.Row>> loader = fragment.onCreateLoader(0, null);
         assertNotNull(loader);
     }
 
     @Test
     public void test_onLoadFinished() {
-        HashMap<String, List<Song>> map = new HashMap<String, List<Song>>();
+        List<LibrarySnapshot.Row> rows = new ArrayList<LibrarySnapshot.Row>();
         List<Song> songs = new ArrayList<Song>();
         songs.add(new Song());
         songs.add(new Song());
         songs.add(new Song());
 
-        map.put("Playlist", songs);
+        rows.add(new LibrarySnapshot.Row(createPlaylist("Playlist"), songs));
 
-        fragment.onLoadFinished(null, map);
+        fragment.onLoadFinished(null, rows);
         ArrayObjectAdapter adapter = fragment.getAdapter();
 
         assertEquals(2, adapter.size());
         verify(fragment).setAdapter(adapter);
     }
 
+    @Test
+    public void test_addPage_ordersRows() {
+        fragment.setArrayObjectAdapter(null);
+
+        fragment.addPage(createPlaylist("second"), 1, 0, createSongs("b", 0, 2));
+        fragment.addPage(createPlaylist("first"), 0, 0, createSongs("a", 0, 3));
+        fragment.addPage(createPlaylist("second"), 1, 2, createSongs("b", 2, 2));
+
+        ArrayObjectAdapter adapter = fragment.getAdapter();
+        assertEquals(3, adapter.size());
+
+        ListRow first = (ListRow) adapter.get(0);
+        ListRow second = (ListRow) adapter.get(1);
+        assertEquals("first", first.getHeaderItem().getName());
+        assertEquals("second", second.getHeaderItem().getName());
+        assertEquals(3, first.getAdapter().size());
+        assertEquals(4, second.getAdapter().size());
+        assertEquals("b3", ((Song) second.getAdapter().get(3)).getId());
+    }
+
+    @Test
+    public void test_addPage_keepsMatchingRow() {
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("first"), 0, 0, createSongs("a", 0, 2));
+        ArrayObjectAdapter row = (ArrayObjectAdapter) ((ListRow) fragment.getAdapter().get(0)).getAdapter();
+        Object firstSong = row.get(0);
+
+        // the stored row was showing before the sync sent the same page again
+        fragment.addPage(createPlaylist("first"), 0, 0, createSongs("a", 0, 2));
+        assertSame(firstSong, row.get(0));
+
+        fragment.addPage(createPlaylist("first"), 0, 0, createSongs("c", 0, 3));
+        assertEquals(3, row.size());
+        assertEquals("c0", ((Song) row.get(0)).getId());
+    }
+
+    @Test
+    public void test_addPage_replacesDifferentPlaylist() {
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("id1", "old"), 0, 0, createSongs("a", 0, 2));
+        ListRow stored = (ListRow) fragment.getAdapter().get(0);
+
+        // a playlist was added at the front since the snapshot was written
+        fragment.addPage(createPlaylist("id2", "new"), 0, 0, createSongs("b", 0, 3));
+
+        ListRow row = (ListRow) fragment.getAdapter().get(0);
+        assertNotSame(stored, row);
+        assertEquals(2, fragment.getAdapter().size());
+        assertEquals("new", row.getHeaderItem().getName());
+        assertEquals("id2", fragment.getPlaylistId(row));
+        assertEquals(3, row.getAdapter().size());
+
+        // renamed playlists get a new header too
+        fragment.addPage(createPlaylist("id2", "renamed"), 0, 0, createSongs("b", 0, 3));
+        assertEquals("renamed", ((ListRow) fragment.getAdapter().get(0)).getHeaderItem().getName());
+    }
+
+    @Test
+    public void test_addPage_duplicateNames() {
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("id1", "Favorites"), 0, 0, createSongs("a", 0, 2));
+        fragment.addPage(createPlaylist("id2", "Favorites"), 1, 0, createSongs("b", 0, 2));
+
+        assertEquals("id1", fragment.getPlaylistId((ListRow) fragment.getAdapter().get(0)));
+        assertEquals("id2", fragment.getPlaylistId((ListRow) fragment.getAdapter().get(1)));
+    }
+
+    @Test
+    public void test_onLoadFinished_keepsPlaylistIds() {
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("id1", "first"), 0, 0, createSongs("a", 0, 2));
+        fragment.addPage(createPlaylist("id2", "second"), 1, 0, createSongs("b", 0, 2));
+
+        // the second playlist was removed and a new one took its spot, so the rows are rebuilt
+        List<LibrarySnapshot.Row> rows = new ArrayList<LibrarySnapshot.Row>();
+        rows.add(new LibrarySnapshot.Row(createPlaylist("id1", "first"), createSongs("a", 0, 2)));
+        rows.add(new LibrarySnapshot.Row(createPlaylist("id3", "third"), createSongs("c", 0, 2)));
+        fragment.onLoadFinished(null, rows);
+
+        assertEquals("id1", fragment.getPlaylistId((ListRow) fragment.getAdapter().get(0)));
+        assertEquals("id3", fragment.getPlaylistId((ListRow) fragment.getAdapter().get(1)));
+    }
+
+    @Test
+    public void test_onLoadFinished_playlistAddedAtFront() {
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("id1", "first"), 0, 0, createSongs("a", 0, 2));
+        ArrayObjectAdapter row = (ArrayObjectAdapter) ((ListRow) fragment.getAdapter().get(0)).getAdapter();
+        fragment.addMoreSongs("id1", row, 2, createSongs("a", 2, 2));
+
+        List<LibrarySnapshot.Row> rows = new ArrayList<LibrarySnapshot.Row>();
+        rows.add(new LibrarySnapshot.Row(createPlaylist("id2", "new"), createSongs("b", 0, 3)));
+        rows.add(new LibrarySnapshot.Row(createPlaylist("id1", "first"), createSongs("a", 0, 2)));
+        fragment.onLoadFinished(null, rows);
+
+        ArrayObjectAdapter adapter = fragment.getAdapter();
+        assertEquals(3, adapter.size());
+        assertEquals("id2", fragment.getPlaylistId((ListRow) adapter.get(0)));
+        assertEquals("id1", fragment.getPlaylistId((ListRow) adapter.get(1)));
+        assertEquals(3, ((ListRow) adapter.get(0)).getAdapter().size());
+
+        // the moved playlist keeps the pages it had already loaded
+        assertSame(row, ((ListRow) adapter.get(1)).getAdapter());
+        assertEquals(4, row.size());
+        assertEquals(1, ((ListRow) adapter.get(1)).getHeaderItem().getId());
+    }
+
+    @Test
+    public void test_onLoadFinished_duplicateNames() {
+        fragment.setArrayObjectAdapter(null);
+
+        List<LibrarySnapshot.Row> rows = new ArrayList<LibrarySnapshot.Row>();
+        rows.add(new LibrarySnapshot.Row(createPlaylist("id1", "Favorites"), createSongs("a", 0, 2)));
+        rows.add(new LibrarySnapshot.Row(createPlaylist("id2", "Favorites"), createSongs("b", 0, 3)));
+        fragment.onLoadFinished(null, rows);
+
+        ArrayObjectAdapter adapter = fragment.getAdapter();
+        assertEquals(3, adapter.size());
+        assertEquals("id1", fragment.getPlaylistId((ListRow) adapter.get(0)));
+        assertEquals("id2", fragment.getPlaylistId((ListRow) adapter.get(1)));
+        assertEquals("a0", ((Song) ((ListRow) adapter.get(0)).getAdapter().get(0)).getId());
+        assertEquals("b0", ((Song) ((ListRow) adapter.get(1)).getAdapter().get(0)).getId());
+
+        // swapping the two same named playlists is a change, even though the names still line up
+        List<LibrarySnapshot.Row> swapped = new ArrayList<LibrarySnapshot.Row>();
+        swapped.add(rows.get(1));
+        swapped.add(rows.get(0));
+        fragment.onLoadFinished(null, swapped);
+
+        adapter = fragment.getAdapter();
+        assertEquals("id2", fragment.getPlaylistId((ListRow) adapter.get(0)));
+        assertEquals("id1", fragment.getPlaylistId((ListRow) adapter.get(1)));
+        assertEquals(3, ((ListRow) adapter.get(0)).getAdapter().size());
+    }
+
+    @Test
+    public void test_onLoadFinished_keepsStreamedRows() {
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("first"), 0, 0, createSongs("a", 0, 2));
+        ArrayObjectAdapter adapter = fragment.getAdapter();
+
+        List<LibrarySnapshot.Row> rows = new ArrayList<LibrarySnapshot.Row>();
+        rows.add(new LibrarySnapshot.Row(createPlaylist("first"), createSongs("a", 0, 3)));
+        fragment.onLoadFinished(null, rows);
+
+        assertSame(adapter, fragment.getAdapter());
+        assertEquals(3, ((ListRow) adapter.get(0)).getAdapter().size());
+    }
+
+    @Test
+    public void test_addMoreSongs() {
+        ArrayObjectAdapter row = new ArrayObjectAdapter();
+        row.addAll(0, createSongs("a", 0, 2));
+
+        fragment.addMoreSongs("playlist", row, 2, createSongs("a", 2, 3));
+        assertEquals(5, row.size());
+
+        // the row changed while loading, so the page no longer lines up
+        fragment.addMoreSongs("playlist", row, 2, createSongs("a", 2, 3));
+        assertEquals(5, row.size());
+
+        fragment.addMoreSongs("playlist", row, 5, null);
+        assertEquals(5, row.size());
+    }
+
+    @Test
+    public void test_onLoadFinished_keepsLoadedPages() {
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("first"), 0, 0, createSongs("a", 0, 2));
+        ArrayObjectAdapter row = (ArrayObjectAdapter) ((ListRow) fragment.getAdapter().get(0)).getAdapter();
+        fragment.addMoreSongs("first", row, 2, createSongs("a", 2, 2));
+
+        List<LibrarySnapshot.Row> rows = new ArrayList<LibrarySnapshot.Row>();
+        rows.add(new LibrarySnapshot.Row(createPlaylist("first"), createSongs("a", 0, 2)));
+        fragment.onLoadFinished(null, rows);
+
+        assertEquals(4, row.size());
+    }
+
+    @Test
+    public void test_loadMoreSongs_runsInBackground() {
+        doNothing().when(fragment).runInBackground(any(Runnable.class));
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("first"), 0, 0, createSongs("a", 0, 2));
+        ListRow row = (ListRow) fragment.getAdapter().get(0);
+
+        fragment.loadMoreSongs(row);
+
+        // only one page is loaded for a row at a time
+        fragment.loadMoreSongs(row);
+        verify(fragment, times(1)).runInBackground(any(Runnable.class));
+    }
+
+    @Test
+    public void test_buildLoadExecutor() {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) fragment.buildLoadExecutor();
+
+        assertEquals(2, executor.getMaximumPoolSize());
+        assertTrue(executor.allowsCoreThreadTimeOut());
+        executor.shutdown();
+    }
+
     @Test
     public void test_onLoaderReset() {
         fragment.setArrayObjectAdapter(new ArrayObjectAdapter());
@@ -129,14 +343,137 @@ public class MainFragmentTest extends AbstractSpotifyHelper {
             songs.add(song);
         }
 
-        Song song = songs.get(2);
-        List<String> ids = fragment.startSong(songs, song);
+        long queueId = fragment.startSong(songs, 2);
+
+        PlayQueue queue = PlayQueueRepository.get().getQueue(queueId);
+        assertEquals(songs.size(), queue.size());
+        assertEquals("2", queue.getCurrentSong().getId());
+
+        ArgumentCaptor<Intent> intent = ArgumentCaptor.forClass(Intent.class);
+        verify(fragment).startActivity(intent.capture());
+        assertEquals(queueId, intent.getValue().getLongExtra(PlayerActivity.ARG_QUEUE_ID, -1));
+    }
+
+    @Test
+    public void test_onItemClicked_playsWholePlaylist() {
+        runInBackgroundNow();
+
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("big"), 0, 0, createSongs("a", 0, 100));
+        ListRow row = (ListRow) fragment.getAdapter().get(0);
+        doReturn(createSongs("a", 0, 500)).when(fragment).loadPlaylistSongs(any(Context.class), eq("big"));
+
+        fragment.getDefaultItemClickedListener().onItemClicked(null, row.getAdapter().get(5), null, row);
+
+        // the player starts with the row, then the rest of the playlist is added to its queue
+        ArgumentCaptor<List> songs = ArgumentCaptor.forClass(List.class);
+        verify(fragment).startSong(songs.capture(), eq(5));
+        assertEquals(100, songs.getValue().size());
+
+        PlayQueue queue = getStartedQueue();
+        assertEquals(500, queue.size());
+        assertEquals("a5", queue.getCurrentSong().getId());
+        assertEquals("a499", queue.getSong(494).getId());
+        assertEquals("a0", queue.getSong(495).getId());
+    }
+
+    @Test
+    public void test_onItemClicked_playsRowWhenPlaylistFailsToLoad() {
+        runInBackgroundNow();
+
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("big"), 0, 0, createSongs("a", 0, 100));
+        ListRow row = (ListRow) fragment.getAdapter().get(0);
+        doReturn(createSongs("a", 0, 3)).when(fragment).loadPlaylistSongs(any(Context.class), eq("big"));
+
+        fragment.getDefaultItemClickedListener().onItemClicked(null, row.getAdapter().get(5), null, row);
+
+        verify(fragment).startSong(anyListOf(Song.class), eq(5));
+        assertEquals(100, getStartedQueue().size());
+    }
+
+    @Test
+    public void test_onItemClicked_playsRowWhenPlaylistChanged() {
+        runInBackgroundNow();
+
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("big"), 0, 0, createSongs("a", 0, 100));
+        ListRow row = (ListRow) fragment.getAdapter().get(0);
+        doReturn(createSongs("b", 0, 500)).when(fragment).loadPlaylistSongs(any(Context.class), eq("big"));
 
-        assertEquals(song.getId(), ids.get(0));
-        assertNotEquals(song.getId(), ids.get(2));
-        assertNotEquals(song.getId(), ids.get(3));
+        fragment.getDefaultItemClickedListener().onItemClicked(null, row.getAdapter().get(5), null, row);
+
+        assertEquals(100, getStartedQueue().size());
+    }
+
+    @Test
+    public void test_onItemClicked_loadsPlaylistOnce() {
+        doNothing().when(fragment).runInBackground(any(Runnable.class));
+
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("big"), 0, 0, createSongs("a", 0, 100));
+        ListRow row = (ListRow) fragment.getAdapter().get(0);
+
+        fragment.getDefaultItemClickedListener().onItemClicked(null, row.getAdapter().get(5), null, row);
+        fragment.getDefaultItemClickedListener().onItemClicked(null, row.getAdapter().get(6), null, row);
+
+        // both clicks start playing right away, but only one load is running for the rest of the playlist
+        verify(fragment, times(2)).startSong(anyListOf(Song.class), anyInt());
+        verify(fragment, times(1)).runInBackground(any(Runnable.class));
+    }
+
+    @Test
+    public void test_onItemClicked_completeRowDoesNotLoad() {
+        doNothing().when(fragment).runInBackground(any(Runnable.class));
+
+        fragment.setArrayObjectAdapter(null);
+        fragment.addPage(createPlaylist("small"), 0, 0, createSongs("a", 0, 3));
+        ListRow row = (ListRow) fragment.getAdapter().get(0);
+        fragment.addMoreSongs("small", (ArrayObjectAdapter) row.getAdapter(), 3, new ArrayList<Song>());
+
+        fragment.getDefaultItemClickedListener().onItemClicked(null, row.getAdapter().get(1), null, row);
+
+        verify(fragment).startSong(anyListOf(Song.class), eq(1));
+        verify(fragment, never()).runInBackground(any(Runnable.class));
+    }
+
+    private void runInBackgroundNow() {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(fragment).runInBackground(any(Runnable.class));
+    }
+
+    private PlayQueue getStartedQueue() {
+        ArgumentCaptor<Intent> intent = ArgumentCaptor.forClass(Intent.class);
+        verify(fragment).startActivity(intent.capture());
+        return PlayQueueRepository.get().getQueue(intent.getValue().getLongExtra(PlayerActivity.ARG_QUEUE_ID, -1));
+    }
+
+    private LibraryPlaylist createPlaylist(String name) {
+        return createPlaylist(name, name);
+    }
+
+    private LibraryPlaylist createPlaylist(String id, String name) {
+        LibraryPlaylist playlist = new LibraryPlaylist();
+        playlist.id = id;
+        playlist.name = name;
+        return playlist;
+    }
+
+    private List<Song> createSongs(String prefix, int offset, int count) {
+        List<Song> songs = new ArrayList<Song>();
+
+        for (int i = offset; i < offset + count; i++) {
+            Song song = new Song();
+            song.setId(prefix + i);
+            songs.add(song);
+        }
 
-        verify(fragment).startActivity(any(Intent.class));
+        return songs;
     }
 
-}
\ No newline at end of file
+}
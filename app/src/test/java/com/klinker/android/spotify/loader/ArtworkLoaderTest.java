@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.graphics.Bitmap;
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+import com.squareup.picasso.Target;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ArtworkLoaderTest extends AbstractSpotifyHelper {
+
+    private static final String URL = "http://image";
+
+    private ArtworkLoader loader;
+
+    @Mock
+    private Picasso picasso;
+
+    @Mock
+    private RequestCreator request;
+
+    private Bitmap bitmap;
+
+    @Mock
+    private ArtworkLoader.OnArtworkLoadedListener first;
+
+    @Mock
+    private ArtworkLoader.OnArtworkLoadedListener second;
+
+    @Before
+    public void setUp() {
+        when(picasso.load(anyString())).thenReturn(request);
+        when(request.resize(anyInt(), anyInt())).thenReturn(request);
+        when(request.centerCrop()).thenReturn(request);
+
+        bitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        loader = new ArtworkLoader(picasso);
+    }
+
+    @Test
+    public void test_load_sharesRequests() {
+        loader.load(URL, 100, first);
+        loader.load(URL, 100, second);
+
+        verify(picasso, times(1)).load(URL);
+        verify(request).resize(100, 100);
+        assertEquals(1, loader.getPendingCount());
+
+        getTarget().onBitmapLoaded(bitmap, Picasso.LoadedFrom.MEMORY);
+
+        verify(first).onArtworkLoaded(URL, bitmap);
+        verify(second).onArtworkLoaded(URL, bitmap);
+        assertEquals(0, loader.getPendingCount());
+    }
+
+    @Test
+    public void test_load_differentSizes() {
+        loader.load(URL, 100, first);
+        loader.load(URL, 200, second);
+
+        verify(picasso, times(2)).load(URL);
+        assertEquals(2, loader.getPendingCount());
+    }
+
+    @Test
+    public void test_load_failed() {
+        loader.load(URL, 100, first);
+
+        getTarget().onBitmapFailed(null);
+
+        verify(first).onArtworkLoaded(URL, null);
+        assertEquals(0, loader.getPendingCount());
+    }
+
+    @Test
+    public void test_cancel() {
+        loader.load(URL, 100, first);
+        loader.load(URL, 100, second);
+        Target target = getTarget();
+
+        loader.cancel(first);
+        verify(picasso, never()).cancelRequest(any(Target.class));
+
+        loader.cancel(second);
+        verify(picasso).cancelRequest(target);
+        assertEquals(0, loader.getPendingCount());
+    }
+
+    @Test
+    public void test_cancelAll() {
+        loader.load(URL, 100, first);
+
+        loader.cancelAll();
+
+        verify(picasso).cancelRequest(any(Target.class));
+        assertEquals(0, loader.getPendingCount());
+    }
+
+    private Target getTarget() {
+        ArgumentCaptor<Target> captor = ArgumentCaptor.forClass(Target.class);
+        verify(request).into(captor.capture());
+        return captor.getValue();
+    }
+
+}
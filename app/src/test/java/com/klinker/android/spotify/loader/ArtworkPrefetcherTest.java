@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+import com.squareup.picasso.Target;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ArtworkPrefetcherTest extends AbstractSpotifyHelper {
+
+    private ArtworkPrefetcher prefetcher;
+
+    @Mock
+    private Picasso picasso;
+
+    @Mock
+    private RequestCreator request;
+
+    @Before
+    public void setUp() {
+        when(picasso.load(anyString())).thenReturn(request);
+        when(request.resize(anyInt(), anyInt())).thenReturn(request);
+        when(request.centerCrop()).thenReturn(request);
+
+        prefetcher = new ArtworkPrefetcher(picasso, 1920, 1080);
+    }
+
+    @Test
+    public void test_prefetch() {
+        prefetcher.prefetch(Arrays.asList("http://a", "http://b"));
+
+        verify(picasso).load("http://a");
+        verify(picasso).load("http://b");
+        verify(request, times(2)).resize(1920, 1080);
+        assertEquals(2, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void test_prefetch_skipsPending() {
+        prefetcher.prefetch(Arrays.asList("http://a", "http://b"));
+        prefetcher.prefetch(Arrays.asList("http://b", "http://c"));
+
+        verify(picasso, times(1)).load("http://b");
+        verify(picasso).load("http://c");
+        verify(picasso).cancelRequest(any(Target.class));
+        assertEquals(2, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void test_prefetch_releasesFinished() {
+        prefetcher.prefetch(Arrays.asList("http://a"));
+
+        ArgumentCaptor<Target> captor = ArgumentCaptor.forClass(Target.class);
+        verify(request).into(captor.capture());
+        captor.getValue().onBitmapFailed(null);
+
+        assertEquals(0, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void test_cancelAll() {
+        prefetcher.prefetch(Arrays.asList("http://a", "http://b"));
+
+        prefetcher.cancelAll();
+
+        verify(picasso, times(2)).cancelRequest(any(Target.class));
+        assertEquals(0, prefetcher.getPendingCount());
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+import com.squareup.picasso.Target;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class BackgroundTransitionSchedulerTest extends AbstractSpotifyHelper {
+
+    private static final long DELAY = 300;
+
+    private BackgroundTransitionScheduler scheduler;
+
+    @Mock
+    private Picasso picasso;
+
+    @Mock
+    private RequestCreator request;
+
+    @Mock
+    private Target target;
+
+    @Mock
+    private ThumbnailCache thumbnailCache;
+
+    @Before
+    public void setUp() {
+        when(picasso.load(anyString())).thenReturn(request);
+        when(request.resize(anyInt(), anyInt())).thenReturn(request);
+        when(request.centerCrop()).thenReturn(request);
+        when(request.error(any(Drawable.class))).thenReturn(request);
+
+        scheduler = new BackgroundTransitionScheduler(new Handler(Looper.getMainLooper()), picasso, target,
+                thumbnailCache, 1920, 1080, 250, null, DELAY);
+    }
+
+    @Test
+    public void test_select_debounces() {
+        scheduler.select("http://a", "http://a/small");
+        scheduler.select("http://b", "http://b/small");
+        scheduler.select("http://c", "http://c/small");
+
+        verify(picasso, never()).load(anyString());
+
+        ShadowLooper.idleMainLooper(DELAY);
+
+        verify(picasso, times(1)).load(anyString());
+        verify(picasso).load("http://c");
+        verify(request).resize(1920, 1080);
+        verify(request).into(target);
+    }
+
+    @Test
+    public void test_select_sameBackground() {
+        scheduler.select("http://a", "http://a/small");
+        ShadowLooper.idleMainLooper(DELAY);
+        scheduler.select("http://a", "http://a/small");
+        ShadowLooper.idleMainLooper(DELAY);
+
+        verify(picasso, times(1)).load("http://a");
+    }
+
+    @Test
+    public void test_select_cancelsSupersededLoad() {
+        scheduler.select("http://a", "http://a/small");
+        ShadowLooper.idleMainLooper(DELAY);
+        scheduler.select("http://b", "http://b/small");
+        ShadowLooper.idleMainLooper(DELAY);
+
+        verify(picasso, times(2)).cancelRequest(target);
+        verify(picasso).load("http://b");
+    }
+
+    @Test
+    public void test_select_showsPreview() {
+        Bitmap first = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        when(thumbnailCache.getCached("http://a/small", 250)).thenReturn(first);
+        when(thumbnailCache.getCached("http://b/small", 250)).thenReturn(second);
+
+        // the transition is started directly, since the spy isn't what the handler would run
+        scheduler = spy(scheduler);
+        doNothing().when(scheduler).showPreview(any(Bitmap.class));
+
+        scheduler.select("http://a", "http://a/small");
+        scheduler.startTransition();
+        verify(scheduler).showPreview(first);
+
+        scheduler.select("http://b", "http://b/small");
+        scheduler.startTransition();
+        verify(scheduler).showPreview(second);
+
+        // the first preview is given back once the second one is showing
+        verify(thumbnailCache).release(first);
+        verify(thumbnailCache, never()).release(second);
+    }
+
+    @Test
+    public void test_cancel() {
+        scheduler.select("http://a", "http://a/small");
+        scheduler.cancel();
+        ShadowLooper.idleMainLooper(DELAY);
+
+        verify(picasso, never()).load(anyString());
+        verify(picasso).cancelRequest(target);
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.graphics.Bitmap;
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BitmapPoolTest extends AbstractSpotifyHelper {
+
+    @Test
+    public void test_get_matchesSizeAndConfig() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+
+        assertNull(pool.get(10, 20, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(10, 10, Bitmap.Config.RGB_565));
+        assertSame(bitmap, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void test_put_limitsSize() {
+        Bitmap first = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        BitmapPool pool = new BitmapPool(first.getByteCount());
+
+        pool.put(first);
+        pool.put(second);
+
+        assertEquals(first.getByteCount(), pool.getSize());
+        assertSame(first, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void test_put_skipsRecycled() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        bitmap.recycle();
+
+        pool.put(bitmap);
+
+        assertEquals(0, pool.getSize());
+    }
+
+}
@@ -18,11 +18,12 @@ package com.klinker.android.spotify.loader;
 
 import com.klinker.android.spotify.AbstractSpotifyHelper;
 import com.klinker.android.spotify.data.RefreshToken;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpUriRequest;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
@@ -45,8 +46,7 @@ public class OAuthTokenRefresherTest extends AbstractSpotifyHelper {
 
     private OAuthTokenRefresher refresher;
 
-    @Mock
-    private HttpPost post;
+    private Request post = new Request.Builder().url("http://www.google.com").build();
 
     @Mock
     private InputStream stream;
@@ -54,12 +54,6 @@ public class OAuthTokenRefresherTest extends AbstractSpotifyHelper {
     @Mock
     private JSONObject jsonObject;
 
-    @Mock
-    private HttpResponse response;
-
-    @Mock
-    private HttpEntity entity;
-
     @Mock
     private InputStreamReader streamReader;
 
@@ -78,6 +72,7 @@ public class OAuthTokenRefresherTest extends AbstractSpotifyHelper {
     @Test
     public void test_init() {
         assertNotNull(refresher.getClient());
+        assertSame(refresher.getClient(), new SpotifyOAuthTokenRefresher().getClient());
     }
 
     @Test
@@ -114,7 +109,7 @@ public class OAuthTokenRefresherTest extends AbstractSpotifyHelper {
     public void test_executePost_noStream() {
         String url = "test_url";
         String entity = "test_entity";
-        HttpClient client = refresher.getClient();
+        OkHttpClient client = refresher.getClient();
 
         doReturn(post).when(refresher).newPostRequest(url, entity);
         doReturn(null).when(refresher).executeRequest(client, post);
@@ -126,7 +121,7 @@ public class OAuthTokenRefresherTest extends AbstractSpotifyHelper {
     public void test_executePost_noJson() {
         String url = "test_url";
         String entity = "test_entity";
-        HttpClient client = refresher.getClient();
+        OkHttpClient client = refresher.getClient();
 
         doReturn(post).when(refresher).newPostRequest(url, entity);
         doReturn(stream).when(refresher).executeRequest(client, post);
@@ -139,7 +134,7 @@ public class OAuthTokenRefresherTest extends AbstractSpotifyHelper {
     public void test_executePost() {
         String url = "test_url";
         String entity = "test_entity";
-        HttpClient client = refresher.getClient();
+        OkHttpClient client = refresher.getClient();
 
         doReturn(post).when(refresher).newPostRequest(url, entity);
         doReturn(stream).when(refresher).executeRequest(client, post);
@@ -151,44 +146,51 @@ public class OAuthTokenRefresherTest extends AbstractSpotifyHelper {
     }
 
     @Test
-    public void test_newPostRequest() {
-        String url = "test_url";
+    public void test_newPostRequest() throws Exception {
+        String url = "http://www.google.com";
         String entity = "test_entity";
 
-        HttpPost post = refresher.newPostRequest(url, entity);
+        Request post = refresher.newPostRequest(url, entity);
 
-        assertNotNull(post.getEntity());
+        assertEquals("POST", post.method());
+        assertEquals(entity.length(), post.body().contentLength());
+        assertEquals("application/x-www-form-urlencoded", post.body().contentType().type() + "/" +
+                post.body().contentType().subtype());
     }
 
     @Test
-    public void test_newPostRequest_noEntity() {
-        String url = "test_url";
+    public void test_newPostRequest_noEntity() throws Exception {
+        String url = "http://www.google.com";
         String entity = null;
 
-        HttpPost post = refresher.newPostRequest(url, entity);
+        Request post = refresher.newPostRequest(url, entity);
 
-        assertNull(post.getEntity());
+        assertEquals(0, post.body().contentLength());
     }
 
     @Test
     public void test_addAuthHeader() {
-        HttpUriRequest post = new HttpPost("http://www.google.com");
-        post = refresher.addAuthHeader(post);
+        Request post = refresher.addAuthHeader(new Request.Builder().url("http://www.google.com")).build();
 
-        assertNotNull(post.getFirstHeader("Authorization"));
-        assertEquals("application/x-www-form-urlencoded", post.getLastHeader("Content-Type").getValue());
+        assertNotNull(post.header("Authorization"));
     }
 
     @Test
     public void test_executeRequest() throws Exception {
-        HttpClient client = refresher.getClient();
-        HttpPost post = new HttpPost("http://www.google.com");
+        OkHttpClient client = refresher.getClient();
 
-        doReturn(response).when(refresher).executeClientRequest(client, post);
-        doReturn(entity).when(response).getEntity();
-        doReturn(stream).when(entity).getContent();
+        doReturn(createResponse(200, "{}")).when(refresher).executeClientRequest(client, post);
 
-        assertEquals(stream, refresher.executeRequest(client, post));
+        assertEquals("{}", refresher.getJsonString(refresher.executeRequest(client, post)).trim());
+    }
+
+    @Test
+    public void test_executeRequest_error() throws Exception {
+        OkHttpClient client = refresher.getClient();
+
+        doReturn(createResponse(400, "{\"error\":\"invalid_grant\"}")).when(refresher).executeClientRequest(client, post);
+
+        assertNull(refresher.executeRequest(client, post));
     }
 
     @Test
@@ -231,4 +233,13 @@ public class OAuthTokenRefresherTest extends AbstractSpotifyHelper {
         assertEquals("test", refresher.getJsonString(stream));
     }
 
+    private Response createResponse(int code, String body) {
+        return new Response.Builder()
+                .request(post)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .body(ResponseBody.create(MediaType.parse("application/json"), body))
+                .build();
+    }
+
 }
\ No newline at end of file
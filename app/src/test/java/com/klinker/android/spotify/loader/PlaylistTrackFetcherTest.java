@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.klinker.android.spotify.loader;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.klinker.android.spotify.data.LibraryService;
+import com.klinker.android.spotify.data.Song;
+import com.klinker.android.spotify.data.TrackPage;
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.ArtistSimple;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.PlaylistSimple;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.PlaylistTracksInformation;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.UserSimple;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.client.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class PlaylistTrackFetcherTest extends AbstractSpotifyHelper {
+
+    private ExecutorService executor;
+    private PlaylistTrackFetcher fetcher;
+
+    @Mock
+    private LibraryService service;
+
+    @Mock
+    private OnPlaylistLoaded callback;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        fetcher = new PlaylistTrackFetcher(service, executor, new HostLimiter(2));
+
+        doAnswer(new Answer<TrackPage>() {
+            @Override
+            public TrackPage answer(InvocationOnMock invocation) throws Throwable {
+                String playlistId = (String) invocation.getArguments()[1];
+                Map options = (Map) invocation.getArguments()[2];
+                return createPage(playlistId, (Integer) options.get("offset"));
+            }
+        }).when(service).getPlaylistTracks(anyString(), anyString(), anyMap());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void test_fetch_mergesInOrder() {
+        List<PlaylistSimple> playlists = new ArrayList<PlaylistSimple>();
+        playlists.add(createPlaylist("big", 250));
+        playlists.add(createPlaylist("small", 3));
+        playlists.add(createPlaylist("empty", 0));
+
+        List<List<PlaylistTrack>> tracks = fetcher.fetch(playlists, callback);
+
+        assertEquals(3, tracks.size());
+        assertEquals(250, tracks.get(0).size());
+        assertEquals(3, tracks.get(1).size());
+        assertEquals(0, tracks.get(2).size());
+
+        for (int i = 0; i < 250; i++) {
+            assertEquals("big:" + i, tracks.get(0).get(i).track.uri);
+        }
+
+        verify(service, times(3)).getPlaylistTracks(eq("owner"), eq("big"), anyMap());
+        verify(service, never()).getPlaylistTracks(eq("owner"), eq("empty"), anyMap());
+        verify(callback, times(3)).onPlaylistLoaded(any(PlaylistSimple.class), anyInt(), eq(3));
+        verify(callback).onPlaylistLoaded(any(PlaylistSimple.class), eq(2), eq(3));
+    }
+
+    @Test
+    public void test_fetch_deliversPagesInOrder() {
+        final List<String> delivered = new ArrayList<String>();
+        OnPlaylistPageLoaded pageCallback = new OnPlaylistPageLoaded() {
+            @Override
+            public void onPlaylistPageLoaded(PlaylistSimple playlist, int position, int offset, List<Song> songs) {
+                synchronized (delivered) {
+                    delivered.add(playlist.id + ":" + position + ":" + offset + ":" + songs.get(0).getId());
+                }
+            }
+
+            @Override
+            public void onPlaylistLoaded(PlaylistSimple playlist, int currentNumber, int totalNumber) {
+            }
+        };
+
+        List<PlaylistSimple> playlists = new ArrayList<PlaylistSimple>();
+        playlists.add(createPlaylist("small", 3));
+        playlists.add(createPlaylist("big", 250));
+
+        fetcher.fetch(playlists, pageCallback);
+
+        List<String> big = new ArrayList<String>();
+        for (String page : delivered) {
+            if (page.startsWith("big")) {
+                big.add(page);
+            }
+        }
+
+        assertEquals(4, delivered.size());
+        assertTrue(delivered.contains("small:0:0:small:0"));
+        assertEquals("big:1:0:big:0", big.get(0));
+        assertEquals("big:1:100:big:100", big.get(1));
+        assertEquals("big:1:200:big:200", big.get(2));
+    }
+
+    @Test
+    public void test_fetch_retriesRateLimit() {
+        final AtomicInteger calls = new AtomicInteger();
+        doAnswer(new Answer<TrackPage>() {
+            @Override
+            public TrackPage answer(InvocationOnMock invocation) throws Throwable {
+                if (calls.getAndIncrement() == 0) {
+                    throw createError(429, "0");
+                }
+
+                return createPage("limited", 0);
+            }
+        }).when(service).getPlaylistTracks(anyString(), anyString(), anyMap());
+
+        List<PlaylistSimple> playlists = new ArrayList<PlaylistSimple>();
+        playlists.add(createPlaylist("limited", 10));
+
+        List<List<PlaylistTrack>> tracks = fetcher.fetch(playlists, null);
+
+        assertEquals(10, tracks.get(0).size());
+        assertEquals(2, calls.get());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void test_fetch_clientErrorFails() {
+        doThrow(createError(404, null)).when(service).getPlaylistTracks(anyString(), anyString(), anyMap());
+
+        List<PlaylistSimple> playlists = new ArrayList<PlaylistSimple>();
+        playlists.add(createPlaylist("missing", 10));
+
+        fetcher.fetch(playlists, null);
+    }
+
+    @Test
+    public void test_getRetryDelay() {
+        assertEquals(3000, fetcher.getRetryDelay(createError(429, "3"), 0));
+        assertEquals(1000, fetcher.getRetryDelay(createError(429, null), 0));
+        assertEquals(2000, fetcher.getRetryDelay(createError(503, null), 1));
+        assertEquals(-1, fetcher.getRetryDelay(createError(401, null), 0));
+        assertEquals(-1, fetcher.getRetryDelay(createError(429, "3"), 5));
+    }
+
+    private RetrofitError createError(int status, String retryAfter) {
+        List<Header> headers = new ArrayList<Header>();
+        if (retryAfter != null) {
+            headers.add(new Header("Retry-After", retryAfter));
+        }
+
+        Response response = new Response("http://localhost", status, "error", headers, null);
+        return RetrofitError.httpError("http://localhost", response, null, null);
+    }
+
+    private PlaylistSimple createPlaylist(String id, int total) {
+        PlaylistSimple playlist = new PlaylistSimple();
+        playlist.id = id;
+        playlist.name = id;
+        playlist.owner = new UserSimple();
+        playlist.owner.id = "owner";
+        playlist.tracks = new PlaylistTracksInformation();
+        playlist.tracks.total = total;
+        return playlist;
+    }
+
+    private TrackPage createPage(String playlistId, int offset) {
+        int total = "big".equals(playlistId) ? 250 : "small".equals(playlistId) ? 3 : 10;
+        TrackPage page = new TrackPage();
+        page.items = new ArrayList<PlaylistTrack>();
+
+        for (int i = offset; i < Math.min(total, offset + PlaylistTrackFetcher.PAGE_SIZE); i++) {
+            PlaylistTrack playlistTrack = new PlaylistTrack();
+            playlistTrack.track = new Track();
+            playlistTrack.track.uri = playlistId + ":" + i;
+            playlistTrack.track.album = new AlbumSimple();
+            playlistTrack.track.album.images = new ArrayList<Image>();
+            playlistTrack.track.artists = new ArrayList<ArtistSimple>();
+            page.items.add(playlistTrack);
+        }
+
+        return page;
+    }
+
+}
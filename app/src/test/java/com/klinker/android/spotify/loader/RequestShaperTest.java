@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.klinker.android.spotify.data.TrackPageConverter;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.net.URL;
+import java.net.URLEncoder;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class RequestShaperTest extends AbstractSpotifyHelper {
+
+    private static final String TRACKS_URL = "https://api.spotify.com/v1/users/owner/playlists/abc/tracks";
+
+    private RequestShaper shaper;
+
+    @Mock
+    private Interceptor.Chain chain;
+
+    @Before
+    public void setUp() throws Exception {
+        shaper = new RequestShaper();
+        when(chain.proceed(any(Request.class))).thenAnswer(new Answer<Response>() {
+            @Override
+            public Response answer(InvocationOnMock invocation) throws Throwable {
+                return new Response.Builder()
+                        .request((Request) invocation.getArguments()[0])
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .build();
+            }
+        });
+    }
+
+    @Test
+    public void test_getEndpoint() throws Exception {
+        assertEquals("playlist_tracks", RequestShaper.getEndpoint(new URL(TRACKS_URL)).getName());
+        assertEquals("playlists", RequestShaper.getEndpoint(
+                new URL("https://api.spotify.com/v1/users/owner/playlists?offset=0")).getName());
+        assertEquals("me", RequestShaper.getEndpoint(new URL("https://api.spotify.com/v1/me")).getName());
+        assertNull(RequestShaper.getEndpoint(new URL("https://api.spotify.com/v1/albums/abc")));
+        assertNull(RequestShaper.getEndpoint(new URL("https://accounts.spotify.com/v1/users/owner/playlists")));
+    }
+
+    @Test
+    public void test_intercept_addsFieldsAndLimit() throws Exception {
+        String url = proceed(TRACKS_URL + "?offset=100");
+
+        assertTrue(url.startsWith(TRACKS_URL + "?offset=100&limit=100&fields="));
+        assertTrue(url.endsWith(URLEncoder.encode(TrackPageConverter.FIELDS, "UTF-8")));
+    }
+
+    @Test
+    public void test_intercept_keepsCallerOptions() throws Exception {
+        String url = proceed(TRACKS_URL + "?limit=10&fields=total");
+        assertEquals(TRACKS_URL + "?limit=10&fields=total", url);
+    }
+
+    @Test
+    public void test_intercept_playlistsOnlyLimit() throws Exception {
+        String url = proceed("https://api.spotify.com/v1/users/owner/playlists");
+        assertEquals("https://api.spotify.com/v1/users/owner/playlists?limit=50", url);
+    }
+
+    @Test
+    public void test_intercept_otherHostUnchanged() throws Exception {
+        String url = proceed("https://i.scdn.co/image/abc");
+        assertEquals("https://i.scdn.co/image/abc", url);
+    }
+
+    private String proceed(String url) throws Exception {
+        when(chain.request()).thenReturn(new Request.Builder().url(url).build());
+        shaper.intercept(chain);
+
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(chain).proceed(request.capture());
+        return request.getValue().urlString();
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class RevalidationInterceptorTest extends AbstractSpotifyHelper {
+
+    private static final String BODY = "{\"items\":[]}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private Cache cache;
+    private RevalidationInterceptor interceptor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        // the stand in server isn't on the api host, so treat everything as an api endpoint
+        interceptor = spy(new RevalidationInterceptor());
+        doReturn(true).when(interceptor).shouldRevalidate(any(Request.class));
+
+        cache = new Cache(folder.newFolder("http"), 1024 * 1024);
+        client = new OkHttpClient();
+        client.setCache(cache);
+        client.networkInterceptors().add(interceptor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void test_unchangedResponse_servedFromCache() throws Exception {
+        server.enqueue(new MockResponse()
+                .addHeader("ETag", "\"v1\"")
+                .addHeader("Cache-Control", "max-age=3600")
+                .setBody(BODY));
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        assertEquals(BODY, get());
+        assertEquals(BODY, get());
+
+        assertEquals(2, server.getRequestCount());
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void test_changedResponse_replacesCache() throws Exception {
+        server.enqueue(new MockResponse().addHeader("ETag", "\"v1\"").setBody(BODY));
+        server.enqueue(new MockResponse().addHeader("ETag", "\"v2\"").setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        assertEquals(BODY, get());
+        assertEquals("{}", get());
+        assertEquals("{}", get());
+
+        server.takeRequest();
+        server.takeRequest();
+        RecordedRequest last = server.takeRequest();
+        assertEquals("\"v2\"", last.getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void test_noETag_notRevalidated() throws Exception {
+        server.enqueue(new MockResponse().setBody(BODY));
+        server.enqueue(new MockResponse().setBody(BODY));
+
+        get();
+        get();
+
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+    }
+
+    private String get() throws Exception {
+        Response response = client.newCall(new Request.Builder().url(server.getUrl("/v1/me")).build()).execute();
+        return response.body().string();
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.Robolectric;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ThumbnailCacheTest extends AbstractSpotifyHelper {
+
+    private static final String URL = "http://image";
+
+    private File directory;
+    private ExecutorService executor;
+    private ThumbnailCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        directory = new File(activity.getCacheDir(), "thumbnails");
+        executor = Executors.newSingleThreadExecutor();
+        cache = createCache();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void test_getSampleSize() {
+        assertEquals(1, ThumbnailCache.getSampleSize(640, 640, 500));
+        assertEquals(2, ThumbnailCache.getSampleSize(640, 640, 300));
+        assertEquals(4, ThumbnailCache.getSampleSize(640, 640, 160));
+        assertEquals(2, ThumbnailCache.getSampleSize(640, 300, 150));
+        assertEquals(1, ThumbnailCache.getSampleSize(100, 100, 300));
+    }
+
+    @Test
+    public void test_loadBlocking_memoryTier() throws Exception {
+        Bitmap first = cache.loadBlocking(URL, 100);
+        Bitmap second = cache.loadBlocking(URL, 100);
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertSame(first, cache.getCached(URL, 100));
+        verify(cache, times(1)).download(URL);
+    }
+
+    @Test
+    public void test_loadBlocking_diskTier() throws Exception {
+        cache.loadBlocking(URL, 100);
+
+        // a new cache has nothing in memory, but the thumbnail is still on disk
+        ThumbnailCache restarted = createCache();
+        assertNotNull(restarted.loadBlocking(URL, 100));
+        verify(restarted, never()).download(anyString());
+    }
+
+    @Test
+    public void test_loadBlocking_sizeIsPartOfKey() throws Exception {
+        cache.loadBlocking(URL, 100);
+        cache.loadBlocking(URL, 200);
+
+        verify(cache, times(2)).download(URL);
+    }
+
+    @Test
+    public void test_load_fromMemory() {
+        Bitmap bitmap = cache.loadBlocking(URL, 100);
+        ThumbnailCache.OnThumbnailLoadedListener listener = mock(ThumbnailCache.OnThumbnailLoadedListener.class);
+
+        assertNull(cache.load(URL, 100, listener));
+        verify(listener).onThumbnailLoaded(URL, bitmap);
+    }
+
+    @Test
+    public void test_release_poolsOnceOutOfMemory() throws Exception {
+        // room for four thumbnails in memory, and one in the pool
+        int byteCount = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888).getByteCount();
+        cache = createCache(byteCount * 9 / 2);
+
+        Bitmap first = cache.loadBlocking(URL + "1", 100);
+        for (int i = 2; i <= 5; i++) {
+            cache.release(cache.loadBlocking(URL + i, 100));
+        }
+
+        // the first one was pushed out of memory, but it is still on a card
+        assertNull(cache.getCached(URL + "1", 100));
+        assertEquals(0, cache.getPool().getSize());
+
+        cache.release(first);
+        assertEquals(byteCount, cache.getPool().getSize());
+        assertSame(first, cache.getPool().get(100, 100, Bitmap.Config.ARGB_8888));
+
+        // still in memory, so releasing it doesn't put it in the pool
+        Bitmap last = cache.getCached(URL + "5", 100);
+        cache.release(last);
+        assertEquals(0, cache.getPool().getSize());
+    }
+
+    @Test
+    public void test_loadBlocking_deletesCorruptFile() throws Exception {
+        cache.loadBlocking(URL, 100);
+
+        ThumbnailCache restarted = createCache();
+        Bitmap pooled = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        restarted.getPool().put(pooled);
+        doReturn(null).when(restarted).decodeFile(anyString(), any(BitmapFactory.Options.class));
+        doThrow(new IOException()).when(restarted).download(anyString());
+
+        assertNull(restarted.loadBlocking(URL, 100));
+
+        // the pooled bitmap can still be used, and the file won't be read again
+        assertSame(pooled, restarted.getPool().get(100, 100, Bitmap.Config.ARGB_8888));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    private ThumbnailCache createCache() throws Exception {
+        return createCache(1024 * 1024);
+    }
+
+    private ThumbnailCache createCache(int memoryBytes) throws Exception {
+        ThumbnailCache cache = spy(new ThumbnailCache(directory, memoryBytes, executor,
+                new Handler(Looper.getMainLooper())));
+        doReturn(new byte[] { 1, 2, 3 }).when(cache).download(anyString());
+        return cache;
+    }
+
+}
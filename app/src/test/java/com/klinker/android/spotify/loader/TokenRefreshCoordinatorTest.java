@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.klinker.android.spotify.util.OnAuthTokenRefreshedListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TokenRefreshCoordinatorTest extends AbstractSpotifyHelper {
+
+    private ExecutorService executor;
+    private CountDownLatch release;
+    private AtomicInteger refreshes;
+    private boolean fail;
+    private TokenRefreshCoordinator coordinator;
+
+    @Mock
+    private OnAuthTokenRefreshedListener first;
+
+    @Mock
+    private OnAuthTokenRefreshedListener second;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        release = new CountDownLatch(1);
+        refreshes = new AtomicInteger();
+
+        coordinator = new TokenRefreshCoordinator(new Runnable() {
+            @Override
+            public void run() {
+                refreshes.incrementAndGet();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+
+                if (fail) {
+                    throw new RuntimeException("refresh failed");
+                }
+            }
+        }, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void test_refresh_singleFlight() throws Exception {
+        Future<Boolean> firstRefresh = coordinator.refresh(first);
+        Future<Boolean> secondRefresh = coordinator.refresh(second);
+        coordinator.refresh(first);
+
+        assertSame(firstRefresh, secondRefresh);
+        assertTrue(coordinator.isRefreshing());
+
+        release.countDown();
+
+        assertTrue(firstRefresh.get());
+        assertEquals(1, refreshes.get());
+        verify(first, times(1)).authTokenRefreshed();
+        verify(second, times(1)).authTokenRefreshed();
+        assertFalse(coordinator.isRefreshing());
+    }
+
+    @Test
+    public void test_refresh_startsAgainAfterFinishing() throws Exception {
+        release.countDown();
+
+        coordinator.refresh(first).get();
+        coordinator.refresh(first).get();
+
+        assertEquals(2, refreshes.get());
+        verify(first, times(2)).authTokenRefreshed();
+    }
+
+    @Test
+    public void test_refresh_failed() throws Exception {
+        fail = true;
+        release.countDown();
+
+        assertFalse(coordinator.refresh(first).get());
+        verify(first, never()).authTokenRefreshed();
+        assertFalse(coordinator.isRefreshing());
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TokenRenewalSchedulerTest extends AbstractSpotifyHelper {
+
+    private static final long NOW = 10000000l;
+
+    private TokenRenewalScheduler scheduler;
+
+    @Mock
+    private TokenRefreshCoordinator coordinator;
+
+    @Mock
+    private ScheduledExecutorService executor;
+
+    @Mock
+    private ScheduledFuture future;
+
+    @Before
+    public void setUp() {
+        scheduler = Mockito.spy(new TokenRenewalScheduler(coordinator, executor));
+        doReturn(NOW).when(scheduler).getNow();
+        doReturn(future).when(executor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void test_schedule_aheadOfExpiration() {
+        scheduler.schedule(NOW + 60 * 60 * 1000);
+
+        verify(executor).schedule(any(Runnable.class), eq(55l * 60 * 1000), eq(TimeUnit.MILLISECONDS));
+        assertTrue(scheduler.isScheduled());
+    }
+
+    @Test
+    public void test_schedule_alreadyExpired() {
+        scheduler.schedule(NOW - 1000);
+
+        verify(executor).schedule(any(Runnable.class), eq(0l), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void test_schedule_replacesPending() {
+        scheduler.schedule(NOW + 60 * 60 * 1000);
+        scheduler.schedule(NOW + 2 * 60 * 60 * 1000);
+
+        verify(future).cancel(false);
+        verify(executor, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void test_schedule_noToken() {
+        scheduler.schedule(-1);
+
+        verify(executor, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        assertFalse(scheduler.isScheduled());
+    }
+
+    @Test
+    public void test_renew_failureBacksOff() {
+        doReturn(createResult(false)).when(coordinator).refresh(null);
+
+        scheduler.renew();
+        scheduler.renew();
+
+        verify(executor).schedule(any(Runnable.class), eq(10000l), eq(TimeUnit.MILLISECONDS));
+        verify(executor).schedule(any(Runnable.class), eq(20000l), eq(TimeUnit.MILLISECONDS));
+        assertTrue(scheduler.isScheduled());
+    }
+
+    @Test
+    public void test_renew_success() {
+        doReturn(createResult(true)).when(coordinator).refresh(null);
+
+        scheduler.renew();
+
+        verify(coordinator).refresh(null);
+        verify(executor, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void test_getRetryDelay() {
+        assertEquals(10000, scheduler.getRetryDelay(1));
+        assertEquals(40000, scheduler.getRetryDelay(3));
+        assertEquals(5 * 60 * 1000, scheduler.getRetryDelay(10));
+        assertEquals(5 * 60 * 1000, scheduler.getRetryDelay(100));
+    }
+
+    private FutureTask<Boolean> createResult(final boolean result) {
+        FutureTask<Boolean> task = new FutureTask<Boolean>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return result;
+            }
+        });
+
+        task.run();
+        return task;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.loader;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class TrafficMeterTest extends AbstractSpotifyHelper {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private TrafficMeter meter;
+
+    @Mock
+    private Interceptor.Chain chain;
+
+    @Before
+    public void setUp() {
+        meter = new TrafficMeter();
+    }
+
+    @Test
+    public void test_intercept_countsBytesPerEndpoint() throws Exception {
+        assertEquals("{\"items\":[]}", intercept("https://api.spotify.com/v1/users/owner/playlists/abc/tracks",
+                "{\"items\":[]}"));
+        intercept("https://api.spotify.com/v1/users/owner/playlists/def/tracks", "{}");
+        intercept("https://i.scdn.co/image/abc", "image");
+
+        assertEquals(2, meter.getRequestCount("playlist_tracks"));
+        assertEquals(14, meter.getBytesReceived("playlist_tracks"));
+        assertEquals(1, meter.getRequestCount("i.scdn.co"));
+        assertEquals(5, meter.getBytesReceived("i.scdn.co"));
+        assertEquals(0, meter.getBytesReceived("playlists"));
+    }
+
+    @Test
+    public void test_reset() throws Exception {
+        intercept("https://api.spotify.com/v1/me", "{}");
+        assertEquals("me: 1 requests, 2 bytes", meter.toString());
+
+        meter.reset();
+
+        assertEquals(0, meter.getRequestCount("me"));
+        assertEquals("", meter.toString());
+    }
+
+    private String intercept(String url, String body) throws Exception {
+        Request request = new Request.Builder().url(url).build();
+        Response response = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .body(ResponseBody.create(JSON, body))
+                .build();
+
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(any(Request.class))).thenReturn(response);
+
+        return meter.intercept(chain).body().string();
+    }
+
+}
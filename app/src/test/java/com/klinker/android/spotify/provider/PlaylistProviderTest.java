@@ -17,23 +17,45 @@
 package com.klinker.android.spotify.provider;
 
 import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.klinker.android.spotify.data.LibraryDatabase;
+import com.klinker.android.spotify.data.LibraryPlaylist;
+import com.klinker.android.spotify.data.LibrarySnapshot;
+import com.klinker.android.spotify.data.SearchIndex;
 import com.klinker.android.spotify.data.Song;
+import com.klinker.android.spotify.data.SpotifyHelper;
+import com.klinker.android.spotify.loader.OnPlaylistPageLoaded;
 import kaaes.spotify.webapi.android.models.AlbumSimple;
 import kaaes.spotify.webapi.android.models.ArtistSimple;
 import kaaes.spotify.webapi.android.models.Image;
 import kaaes.spotify.webapi.android.models.Track;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mock;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 public class PlaylistProviderTest extends AbstractSpotifyHelper {
 
     private PlaylistProvider provider;
 
+    @Mock
+    private LibraryDatabase database;
+
+    @Mock
+    private LibrarySnapshot snapshot;
+
+    @Mock
+    private OnPlaylistPageLoaded callback;
+
     @Before
     public void setUp() {
         provider = new PlaylistProvider();
@@ -75,6 +97,108 @@ public class PlaylistProviderTest extends AbstractSpotifyHelper {
         assertEquals("test type", song.getType());
     }
 
+    @Test
+    public void test_showStoredLibrary() {
+        List<Song> songs = new ArrayList<Song>();
+        List<LibrarySnapshot.Row> rows = new ArrayList<LibrarySnapshot.Row>();
+        rows.add(new LibrarySnapshot.Row(createPlaylist("first"), new ArrayList<Song>()));
+        rows.add(new LibrarySnapshot.Row(createPlaylist("second"), songs));
+
+        PlaylistProvider.showStoredLibrary(rows, callback);
+
+        verify(callback).onPlaylistPageLoaded(rows.get(1).getPlaylist(), 1, 0, songs);
+        verify(callback).onPlaylistPageLoaded(rows.get(0).getPlaylist(), 0, 0, rows.get(0).getSongs());
+    }
+
+    @Test
+    public void test_loadStoredLibrary_usesSnapshot() {
+        List<LibrarySnapshot.Row> rows = new ArrayList<LibrarySnapshot.Row>();
+        doReturn(rows).when(snapshot).read();
+
+        assertSame(rows, PlaylistProvider.loadStoredLibrary(snapshot, database));
+        verify(database, never()).getPlaylists();
+    }
+
+    @Test
+    public void test_loadStoredLibrary_fallsBackToDatabase() {
+        List<LibraryPlaylist> playlists = new ArrayList<LibraryPlaylist>();
+        playlists.add(createPlaylist("first"));
+        playlists.add(createPlaylist("second"));
+
+        List<Song> songs = new ArrayList<Song>();
+        doReturn(null).when(snapshot).read();
+        doReturn(playlists).when(database).getPlaylists();
+        doReturn(songs).when(database).getPlaylistSongs("second", 0, SpotifyHelper.TRACKS_PER_PAGE);
+
+        List<LibrarySnapshot.Row> rows = PlaylistProvider.loadStoredLibrary(snapshot, database);
+
+        assertEquals(2, rows.size());
+        assertSame(playlists.get(1), rows.get(1).getPlaylist());
+        assertSame(songs, rows.get(1).getSongs());
+        verify(database).getPlaylistSongs("first", 0, SpotifyHelper.TRACKS_PER_PAGE);
+    }
+
+    @Test
+    public void test_loadAllSongs() throws Exception {
+        SpotifyHelper helper = mock(SpotifyHelper.class);
+        doReturn(createSongs(0, 100)).when(database).getPlaylistSongs("playlist");
+        doReturn(createSongs(100, 100)).when(helper).loadMoreSongs(database, "playlist", 100);
+        doReturn(createSongs(200, 50)).when(helper).loadMoreSongs(database, "playlist", 200);
+        doReturn(new ArrayList<Song>()).when(helper).loadMoreSongs(database, "playlist", 250);
+
+        List<Song> songs = PlaylistProvider.loadAllSongs(helper, database, "playlist");
+
+        assertEquals(250, songs.size());
+        assertEquals("249", songs.get(249).getId());
+    }
+
+    @Test
+    public void test_loadAllSongs_keepsStoredSongsOnError() throws Exception {
+        SpotifyHelper helper = mock(SpotifyHelper.class);
+        doReturn(createSongs(0, 100)).when(database).getPlaylistSongs("playlist");
+        doThrow(new RuntimeException()).when(helper).loadMoreSongs(database, "playlist", 100);
+
+        assertEquals(100, PlaylistProvider.loadAllSongs(helper, database, "playlist").size());
+    }
+
+    @Test
+    public void test_readDatabaseRows_keepsSameNames() {
+        List<LibraryPlaylist> playlists = new ArrayList<LibraryPlaylist>();
+        playlists.add(createPlaylist("b"));
+        playlists.add(createPlaylist("a"));
+        playlists.get(1).name = "b";
+        doReturn(playlists).when(database).getPlaylists();
+        doReturn(createSongs(0, 2)).when(database).getPlaylistSongs("b", 0, SpotifyHelper.TRACKS_PER_PAGE);
+        doReturn(createSongs(2, 3)).when(database).getPlaylistSongs("a", 0, SpotifyHelper.TRACKS_PER_PAGE);
+
+        List<LibrarySnapshot.Row> rows = PlaylistProvider.readDatabaseRows(database);
+
+        assertEquals(2, rows.size());
+        assertEquals("b", rows.get(0).getPlaylist().id);
+        assertEquals("a", rows.get(1).getPlaylist().id);
+        assertEquals(2, rows.get(0).getSongs().size());
+        assertEquals(3, rows.get(1).getSongs().size());
+    }
+
+    @Test
+    public void test_indexLibrary_runsInBackground() {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+        SearchIndex index = mock(SearchIndex.class);
+
+        PlaylistProvider.indexLibrary(executor, index, database);
+        verify(index, never()).addLibrary(database);
+
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        verify(index).addLibrary(database);
+    }
+
     @Test
     public void test_buildSong_blankUri() {
         Track track = new Track();
@@ -95,4 +219,22 @@ public class PlaylistProviderTest extends AbstractSpotifyHelper {
         assertNull(song);
     }
 
-}
\ No newline at end of file
+    private LibraryPlaylist createPlaylist(String id) {
+        LibraryPlaylist playlist = new LibraryPlaylist();
+        playlist.id = id;
+        playlist.name = id;
+        return playlist;
+    }
+
+    private List<Song> createSongs(int offset, int count) {
+        List<Song> songs = new ArrayList<Song>();
+        for (int i = offset; i < offset + count; i++) {
+            Song song = new Song();
+            song.setId(String.valueOf(i));
+            songs.add(song);
+        }
+
+        return songs;
+    }
+
+}
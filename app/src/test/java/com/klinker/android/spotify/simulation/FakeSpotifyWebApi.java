@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.simulation;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand in for the parts of the Spotify web api that a library sync uses: the user's playlists, the tracks in
+ * each playlist and the token endpoint. The library is generated from a LibraryShape instead of being stored, so huge
+ * libraries don't need any memory on the server side. Albums have 12 tracks and artists have 4 albums, like the
+ * benchmark libraries. Rate limits and server errors are only injected on the tracks endpoint, since that is the
+ * only one that the app retries
+ */
+public class FakeSpotifyWebApi extends Dispatcher {
+
+    public static final String USER_ID = "simulated_user";
+    public static final String TOKEN_PATH = "/api/token";
+
+    private static final Pattern PLAYLISTS = Pattern.compile("^/v1/users/[^/]+/playlists$");
+    private static final Pattern TRACKS = Pattern.compile("^/v1/users/[^/]+/playlists/playlist(\\d+)/tracks$");
+
+    private static final int TRACKS_PER_ALBUM = 12;
+    private static final int ALBUMS_PER_ARTIST = 4;
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int[] IMAGE_SIZES = new int[] { 640, 300, 64 };
+
+    private final LibraryShape shape;
+    private MockWebServer server;
+
+    private final AtomicInteger trackRequests = new AtomicInteger();
+    private final AtomicInteger playlistRequests = new AtomicInteger();
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final AtomicInteger rateLimited = new AtomicInteger();
+    private final AtomicInteger serverErrors = new AtomicInteger();
+
+    public FakeSpotifyWebApi(LibraryShape shape) {
+        this.shape = shape;
+    }
+
+    public void start() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(this);
+        server.start();
+    }
+
+    public void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Endpoint to give the rest adapter in place of Spotify's
+     */
+    public String getApiEndpoint() {
+        return server.getUrl("/v1").toString();
+    }
+
+    public String getTokenUrl() {
+        return server.getUrl(TOKEN_PATH).toString();
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        String path = request.getPath();
+        int query = path.indexOf('?');
+        HashMap<String, String> params = parseQuery(query == -1 ? null : path.substring(query + 1));
+        path = query == -1 ? path : path.substring(0, query);
+
+        if (TOKEN_PATH.equals(path)) {
+            tokenRequests.incrementAndGet();
+            return json("{\"access_token\":\"simulated_token\",\"token_type\":\"Bearer\",\"expires_in\":3600}");
+        }
+
+        if (PLAYLISTS.matcher(path).matches()) {
+            playlistRequests.incrementAndGet();
+            return json(buildPlaylistsPage(getInt(params, "offset", 0), getInt(params, "limit", DEFAULT_LIMIT)));
+        }
+
+        Matcher tracks = TRACKS.matcher(path);
+        if (tracks.matches()) {
+            if (shape.pageLatencyMillis > 0) {
+                Thread.sleep(shape.pageLatencyMillis);
+            }
+
+            MockResponse fault = getFault(trackRequests.incrementAndGet());
+            if (fault != null) {
+                return fault;
+            }
+
+            return json(buildTracksPage(Integer.parseInt(tracks.group(1)), getInt(params, "offset", 0),
+                    getInt(params, "limit", DEFAULT_LIMIT)));
+        }
+
+        return new MockResponse().setResponseCode(404);
+    }
+
+    /**
+     * Faults come in a fixed cycle so that a run can be repeated exactly. Retries count as requests too, so a page
+     * that gets a fault will get through on a later attempt
+     */
+    private MockResponse getFault(int request) {
+        if (shape.rateLimitEvery > 0 && (request - 1) % shape.rateLimitEvery >= shape.rateLimitEvery -
+                shape.rateLimitBurst) {
+            rateLimited.incrementAndGet();
+            return new MockResponse().setResponseCode(429)
+                    .addHeader("Retry-After", String.valueOf(shape.retryAfterSeconds));
+        }
+
+        if (shape.serverErrorEvery > 0 && request % shape.serverErrorEvery == 0) {
+            serverErrors.incrementAndGet();
+            return new MockResponse().setResponseCode(503);
+        }
+
+        return null;
+    }
+
+    private String buildPlaylistsPage(int offset, int limit) {
+        int end = Math.min(shape.playlists, offset + limit);
+        StringBuilder json = new StringBuilder("{\"items\":[");
+
+        for (int i = offset; i < end; i++) {
+            if (i > offset) {
+                json.append(',');
+            }
+
+            json.append("{\"id\":\"playlist").append(i)
+                    .append("\",\"name\":\"Playlist ").append(i)
+                    .append("\",\"snapshot_id\":\"snapshot").append(i)
+                    .append("\",\"owner\":{\"id\":\"").append(USER_ID)
+                    .append("\"},\"tracks\":{\"total\":").append(shape.tracksPerPlaylist).append("}}");
+        }
+
+        appendPaging(json, shape.playlists, offset, limit, "/users/" + USER_ID + "/playlists");
+        return json.toString();
+    }
+
+    private String buildTracksPage(int playlist, int offset, int limit) {
+        int end = Math.min(shape.tracksPerPlaylist, offset + limit);
+        StringBuilder json = new StringBuilder("{\"items\":[");
+
+        for (int i = offset; i < end; i++) {
+            int track = playlist * shape.tracksPerPlaylist + i;
+            int album = track / TRACKS_PER_ALBUM;
+            int artist = album / ALBUMS_PER_ARTIST;
+
+            if (i > offset) {
+                json.append(',');
+            }
+
+            json.append("{\"added_at\":\"2015-01-01T00:00:00Z\",\"track\":{\"uri\":\"spotify:track:").append(track)
+                    .append("\",\"name\":\"Track ").append(track)
+                    .append("\",\"album\":{\"id\":\"album").append(album)
+                    .append("\",\"name\":\"Album ").append(album)
+                    .append("\",\"images\":[");
+
+            for (int j = 0; j < IMAGE_SIZES.length; j++) {
+                json.append(j == 0 ? "" : ",")
+                        .append("{\"url\":\"https://i.scdn.co/image/").append(album).append('/').append(IMAGE_SIZES[j])
+                        .append("\",\"width\":").append(IMAGE_SIZES[j])
+                        .append(",\"height\":").append(IMAGE_SIZES[j]).append('}');
+            }
+
+            json.append("]},\"artists\":[{\"id\":\"artist").append(artist)
+                    .append("\",\"name\":\"Artist ").append(artist)
+                    .append("\",\"type\":\"artist\"}]}}");
+        }
+
+        appendPaging(json, shape.tracksPerPlaylist, offset, limit,
+                "/users/" + USER_ID + "/playlists/playlist" + playlist + "/tracks");
+        return json.toString();
+    }
+
+    private void appendPaging(StringBuilder json, int total, int offset, int limit, String path) {
+        json.append("],\"total\":").append(total)
+                .append(",\"offset\":").append(offset)
+                .append(",\"limit\":").append(limit)
+                .append(",\"next\":");
+
+        if (offset + limit < total) {
+            json.append('"').append(getApiEndpoint()).append(path)
+                    .append("?offset=").append(offset + limit).append("&limit=").append(limit).append('"');
+        } else {
+            json.append("null");
+        }
+
+        json.append('}');
+    }
+
+    private MockResponse json(String body) {
+        return new MockResponse().addHeader("Content-Type", "application/json; charset=utf-8").setBody(body);
+    }
+
+    private HashMap<String, String> parseQuery(String query) {
+        HashMap<String, String> params = new HashMap<String, String>();
+        if (query == null) {
+            return params;
+        }
+
+        for (String param : query.split("&")) {
+            int split = param.indexOf('=');
+            if (split > 0) {
+                params.put(param.substring(0, split), param.substring(split + 1));
+            }
+        }
+
+        return params;
+    }
+
+    private int getInt(HashMap<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public int getTrackRequests() {
+        return trackRequests.get();
+    }
+
+    public int getPlaylistRequests() {
+        return playlistRequests.get();
+    }
+
+    public int getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    public int getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public int getServerErrors() {
+        return serverErrors.get();
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.simulation;
+
+/**
+ * Shape of the library that the fake web api serves and the faults that it injects. The simulation is skipped unless
+ * -Dsimulation.enabled=true is set, and bigger runs can be set up with system properties, see fromSystemProperties
+ */
+public class LibraryShape {
+
+    private static final String PREFIX = "simulation.";
+    private static final String DEFAULT_REPORT_FILE = "build/simulation/library-load.txt";
+
+    public int playlists = 20;
+    public int tracksPerPlaylist = 250;
+
+    /**
+     * How long the server waits before answering each page of tracks
+     */
+    public long pageLatencyMillis = 0;
+
+    /**
+     * Every this many track requests, the last rateLimitBurst of them are answered with a 429. 0 turns it off
+     */
+    public int rateLimitEvery = 25;
+    public int rateLimitBurst = 2;
+    public int retryAfterSeconds = 0;
+
+    /**
+     * Every this many track requests, one is answered with a 503. 0 turns it off
+     */
+    public int serverErrorEvery = 0;
+
+    /**
+     * Page through the rest of every playlist after the sync, like scrolling to the end of every row
+     */
+    public boolean loadFullPlaylists = true;
+
+    /**
+     * File that each run's report is added to
+     */
+    public String reportFile = DEFAULT_REPORT_FILE;
+
+    /**
+     * Check whether the simulation should run, it is too slow to run with every build of the unit tests
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PREFIX + "enabled");
+    }
+
+    /**
+     * Build a shape from system properties like -Dsimulation.playlists=500 -Dsimulation.tracksPerPlaylist=200, anything
+     * that isn't set keeps its default
+     */
+    public static LibraryShape fromSystemProperties() {
+        LibraryShape shape = new LibraryShape();
+        shape.playlists = Integer.getInteger(PREFIX + "playlists", shape.playlists);
+        shape.tracksPerPlaylist = Integer.getInteger(PREFIX + "tracksPerPlaylist", shape.tracksPerPlaylist);
+        shape.pageLatencyMillis = Long.getLong(PREFIX + "pageLatencyMillis", shape.pageLatencyMillis);
+        shape.rateLimitEvery = Integer.getInteger(PREFIX + "rateLimitEvery", shape.rateLimitEvery);
+        shape.rateLimitBurst = Integer.getInteger(PREFIX + "rateLimitBurst", shape.rateLimitBurst);
+        shape.retryAfterSeconds = Integer.getInteger(PREFIX + "retryAfterSeconds", shape.retryAfterSeconds);
+        shape.serverErrorEvery = Integer.getInteger(PREFIX + "serverErrorEvery", shape.serverErrorEvery);
+        shape.reportFile = System.getProperty(PREFIX + "reportFile", shape.reportFile);
+
+        String loadFull = System.getProperty(PREFIX + "loadFullPlaylists");
+        if (loadFull != null) {
+            shape.loadFullPlaylists = Boolean.parseBoolean(loadFull);
+        }
+
+        if (shape.rateLimitEvery > 0 && shape.rateLimitBurst >= shape.rateLimitEvery) {
+            throw new IllegalArgumentException("rate limit burst has to be smaller than the cycle, or nothing loads");
+        }
+
+        return shape;
+    }
+
+    public int getTotalTracks() {
+        return playlists * tracksPerPlaylist;
+    }
+
+    @Override
+    public String toString() {
+        return playlists + " playlists x " + tracksPerPlaylist + " tracks, " + pageLatencyMillis + "ms latency, " +
+                "429 x" + rateLimitBurst + " every " + rateLimitEvery + ", 503 every " + serverErrorEvery;
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.simulation;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Timings and counts from a single simulated library load. Peak heap is taken from the jvm's memory pools, so it
+ * covers everything in the process, but the pools are reset when the report starts so that it is only this load
+ */
+public class SimulationReport {
+
+    private final LibraryShape shape;
+    private final long startTime;
+    private volatile long firstRowTime = -1;
+    private long syncTime = -1;
+    private long fullLoadTime = -1;
+    private long peakHeap;
+    private int requests;
+    private int rateLimited;
+    private int serverErrors;
+
+    public SimulationReport(LibraryShape shape) {
+        this.shape = shape;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Called when the first row has songs to show, only the first call counts
+     */
+    public void onFirstRow() {
+        if (firstRowTime == -1) {
+            firstRowTime = System.nanoTime();
+        }
+    }
+
+    public void onSyncFinished() {
+        syncTime = System.nanoTime();
+    }
+
+    public void onFullLoadFinished() {
+        fullLoadTime = System.nanoTime();
+    }
+
+    /**
+     * Read the peak heap use and the server's counters once everything has finished
+     */
+    public void finish(FakeSpotifyWebApi api) {
+        peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        requests = api.getTrackRequests() + api.getPlaylistRequests() + api.getTokenRequests();
+        rateLimited = api.getRateLimited();
+        serverErrors = api.getServerErrors();
+    }
+
+    public long getTimeToFirstRow() {
+        return toMillis(firstRowTime);
+    }
+
+    public long getSyncMillis() {
+        return toMillis(syncTime);
+    }
+
+    public long getFullLoadMillis() {
+        return toMillis(fullLoadTime);
+    }
+
+    public long getPeakHeap() {
+        return peakHeap;
+    }
+
+    public int getRequests() {
+        return requests;
+    }
+
+    public int getRateLimited() {
+        return rateLimited;
+    }
+
+    public int getServerErrors() {
+        return serverErrors;
+    }
+
+    /**
+     * Add the report to the end of a results file, so that runs can be compared
+     */
+    public void appendTo(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("couldn't create " + parent);
+        }
+
+        FileWriter writer = new FileWriter(file, true);
+        try {
+            writer.write(System.currentTimeMillis() + "\t" + toString() + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private long toMillis(long time) {
+        return time == -1 ? -1 : (time - startTime) / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        return "library load (" + shape + "): first row " + getTimeToFirstRow() + "ms, sync " + getSyncMillis() +
+                "ms, full load " + getFullLoadMillis() + "ms, peak heap " + (peakHeap / 1024 / 1024) + "MB, " +
+                requests + " requests, " + rateLimited + " rate limited, " + serverErrors + " server errors";
+    }
+
+}
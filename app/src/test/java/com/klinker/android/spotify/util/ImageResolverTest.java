@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.util;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.klinker.android.spotify.data.AlbumImage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ImageResolverTest extends AbstractSpotifyHelper {
+
+    @Test
+    public void test_resolve_smallestBigEnough() {
+        List<AlbumImage> images = createImages();
+
+        assertEquals("640", ImageResolver.resolve(images, 500, 500));
+        assertEquals("300", ImageResolver.resolve(images, 300, 300));
+        assertEquals("300", ImageResolver.resolve(images, 250, 200));
+        assertEquals("64", ImageResolver.resolve(images, 50, 50));
+    }
+
+    @Test
+    public void test_resolve_tooSmallUsesLargest() {
+        assertEquals("640", ImageResolver.resolve(createImages(), 1920, 1080));
+    }
+
+    @Test
+    public void test_resolve_unknownSizes() {
+        List<AlbumImage> images = new ArrayList<AlbumImage>();
+        images.add(new AlbumImage("unknown", 0, 0));
+        images.add(new AlbumImage("64", 64, 64));
+
+        assertEquals("64", ImageResolver.resolve(images, 50, 50));
+        assertEquals("unknown", ImageResolver.resolve(images, 300, 300));
+        assertEquals("unknown", ImageResolver.getLargest(images));
+    }
+
+    @Test
+    public void test_resolve_noImages() {
+        assertNull(ImageResolver.resolve(null, 100, 100));
+        assertNull(ImageResolver.resolve(new ArrayList<AlbumImage>(), 100, 100));
+        assertNull(ImageResolver.getLargest(null));
+    }
+
+    private List<AlbumImage> createImages() {
+        // spotify's usual order, largest first
+        List<AlbumImage> images = new ArrayList<AlbumImage>();
+        images.add(new AlbumImage("640", 640, 640));
+        images.add(new AlbumImage("300", 300, 300));
+        images.add(new AlbumImage("64", 64, 64));
+        return images;
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.util;
+
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import com.klinker.android.spotify.loader.RequestShaper;
+import com.klinker.android.spotify.loader.RevalidationInterceptor;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class SharedHttpClientTest extends AbstractSpotifyHelper {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        SharedHttpClient.get().setCache(null);
+    }
+
+    @Test
+    public void test_get_shared() {
+        assertSame(SharedHttpClient.get(), SharedHttpClient.get());
+    }
+
+    @Test
+    public void test_buildClient() {
+        OkHttpClient client = SharedHttpClient.buildClient();
+
+        assertSame(ConnectionPool.getDefault(), client.getConnectionPool());
+        assertTrue(client.getProtocols().contains(Protocol.HTTP_2));
+        assertTrue(client.getProtocols().contains(Protocol.HTTP_1_1));
+        assertTrue(client.interceptors().get(0) instanceof RequestShaper);
+        assertTrue(client.networkInterceptors().contains(SharedHttpClient.getTrafficMeter()));
+        assertTrue(client.networkInterceptors().get(1) instanceof RevalidationInterceptor);
+    }
+
+    @Test
+    public void test_installCache_onlyOnce() throws Exception {
+        Cache cache = SharedHttpClient.installCache(folder.newFolder());
+
+        assertNotNull(cache);
+        assertSame(cache, SharedHttpClient.get().getCache());
+        assertSame(cache, SharedHttpClient.installCache(folder.newFolder()));
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.util;
+
+import android.app.Activity;
+import com.klinker.android.spotify.AbstractSpotifyHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.robolectric.Robolectric;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StartupTracerTest extends AbstractSpotifyHelper {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeClockTracer tracer;
+
+    @Before
+    public void setUp() {
+        tracer = new FakeClockTracer();
+    }
+
+    @After
+    public void tearDown() {
+        StartupTracer.remove();
+    }
+
+    @Test
+    public void test_get_shared() {
+        assertSame(StartupTracer.get(), StartupTracer.get());
+    }
+
+    @Test
+    public void test_span() {
+        StartupTracer.Span span = tracer.begin("load_playlists");
+        tracer.now += 2500;
+        span.end();
+
+        assertEquals("load_playlists", span.getName());
+        assertEquals(2500, span.getDuration());
+        assertEquals(1, tracer.stopRecording().size());
+    }
+
+    @Test
+    public void test_sortedByStart() {
+        StartupTracer.Span outer = tracer.begin("outer");
+        tracer.now += 10;
+        StartupTracer.Span inner = tracer.begin("inner");
+        tracer.now += 10;
+        inner.end();
+        outer.end();
+
+        List<StartupTracer.Span> spans = tracer.stopRecording();
+        assertEquals("outer", spans.get(0).getName());
+        assertEquals("inner", spans.get(1).getName());
+    }
+
+    @Test
+    public void test_markOnce() {
+        tracer.markOnce("first_image_bind");
+        tracer.markOnce("first_image_bind");
+
+        List<StartupTracer.Span> spans = tracer.stopRecording();
+        assertEquals(1, spans.size());
+        assertEquals(0, spans.get(0).getDuration());
+    }
+
+    @Test
+    public void test_stopRecording() {
+        assertTrue(tracer.isRecording());
+        assertNotNull(tracer.stopRecording());
+        assertFalse(tracer.isRecording());
+
+        tracer.begin("late").end();
+        tracer.markOnce("late_mark");
+
+        assertNull(tracer.stopRecording());
+    }
+
+    @Test
+    public void test_maxSpans() {
+        for (int i = 0; i < StartupTracer.MAX_SPANS + 10; i++) {
+            tracer.begin("tracks_page " + i).end();
+        }
+
+        assertEquals(StartupTracer.MAX_SPANS, tracer.stopRecording().size());
+    }
+
+    @Test
+    public void test_write() throws IOException {
+        tracer.now += 1000;
+        StartupTracer.Span span = tracer.begin("main_activity_create");
+        tracer.now += 500;
+        span.end();
+
+        File file = tracer.write(folder.getRoot(), tracer.stopRecording());
+        List<String> lines = readLines(file);
+
+        assertTrue(file.getName().startsWith(StartupTracer.FILE_PREFIX));
+        assertTrue(lines.get(0).startsWith("# startup timeline v" + StartupTracer.VERSION));
+        assertEquals(2, lines.size());
+
+        String[] columns = lines.get(1).split("\t");
+        assertEquals("main_activity_create", columns[0]);
+        assertEquals(Thread.currentThread().getName(), columns[1]);
+        assertEquals("1000", columns[2]);
+        assertEquals("500", columns[3]);
+    }
+
+    @Test
+    public void test_write_deletesOldTraces() throws IOException {
+        File directory = folder.newFolder(StartupTracer.TRACE_DIRECTORY);
+        for (int i = 0; i < StartupTracer.MAX_TRACES + 2; i++) {
+            new File(directory, StartupTracer.FILE_PREFIX + (1000 + i) + StartupTracer.FILE_EXTENSION).createNewFile();
+        }
+
+        File other = new File(directory, "other");
+        other.createNewFile();
+
+        File file = tracer.write(directory, tracer.stopRecording());
+
+        assertTrue(file.exists());
+        assertTrue(other.exists());
+        assertFalse(new File(directory, StartupTracer.FILE_PREFIX + 1000 + StartupTracer.FILE_EXTENSION).exists());
+        assertEquals(StartupTracer.MAX_TRACES + 1, directory.list().length);
+    }
+
+    @Test
+    public void test_finish_onlyOnce() {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        tracer.finish(activity);
+        assertFalse(tracer.isRecording());
+
+        // a second launch in the same process doesn't write anything
+        tracer.finish(activity);
+    }
+
+    private List<String> readLines(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        List<String> lines = new ArrayList<String>();
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+
+        return lines;
+    }
+
+    /**
+     * Tracer with a clock that only moves when the test moves it
+     */
+    private static class FakeClockTracer extends StartupTracer {
+
+        private long now;
+
+        @Override
+        protected long getNanoTime() {
+            return now;
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.benchmark;
+
+import com.klinker.android.spotify.data.Song;
+import com.klinker.android.spotify.data.SongCatalog;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.ArtistSimple;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+
+/**
+ * Builds libraries that are shaped like a real one for the benchmarks: albums have a dozen tracks, artists have a few
+ * albums, every album has the three artwork sizes that Spotify sends and playlists are 100 songs long
+ */
+public class SyntheticLibrary {
+
+    public static final int TRACKS_PER_ALBUM = 12;
+    public static final int ALBUMS_PER_ARTIST = 4;
+    public static final int PLAYLIST_SIZE = 100;
+
+    private static final int[] IMAGE_SIZES = new int[] { 640, 300, 64 };
+
+    /**
+     * Create tracks the way they come back from the web api
+     */
+    public static List<PlaylistTrack> createTracks(int count) {
+        List<PlaylistTrack> tracks = new ArrayList<PlaylistTrack>(count);
+
+        for (int i = 0; i < count; i++) {
+            int album = i / TRACKS_PER_ALBUM;
+            int artist = album / ALBUMS_PER_ARTIST;
+
+            PlaylistTrack playlistTrack = new PlaylistTrack();
+            playlistTrack.track = new Track();
+            playlistTrack.track.uri = "spotify:track:" + i;
+            playlistTrack.track.name = "Track " + i;
+
+            playlistTrack.track.album = new AlbumSimple();
+            playlistTrack.track.album.id = "album" + album;
+            playlistTrack.track.album.name = "Album " + album;
+            playlistTrack.track.album.images = new ArrayList<Image>(IMAGE_SIZES.length);
+            for (int size : IMAGE_SIZES) {
+                Image image = new Image();
+                image.url = "https://i.scdn.co/image/" + album + "/" + size;
+                image.width = size;
+                image.height = size;
+                playlistTrack.track.album.images.add(image);
+            }
+
+            ArtistSimple artistSimple = new ArtistSimple();
+            artistSimple.id = "artist" + artist;
+            artistSimple.name = "Artist " + artist;
+            artistSimple.type = "artist";
+            playlistTrack.track.artists = new ArrayList<ArtistSimple>(1);
+            playlistTrack.track.artists.add(artistSimple);
+
+            tracks.add(playlistTrack);
+        }
+
+        return tracks;
+    }
+
+    /**
+     * Create catalog songs, shared through the SongCatalog like they are in the app
+     */
+    public static List<Song> createSongs(int count) {
+        return SongCatalog.get().buildSongs(createTracks(count));
+    }
+
+    /**
+     * Split the songs up into playlists, keyed by playlist name in library order
+     */
+    public static LinkedHashMap<String, List<Song>> createPlaylists(List<Song> songs) {
+        LinkedHashMap<String, List<Song>> playlists = new LinkedHashMap<String, List<Song>>();
+
+        for (int i = 0; i < songs.size(); i += PLAYLIST_SIZE) {
+            playlists.put("Playlist " + (i / PLAYLIST_SIZE),
+                    new ArrayList<Song>(songs.subList(i, Math.min(songs.size(), i + PLAYLIST_SIZE))));
+        }
+
+        return playlists;
+    }
+
+    private SyntheticLibrary() {
+
+    }
+
+}
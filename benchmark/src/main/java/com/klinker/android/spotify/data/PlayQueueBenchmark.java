@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import com.klinker.android.spotify.benchmark.SyntheticLibrary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the play queue when a song is clicked, the same steps as MainFragment.startSong without the intent, and
+ * the work the player does with the queue once it starts
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlayQueueBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int tracks;
+
+    private List<Song> songs;
+    private PlayQueueRepository repository;
+    private PlayQueue queue;
+    private int start;
+
+    @Setup
+    public void setUp() {
+        songs = SyntheticLibrary.createSongs(tracks);
+        repository = new PlayQueueRepository();
+        start = songs.size() / 2;
+        queue = new PlayQueue(songs, start);
+    }
+
+    /**
+     * Clicking a song in the middle of a playlist
+     */
+    @Benchmark
+    public long startSong() {
+        return repository.putQueue(new PlayQueue(songs, start));
+    }
+
+    /**
+     * Handing the queue to the player
+     */
+    @Benchmark
+    public List<String> getUris() {
+        return queue.getUris();
+    }
+
+    /**
+     * The first track change on a new queue, which builds the index of uris
+     */
+    @Benchmark
+    public int moveTo_firstChange() {
+        PlayQueue newQueue = new PlayQueue(songs, start);
+        newQueue.moveTo(newQueue.getCurrentSong().getId());
+        return newQueue.moveTo(newQueue.getSong(1).getId());
+    }
+
+}
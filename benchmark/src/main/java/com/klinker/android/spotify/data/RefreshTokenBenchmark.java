@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the token responses with JSONParser. These don't grow with the library, so there is only one size. The
+ * missing field case measures the exception that JSONParser catches when Spotify leaves a field out
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RefreshTokenBenchmark {
+
+    private static final String RESPONSE = "{\"access_token\":\"BQDwTjXrRNwmGjNzL8vUq4hVb0oQ1Lq2Vn8hXl5kS0c\"," +
+            "\"token_type\":\"Bearer\",\"expires_in\":3600,\"scope\":\"playlist-read-private streaming\"}";
+
+    private JSONParser parser;
+    private JSONObject object;
+
+    @Setup
+    public void setUp() throws JSONException {
+        parser = new JSONParser();
+        object = new JSONObject(RESPONSE);
+    }
+
+    @Benchmark
+    public RefreshToken parseRefreshToken() throws JSONException {
+        return new RefreshToken(new JSONObject(RESPONSE));
+    }
+
+    @Benchmark
+    public String parseString_missingField() {
+        return parser.parseString(object, "refresh_token");
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Jacob Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.klinker.android.spotify.data;
+
+import com.klinker.android.spotify.benchmark.SyntheticLibrary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+
+/**
+ * Converting web api tracks into songs, which is what PlaylistProvider.buildSong and every page of a sync go through.
+ * The cold case is a first sync where every song, album and artist is new, the warm case is a resync where they are
+ * all already in the catalog
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SongCatalogBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int tracks;
+
+    private List<PlaylistTrack> playlistTracks;
+    private SongCatalog warmCatalog;
+
+    @Setup
+    public void setUp() {
+        playlistTracks = SyntheticLibrary.createTracks(tracks);
+        warmCatalog = new SongCatalog();
+        warmCatalog.buildSongs(playlistTracks);
+    }
+
+    @Benchmark
+    public List<Song> buildSongs_cold() {
+        return new SongCatalog().buildSongs(playlistTracks);
+    }
+
+    @Benchmark
+    public List<Song> buildSongs_warm() {
+        return warmCatalog.buildSongs(playlistTracks);
+    }
+
+}